@@ -55,6 +55,8 @@ tasks.named<Test>("test") {
     javaLauncher.set(javaToolchains.launcherFor {
         languageVersion.set(JavaLanguageVersion.of(21))
     })
+    // keep the javac probe cache out of the user home
+    systemProperty("rockcraft.toolchainCache", layout.buildDirectory.file("toolchains.properties").get().asFile.path)
     // Use JUnit Jupiter for unit tests.
     useJUnitPlatform() {
         val testTags: String? by project
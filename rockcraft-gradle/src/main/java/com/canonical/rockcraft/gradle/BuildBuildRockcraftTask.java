@@ -47,6 +47,6 @@ public class BuildBuildRockcraftTask extends DefaultTask {
     @TaskAction
     public void buildBuildRock() throws InterruptedException, IOException {
         RockProjectSettings settings = RockSettingsFactory.createBuildRockProjectSettings(getProject());
-        RockBuilder.buildRock(settings, options);
+        RockBuilder.buildRock(settings, options, getLogger()::lifecycle);
     }
 }
@@ -50,6 +50,6 @@ public abstract class BuildRockcraftTask extends AbstractRockcraftTask {
      */
     @TaskAction
     public void packRock() throws IOException, InterruptedException {
-        RockBuilder.buildRock(RockSettingsFactory.createRockProjectSettings(getProject()), getOptions());
+        RockBuilder.buildRock(RockSettingsFactory.createRockProjectSettings(getProject()), getOptions(), getLogger()::lifecycle);
     }
 }
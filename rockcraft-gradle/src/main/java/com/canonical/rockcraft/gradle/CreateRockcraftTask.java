@@ -80,6 +80,7 @@ public abstract class CreateRockcraftTask extends AbstractRockcraftTask {
         try {
             RockCrafter crafter = new RockCrafter(RockSettingsFactory.createRockProjectSettings(getProject()),
                  getOptions(), new ArrayList<>(artifacts));
+            crafter.setLog(getLogger()::lifecycle);
             crafter.writeRockcraft();
         } catch (IOException e) {
             throw new UnsupportedOperationException("Failed to write rockcraft.yaml: " + e.getMessage());
@@ -29,10 +29,8 @@ import org.gradle.api.logging.Logger;
 import org.gradle.api.logging.Logging;
 import org.gradle.api.tasks.TaskProvider;
 
-import java.io.File;
 import java.io.IOException;
 
-import java.nio.file.Path;
 import java.util.Set;
 
 /**
@@ -70,16 +68,9 @@ public class RockcraftPlugin implements Plugin<Project> {
         DependencyOptions dependencyOptions = project.getExtensions().create("dependenciesExport", DependencyOptions.class);
         TaskProvider<DependencyExportTask> exportTask = project.getTasks()
                 .register(ITaskNames.DEPENDENCIES, DependencyExportTask.class, dependencyOptions);
-        exportTask.configure( dependencyExportTask -> {
-            File buildDirectory = dependencyExportTask
-                    .getProject()
-                    .getLayout()
-                    .getBuildDirectory()
-                    .getAsFile().get();
-            Path output = buildDirectory.toPath().resolve(String.format("%s%s%s", IRockcraftNames.BUILD_ROCK_OUTPUT, File.separator, IRockcraftNames.DEPENDENCIES_ROCK_OUTPUT));
-            dependencyExportTask.getOutputDirectory()
-                    .set(output.toFile());
-        });
+        exportTask.configure( dependencyExportTask -> dependencyExportTask.getOutputDirectory()
+                .set(project.getLayout().getBuildDirectory()
+                        .dir(IRockcraftNames.BUILD_ROCK_OUTPUT + "/" + IRockcraftNames.DEPENDENCIES_ROCK_OUTPUT)));
 
         BuildRockcraftOptions buildOptions = project.getExtensions().create("buildRockcraft", BuildRockcraftOptions .class);
         buildOptions.setNativeImage(isNativeCompile(project));
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2025 Canonical Ltd.
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ * <p>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.canonical.rockcraft.gradle.dependencies;
+
+import org.gradle.api.artifacts.component.ComponentIdentifier;
+import org.gradle.api.artifacts.result.ResolvedArtifactResult;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * Collects the artifact files of the exported dependencies.
+ * The files are copied into the repository by {@link DependencyExportAction}.
+ */
+public class ArtifactCollector {
+    private final Logger logger = Logging.getLogger(ArtifactCollector.class);
+    private final LinkedHashMap<String, ExportedArtifact> artifacts = new LinkedHashMap<>();
+    private long duplicates;
+
+    /**
+     * Adds the artifact file, repeated files are skipped
+     * @param f       - artifact file
+     * @param group   - maven group id
+     * @param name    - maven artifact name
+     * @param version - maven artifact version
+     */
+    public synchronized void add(File f, String group, String name, String version) {
+        ExportedArtifact artifact = new ExportedArtifact(f, group, name, version);
+        if (artifacts.putIfAbsent(artifact.getPath(), artifact) != null) {
+            duplicates++;
+        }
+    }
+
+    /**
+     * Adds the resolved artifact
+     * @param resolvedArtifact - resolved artifact
+     */
+    public void add(ResolvedArtifactResult resolvedArtifact) {
+        add(resolvedArtifact.getId().getComponentIdentifier(), resolvedArtifact.getFile());
+    }
+
+    /**
+     * Adds the artifact file of the component
+     * @param component - component that owns the artifact
+     * @param f - artifact file
+     */
+    public void add(ComponentIdentifier component, File f) {
+        String[] split = component.getDisplayName().split(":");
+        String group = split.length > 0 ? split[0] : null;
+        String name = split.length > 1 ? split[1] : null;
+        String version = split.length > 2 ? split[2] : null;
+        if (group == null || name == null || version == null) {
+            logger.warn("Group, name and version should be set for the artifact {}:{}:{}", group, name, version);
+            return;
+        }
+        add(f, group, name, version);
+    }
+
+    /**
+     * Gets the collected artifacts
+     * @return artifacts in the order they were added
+     */
+    public synchronized List<ExportedArtifact> getArtifacts() {
+        return new ArrayList<>(artifacts.values());
+    }
+
+    /**
+     * Number of repeated artifact files
+     * @return duplicate count
+     */
+    public synchronized long getDuplicateCount() {
+        return duplicates;
+    }
+}
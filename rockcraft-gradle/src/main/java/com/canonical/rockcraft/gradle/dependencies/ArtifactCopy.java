@@ -13,6 +13,7 @@
  */
 package com.canonical.rockcraft.gradle.dependencies;
 
+import com.canonical.rockcraft.util.ExportManifest;
 import com.canonical.rockcraft.util.MavenArtifactCopy;
 
 import org.gradle.api.artifacts.ArtifactCollection;
@@ -30,6 +31,7 @@ import java.nio.file.Path;
  */
 public class ArtifactCopy extends MavenArtifactCopy {
     private final Logger logger = Logging.getLogger(ArtifactCopy.class);
+    private ExportMetrics metrics;
 
     /**
      * Construct ArtifactCopy
@@ -39,6 +41,37 @@ public class ArtifactCopy extends MavenArtifactCopy {
         super(outputLocationRoot);
     }
 
+    /**
+     * Construct ArtifactCopy that skips artifacts unchanged since the previous export
+     * @param outputLocationRoot - destination for the artifacts
+     * @param previous - manifest of the previous export
+     */
+    public ArtifactCopy(Path outputLocationRoot, ExportManifest previous) {
+        super(outputLocationRoot, previous);
+    }
+
+    /**
+     * Records the time spent on each artifact
+     * @param metrics - export metrics
+     */
+    public void setMetrics(ExportMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public boolean copyToMavenRepository(File f, String group, String name, String version) throws IOException {
+        if (metrics == null) {
+            return super.copyToMavenRepository(f, group, name, version);
+        }
+        long start = System.nanoTime();
+        boolean written = super.copyToMavenRepository(f, group, name, version);
+        if (written) {
+            String path = String.format("%s/%s/%s/%s", group.replace('.', '/'), name, version, f.getName());
+            metrics.addArtifact(path, f.length(), System.nanoTime() - start);
+        }
+        return written;
+    }
+
     /**
      * Copy the artifact collection
      * @param artifacts - artifact collection as returned by gradle resolution
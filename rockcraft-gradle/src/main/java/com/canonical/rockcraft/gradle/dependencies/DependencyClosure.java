@@ -0,0 +1,104 @@
+/*
+ * Copyright 2025 Canonical Ltd.
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ * <p>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.canonical.rockcraft.gradle.dependencies;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Artifact files of the POM closure of the exported classpaths and the statistics of the walk.
+ * The closure is walked with the project dependency handlers before the task action runs
+ * when the configuration cache entry is stored, it is walked by the task action otherwise.
+ */
+public class DependencyClosure implements Serializable {
+    private static final long serialVersionUID = 1L;
+    private final ArrayList<ExportedArtifact> artifacts;
+    private final long[] phases = new long[ExportMetrics.Phase.values().length];
+    private final long components;
+    private final long poms;
+    private final long boms;
+    private final long duplicates;
+    private final long walkNanos;
+    // not serialized, false when the closure was loaded from the configuration cache
+    private transient boolean walked;
+
+    /**
+     * Constructs DependencyClosure
+     * @param artifacts - artifacts of the closure
+     * @param metrics - metrics of the walk
+     * @param walkNanos - time spent walking the closure
+     */
+    public DependencyClosure(ArtifactCollector artifacts, ExportMetrics metrics, long walkNanos) {
+        this.artifacts = new ArrayList<>(artifacts.getArtifacts());
+        for (ExportMetrics.Phase phase : ExportMetrics.Phase.values()) {
+            phases[phase.ordinal()] = metrics.getTime(phase);
+        }
+        this.components = metrics.getComponents();
+        this.poms = metrics.getPoms();
+        this.boms = metrics.getBoms();
+        this.duplicates = artifacts.getDuplicateCount();
+        this.walkNanos = walkNanos;
+        this.walked = true;
+    }
+
+    /**
+     * Gets the artifacts of the closure
+     * @return artifacts
+     */
+    public List<ExportedArtifact> getArtifacts() { return artifacts; }
+
+    /**
+     * Time spent in the walk phase
+     * @param phase - export phase
+     * @return time in nanoseconds
+     */
+    public long getTime(ExportMetrics.Phase phase) { return phases[phase.ordinal()]; }
+
+    /**
+     * Number of components whose POM was looked up
+     * @return component count
+     */
+    public long getComponents() { return components; }
+
+    /**
+     * Number of POM files read for dependencies
+     * @return POM count
+     */
+    public long getPoms() { return poms; }
+
+    /**
+     * Number of BOMs copied without following their dependencies
+     * @return BOM count
+     */
+    public long getBoms() { return boms; }
+
+    /**
+     * Number of artifact files found more than once
+     * @return duplicate count
+     */
+    public long getDuplicates() { return duplicates; }
+
+    /**
+     * Time spent walking the closure
+     * @return time in nanoseconds
+     */
+    public long getWalkNanos() { return walkNanos; }
+
+    /**
+     * Whether the closure was walked by this build
+     * @return false when the closure was loaded from the configuration cache
+     */
+    public boolean isWalked() { return walked; }
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright 2025 Canonical Ltd.
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ * <p>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.canonical.rockcraft.gradle.dependencies;
+
+import com.canonical.rockcraft.util.CopyStrategy;
+import com.canonical.rockcraft.util.ExportManifest;
+import com.canonical.rockcraft.util.MavenArtifactCopy;
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+import org.gradle.api.provider.ListProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.workers.WorkAction;
+import org.gradle.workers.WorkParameters;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Copies the exported dependencies into the maven repository.
+ * The action gets the artifact files of the exported configurations and of their POM closure
+ * and does not use the project model.
+ */
+public abstract class DependencyExportAction implements WorkAction<DependencyExportAction.Parameters> {
+    // objects linked within the grace period may be about to be linked by a concurrent export
+    private static final long STORE_GRACE_MILLIS = TimeUnit.HOURS.toMillis(1);
+    private static final Logger logger = Logging.getLogger(DependencyExportAction.class);
+
+    /**
+     * Parameters of the dependency export
+     */
+    public interface Parameters extends WorkParameters {
+        /**
+         * Output directory for the dependency export
+         * @return DirectoryProperty
+         */
+        DirectoryProperty getOutputDirectory();
+
+        /**
+         * Shared store of the exported files, not set unless <i>sharedStore</i> is set
+         * @return DirectoryProperty
+         */
+        DirectoryProperty getStoreDirectory();
+
+        /**
+         * Export metrics report
+         * @return RegularFileProperty
+         */
+        RegularFileProperty getReportFile();
+
+        /**
+         * Fingerprint of the incremental export, not set unless <i>incremental</i> is set
+         * @return fingerprint
+         */
+        Property<String> getFingerprint();
+
+        /**
+         * The way files are placed into the repository
+         * @return copy strategy
+         */
+        Property<CopyStrategy> getCopyStrategy();
+
+        /**
+         * Resolved artifacts of the exported configurations
+         * @return artifacts
+         */
+        ListProperty<ExportedArtifact> getArtifacts();
+
+        /**
+         * POM closure of the exported configurations
+         * @return dependency closure
+         */
+        Property<DependencyClosure> getClosure();
+
+        /**
+         * Whether the closure was walked by this build
+         * @return false when the closure was loaded from the configuration cache
+         */
+        Property<Boolean> getClosureWalked();
+    }
+
+    @Override
+    public void execute() {
+        try {
+            export();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void export() throws IOException {
+        Parameters parameters = getParameters();
+        Path outputLocationRoot = parameters.getOutputDirectory().get().getAsFile().toPath();
+        boolean incremental = parameters.getFingerprint().isPresent();
+        DependencyClosure closure = parameters.getClosure().get();
+        ExportMetrics metrics = new ExportMetrics();
+        metrics.addClosure(closure, parameters.getClosureWalked().get());
+
+        ExportManifest previous = incremental ? ExportManifest.read(outputLocationRoot) : new ExportManifest();
+        ArtifactCopy artifactCopy = new ArtifactCopy(outputLocationRoot, previous);
+        artifactCopy.setMetrics(metrics);
+        artifactCopy.setCopyStrategy(parameters.getCopyStrategy().get());
+        Path store = parameters.getStoreDirectory().isPresent() ? parameters.getStoreDirectory().get().getAsFile().toPath() : null;
+        if (store != null) {
+            artifactCopy.setStore(store);
+        }
+        for (ExportedArtifact artifact : parameters.getArtifacts().get()) {
+            artifactCopy.copyToMavenRepository(artifact.getFile(), artifact.getGroup(), artifact.getName(), artifact.getVersion());
+        }
+        for (ExportedArtifact artifact : closure.getArtifacts()) {
+            artifactCopy.copyToMavenRepository(artifact.getFile(), artifact.getGroup(), artifact.getName(), artifact.getVersion());
+        }
+
+        if (incremental) {
+            ExportManifest exported = artifactCopy.getExported();
+            exported.setFingerprint(parameters.getFingerprint().get());
+            int removed = exported.removeStale(outputLocationRoot, previous);
+            exported.write(outputLocationRoot);
+            logger.info("Incremental export: {} files exported, {} stale files removed", exported.getEntries().size(), removed);
+        }
+        logger.info("Artifact copy: {} duplicate requests skipped, {} contended locks", artifactCopy.getDuplicateCount(), artifactCopy.getContendedCount());
+        if (artifactCopy.getRejectedChecksumCount() > 0) {
+            logger.warn("Artifact copy: {} source checksum files did not match the artifacts and were replaced",
+                    artifactCopy.getRejectedChecksumCount());
+        }
+        logger.info("Artifact copy: {} files ({} bytes) copied, {} identical files ({} bytes) skipped, {} files rehashed",
+                artifactCopy.getCopied().getFiles(), artifactCopy.getCopied().getBytes(),
+                artifactCopy.getSkipped().getFiles(), artifactCopy.getSkipped().getBytes(),
+                artifactCopy.getRehashed().getFiles());
+        if (store != null) {
+            logger.info("Shared store {}: {} files ({} bytes) linked from existing objects",
+                    store, artifactCopy.getLinked().getFiles(), artifactCopy.getLinked().getBytes());
+            long collected = MavenArtifactCopy.collectStore(store, STORE_GRACE_MILLIS);
+            logger.info("Shared store {}: {} unreferenced objects removed", store, collected);
+        }
+        metrics.setExported(artifactCopy.getExported());
+        writeMetrics(metrics, artifactCopy, parameters.getReportFile().get().getAsFile().toPath());
+    }
+
+    /**
+     * Writes the export metrics report and prints the summary
+     * @param metrics - export metrics
+     * @param artifactCopy - artifact copy used by the export
+     * @param report - report file
+     * @throws IOException - failed to write the report
+     */
+    static void writeMetrics(ExportMetrics metrics, ArtifactCopy artifactCopy, Path report) throws IOException {
+        metrics.finish();
+        metrics.write(report, artifactCopy);
+        for (String line : metrics.getSummary(artifactCopy)) {
+            logger.lifecycle(line);
+        }
+        logger.info("Export metrics written to {}", report);
+    }
+}
@@ -14,41 +14,72 @@
 package com.canonical.rockcraft.gradle.dependencies;
 
 import com.canonical.rockcraft.builder.DependencyOptions;
+import com.canonical.rockcraft.builder.IRockcraftNames;
+import com.canonical.rockcraft.util.ExportManifest;
 import org.gradle.api.DefaultTask;
+import org.gradle.api.Project;
+import org.gradle.api.Transformer;
 import org.gradle.api.artifacts.Configuration;
 import org.gradle.api.artifacts.ConfigurationContainer;
 import org.gradle.api.artifacts.Dependency;
 import org.gradle.api.artifacts.LenientConfiguration;
 import org.gradle.api.artifacts.ResolvedArtifact;
+import org.gradle.api.artifacts.component.ComponentArtifactIdentifier;
 import org.gradle.api.artifacts.component.ComponentIdentifier;
 import org.gradle.api.artifacts.component.ModuleComponentIdentifier;
+import org.gradle.api.artifacts.component.ModuleComponentSelector;
 import org.gradle.api.artifacts.dsl.DependencyHandler;
 import org.gradle.api.artifacts.result.ArtifactResolutionResult;
 import org.gradle.api.artifacts.result.ArtifactResult;
 import org.gradle.api.artifacts.result.ComponentArtifactsResult;
+import org.gradle.api.artifacts.result.DependencyResult;
 import org.gradle.api.artifacts.result.ResolvedArtifactResult;
+import org.gradle.api.artifacts.result.ResolvedComponentResult;
+import org.gradle.api.artifacts.result.ResolvedDependencyResult;
+import org.gradle.api.file.ConfigurableFileCollection;
 import org.gradle.api.file.DirectoryProperty;
-import org.gradle.api.initialization.Settings;
-import org.gradle.api.internal.GradleInternal;
+import org.gradle.api.file.FileCollection;
+import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.initialization.dsl.ScriptHandler;
 import org.gradle.api.internal.artifacts.DefaultModuleIdentifier;
 import org.gradle.api.logging.Logger;
 import org.gradle.api.logging.Logging;
+import org.gradle.api.provider.ListProperty;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.InputFiles;
+import org.gradle.api.tasks.Internal;
 import org.gradle.api.tasks.OutputDirectory;
+import org.gradle.api.tasks.PathSensitive;
+import org.gradle.api.tasks.PathSensitivity;
 import org.gradle.api.tasks.TaskAction;
 import org.gradle.internal.component.external.model.DefaultModuleComponentIdentifier;
 import org.gradle.maven.MavenModule;
 import org.gradle.maven.MavenPomArtifact;
 import org.gradle.work.DisableCachingByDefault;
+import org.gradle.workers.WorkQueue;
+import org.gradle.workers.WorkerExecutor;
 
 import javax.inject.Inject;
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.stream.Collectors;
 
 /**
  * DependencyExportTask writes the project build dependencies to the output
@@ -61,18 +92,66 @@ public abstract class DependencyExportTask extends DefaultTask {
      * and module files for the project dependencies
      */
     public static final String[] ARTIFACT_TYPES = {"jar", "module"};
+    /**
+     * Location of the export metrics report in the build directory
+     */
+    public static final String REPORT = "reports/rockcraft/dependencies-export.json";
+    /**
+     * Maven scopes of the dependencies that Gradle follows in the resolved graphs
+     */
+    private static final Set<String> GRAPH_SCOPES = new HashSet<>(Arrays.asList("compile", "runtime"));
     private final Logger logger = Logging.getLogger(DependencyExportTask.class);
     private final DependencyOptions dependencyOptions;
+    private final Provider<List<ExportedConfiguration>> exportedConfigurations;
+    private final Provider<List<ExportedConfiguration>> buildscriptConfigurations;
+    private final Provider<DependencyClosure> closure;
+
+    @Inject
+    protected abstract WorkerExecutor getWorkerExecutor();
+
     /**
      * Constructs DependencyExportTask
+     * The project model is captured at configuration time, the task action
+     * only uses the resolution result providers and copies the files with the worker API.
      *
      * @param options - dependency export options
      */
     @Inject
     public DependencyExportTask(DependencyOptions options) {
         dependencyOptions = options;
+        Project project = getProject();
+        DependencyHandler projectDependencies = project.getDependencies();
+        ConfigurationContainer projectConfigurations = project.getConfigurations();
+        ScriptHandler buildscript = project.getBuildscript();
+        getStoreDirectory().convention(project.getRootProject().getLayout().getBuildDirectory()
+                .dir(IRockcraftNames.BUILD_ROCK_OUTPUT + "/" + IRockcraftNames.DEPENDENCY_STORE_OUTPUT));
+        getReportFile().convention(project.getLayout().getBuildDirectory().file(REPORT));
+        exportedConfigurations = project.provider(() -> capture(getExportedConfigurations(projectConfigurations)));
+        buildscriptConfigurations = project.provider(() -> capture(buildscript.getConfigurations()));
+        // the POM closure is resolved with detached configurations of the project and buildscript,
+        // the configuration cache stores the walked closure instead of the dependency handlers
+        closure = project.provider(() -> walk(projectDependencies, projectConfigurations, buildscript));
+        getExportedGraph().set(project.provider(() -> describeExport(false)));
+        getArtifactFiles().from(project.provider(this::getExportedFiles));
     }
 
+    /**
+     * Resolved components of the exported configurations and the options that change the export
+     *
+     * @return ListProperty
+     */
+    @Input
+    public abstract ListProperty<String> getExportedGraph();
+
+    /**
+     * Artifact files of the exported configurations
+     *
+     * @return ConfigurableFileCollection
+     */
+    @InputFiles
+    @PathSensitive(PathSensitivity.NAME_ONLY)
+    public abstract ConfigurableFileCollection getArtifactFiles();
+
     /**
      * Output directory for the dependency export
      *
@@ -81,90 +160,358 @@ public abstract class DependencyExportTask extends DefaultTask {
     @OutputDirectory
     public abstract DirectoryProperty getOutputDirectory();
 
-    private void exportBuildScript(ArtifactCopy artifactCopy) throws IOException {
-        final PomDependencyReader buildScriptDependencyReader = new PomDependencyReader(getProject().getBuildscript().getDependencies(), getProject().getBuildscript().getConfigurations(), artifactCopy);
+    /**
+     * Shared store of the exported files, used when <i>sharedStore</i> is set
+     *
+     * @return DirectoryProperty
+     */
+    @Internal
+    public abstract DirectoryProperty getStoreDirectory();
+
+    /**
+     * Export metrics report
+     *
+     * @return RegularFileProperty
+     */
+    @Internal
+    public abstract RegularFileProperty getReportFile();
+
+    /**
+     * Resolution result of an exported configuration.
+     * Resolved artifacts are not serializable, their identifiers and files are kept separately.
+     */
+    private static class ExportedConfiguration {
+        private final String name;
+        private final Provider<ResolvedComponentResult> root;
+        private final Provider<List<ComponentArtifactIdentifier>> artifactIds;
+        private final Provider<List<File>> artifactFiles;
+        private final FileCollection files;
 
-        for (Configuration config : getProject().getBuildscript().getConfigurations()) {
-            copyConfiguration(getProject().getBuildscript().getConfigurations(), buildScriptDependencyReader, config, getProject().getBuildscript().getDependencies(), artifactCopy);
+        private ExportedConfiguration(Configuration configuration) {
+            this.name = configuration.getName();
+            this.root = configuration.getIncoming().getResolutionResult().getRootComponent();
+            Provider<Set<ResolvedArtifactResult>> artifacts = configuration.getIncoming().getArtifacts().getResolvedArtifacts();
+            this.artifactIds = artifacts.map(new ArtifactIds());
+            this.artifactFiles = artifacts.map(new ArtifactFiles());
+            this.files = configuration.getIncoming().getArtifacts().getArtifactFiles();
         }
     }
 
-    private void exportSettings(ArtifactCopy artifactCopy) throws IOException {
-        GradleInternal gradleInternal = (GradleInternal) getProject().getGradle();
-        Settings settings = gradleInternal.getSettings();
-        final PomDependencyReader buildScriptDependencyReader = new PomDependencyReader(settings.getBuildscript().getDependencies(), settings.getBuildscript().getConfigurations(), artifactCopy);
+    private static class ArtifactIds implements Transformer<List<ComponentArtifactIdentifier>, Collection<ResolvedArtifactResult>> {
+        @Override
+        public List<ComponentArtifactIdentifier> transform(Collection<ResolvedArtifactResult> artifacts) {
+            return artifacts.stream().map(ResolvedArtifactResult::getId).collect(Collectors.toList());
+        }
+    }
 
-        for (Configuration config : settings.getBuildscript().getConfigurations()) {
-            copyConfiguration(settings.getBuildscript().getConfigurations(), buildScriptDependencyReader, config, settings.getBuildscript().getDependencies(), artifactCopy);
+    private static class ArtifactFiles implements Transformer<List<File>, Collection<ResolvedArtifactResult>> {
+        @Override
+        public List<File> transform(Collection<ResolvedArtifactResult> artifacts) {
+            return artifacts.stream().map(ResolvedArtifactResult::getFile).collect(Collectors.toList());
         }
     }
 
-    private void exportConfiguration(Configuration config, ArtifactCopy artifactCopy) throws IOException {
-        if (!config.isCanBeResolved()) {
-            logger.warn("Configuration {} can not be resolved. skipped.", config.getName());
-            return;
+    /**
+     * A classpath with its own repositories and dependency handler:
+     * project, buildscript or settings
+     */
+    private static class Classpath {
+        private final String name;
+        private final DependencyHandler handler;
+        private final ConfigurationContainer container;
+        private final PomDependencyReader reader;
+        private final List<ExportedConfiguration> configurations;
+        // components whose POM is read in the current wave
+        private HashSet<ComponentIdentifier> workQueue = new HashSet<>();
+        // components whose POM is copied in the current wave without following dependencies
+        private HashSet<ComponentIdentifier> bomQueue = new HashSet<>();
+
+        private Classpath(String name, DependencyHandler handler, ConfigurationContainer container, PomDependencyReader reader, List<ExportedConfiguration> configurations) {
+            this.name = name;
+            this.handler = handler;
+            this.container = container;
+            this.reader = reader;
+            this.configurations = configurations;
+        }
+
+        private Classpath withConfiguration(ExportedConfiguration configuration) {
+            return new Classpath(name, handler, container, reader, Collections.singletonList(configuration));
+        }
+
+        private boolean hasWork() {
+            return !workQueue.isEmpty() || !bomQueue.isEmpty();
         }
-        PomDependencyReader pomDependencyReader = new PomDependencyReader(getProject().getDependencies(), getProject().getConfigurations(), artifactCopy);
-        copyConfiguration(getProject().getConfigurations(), pomDependencyReader, config, getProject().getDependencies(), artifactCopy);
     }
 
-    @SuppressWarnings({"unchecked", "rawtypes"})
-    private void copyConfiguration(ConfigurationContainer configurations, PomDependencyReader pomDependencyReader, Configuration files, DependencyHandler handler, ArtifactCopy artifactCopy) throws IOException {
-        HashSet<ComponentIdentifier> dependencyManagementResolved = new HashSet<>();
-        HashSet<ComponentIdentifier> resolved = new HashSet<>();
-        artifactCopy.copyArtifacts(files.getIncoming().getArtifacts());
-        // resolve and copy POM files
-        HashSet<ComponentIdentifier> workQueue = new HashSet<>();
-        for (ResolvedArtifactResult result : files.getIncoming().getArtifacts()) {
-            ComponentIdentifier id = result.getVariant().getOwner();
-            workQueue.add(id);
-            logger.debug("Looking up POM from Incoming " + id);
-        }
-        for (Dependency result : files.getAllDependencies()) {
-            if (result.getVersion() == null) {
+    private List<ExportedConfiguration> capture(Collection<Configuration> configurations) {
+        ArrayList<ExportedConfiguration> resolvable = new ArrayList<>();
+        for (Configuration config : configurations) {
+            if (!config.isCanBeResolved()) {
+                logger.warn("Configuration {} can not be resolved. skipped.", config.getName());
                 continue;
             }
-            ModuleComponentIdentifier id = DefaultModuleComponentIdentifier.newId(DefaultModuleIdentifier.newId(result.getGroup(), result.getName()), result.getVersion());
-            workQueue.add(id);
-            logger.debug("Looking up POM from AllDeps " + id);
+            resolvable.add(new ExportedConfiguration(config));
         }
-        Set<String> scopes = new HashSet<>(Arrays.asList("compile", "import", "runtime"));
-        while (!workQueue.isEmpty()) {
-            ArtifactResolutionResult artifacts = handler.createArtifactResolutionQuery().forComponents(workQueue).withArtifacts(MavenModule.class, new Class[]{MavenPomArtifact.class}).execute();
-            resolved.addAll(workQueue);
-            workQueue.clear();
-            for (ComponentArtifactsResult component : artifacts.getResolvedComponents()) {
+        return resolvable;
+    }
+
+    private Classpath createClasspath(String name, DependencyHandler handler, ConfigurationContainer container, List<ExportedConfiguration> configurations, ArtifactCollector artifacts, PomModelCache modelCache, TaskThreadDispatcher dispatcher) {
+        PomDependencyReader reader = new PomDependencyReader(handler, container, artifacts, modelCache, dispatcher);
+        return new Classpath(name, handler, container, reader, configurations);
+    }
+
+    /**
+     * Collects the components of the resolved dependency graph
+     */
+    private static Set<ResolvedComponentResult> getAllComponents(ResolvedComponentResult root) {
+        LinkedHashSet<ResolvedComponentResult> components = new LinkedHashSet<>();
+        ArrayDeque<ResolvedComponentResult> queue = new ArrayDeque<>();
+        queue.add(root);
+        while (!queue.isEmpty()) {
+            ResolvedComponentResult component = queue.poll();
+            if (!components.add(component)) {
+                continue;
+            }
+            for (DependencyResult dependency : component.getDependencies()) {
+                if (dependency instanceof ResolvedDependencyResult) {
+                    queue.add(((ResolvedDependencyResult) dependency).getSelected());
+                }
+            }
+        }
+        return components;
+    }
+
+    /**
+     * Logs how many component walks the union of the classpath configurations saves
+     * compared to walking each configuration on its own
+     */
+    private void logRedundantWalks(Classpath classpath) {
+        HashSet<ComponentIdentifier> union = new HashSet<>();
+        int total = 0;
+        for (ExportedConfiguration config : classpath.configurations) {
+            for (ResolvedComponentResult component : getAllComponents(config.root.get())) {
                 if (component.getId() instanceof ModuleComponentIdentifier) {
-                    for (ArtifactResult artifact : component.getArtifacts(MavenPomArtifact.class)) {
-                        logger.debug("Found artifact " + artifact.getId());
-                        artifactCopy.copyToMavenRepository(((ResolvedArtifactResult) artifact));
-                        copyExtraFiles(configurations, artifactCopy, Collections.singleton(component.getId()));
-                        // resolve maven dependencies to fetch poms
-                        DependencyResolutionResult dependencies = pomDependencyReader.read(((ResolvedArtifactResult) artifact).getFile(), scopes);
-                        // add unresolved modules to workQueue
-                        dependencies.getDependencies().stream().filter(x -> !resolved.contains(x)).forEach(workQueue::add);
-                        // copy unresolved boms to maven cache
-                        HashSet<ComponentIdentifier> unresolvedBoms = new HashSet<>();
-                        dependencies.getDependencyManagement().stream().filter(x -> !dependencyManagementResolved.contains(x)).forEach(unresolvedBoms::add);
-                        copyBoms(configurations, handler, artifactCopy, unresolvedBoms);
-                        copyExtraFiles(configurations, artifactCopy, unresolvedBoms);
-                        dependencyManagementResolved.addAll(dependencies.getDependencyManagement());
+                    union.add(component.getId());
+                    total++;
+                }
+            }
+        }
+        logger.info("{}: {} configurations resolve {} components, {} unique. {} redundant walks eliminated",
+                classpath.name, classpath.configurations.size(), total, union.size(), total - union.size());
+    }
+
+    /**
+     * Walks the POM closure of the classpaths in resolution waves.
+     * Each wave resolves the POMs of all newly discovered dependencies and BOMs
+     * with a single artifact resolution query per classpath and fetches their jar/module files
+     * with a single detached configuration per classpath.
+     * Components are deduplicated across the classpaths, a component is resolved
+     * by the first classpath that discovers it.
+     * Maven exclusions are inherited along the dependency path; a component reached again
+     * along a path with fewer exclusions is read again. The exclusions along the resolved graphs
+     * are applied by Gradle, so the compile and runtime dependencies of graph components
+     * are only followed if their module is in a resolved graph. With nearest-wins mediation
+     * only the first version of a module discovered breadth-first is followed.
+     * The walk starts from the resolved dependency graphs, the artifacts of the configurations
+     * are collected by the task action because project artifacts are task outputs.
+     */
+    private void walkClasspaths(List<Classpath> classpaths, ArtifactCollector collector, ExportMetrics metrics, TaskThreadDispatcher dispatcher) {
+        // components whose POM was read for dependencies
+        HashSet<ComponentIdentifier> resolved = new HashSet<>();
+        // components whose POM, jar and module files were collected
+        HashSet<ComponentIdentifier> copied = new HashSet<>();
+        // exclusions inherited by the components, roots have none
+        HashMap<ComponentIdentifier, Set<String>> exclusions = new HashMap<>();
+        // module versions selected by nearest-wins mediation
+        HashMap<String, String> selected = new HashMap<>();
+        // components and modules of the resolved graphs
+        HashSet<ComponentIdentifier> graph = new HashSet<>();
+        HashSet<String> graphModules = new HashSet<>();
+        int mediated = 0;
+        String names = classpaths.stream()
+                .flatMap(x -> x.configurations.stream().map(c -> x.name + ":" + c.name))
+                .collect(Collectors.joining(", "));
+        for (Classpath classpath : classpaths) {
+            for (ExportedConfiguration files : classpath.configurations) {
+                // resolved components, including components without artifacts, e.g. platforms
+                ResolvedComponentResult root = files.root.get();
+                for (ResolvedComponentResult component : getAllComponents(root)) {
+                    ComponentIdentifier id = component.getId();
+                    select(selected, id);
+                    graph.add(id);
+                    if (id instanceof ModuleComponentIdentifier) {
+                        graphModules.add(moduleOf((ModuleComponentIdentifier) id));
+                    }
+                    if (id instanceof ModuleComponentIdentifier && resolved.add(id)) {
+                        classpath.workQueue.add(id);
+                    }
+                }
+                // declared dependencies, including versions that lost conflict resolution
+                for (DependencyResult result : root.getDependencies()) {
+                    if (result.isConstraint() || !(result.getRequested() instanceof ModuleComponentSelector)) {
+                        continue;
+                    }
+                    ModuleComponentSelector requested = (ModuleComponentSelector) result.getRequested();
+                    if (requested.getVersion().isEmpty()) {
+                        continue;
+                    }
+                    ModuleComponentIdentifier id = DefaultModuleComponentIdentifier.newId(DefaultModuleIdentifier.newId(requested.getGroup(), requested.getModule()), requested.getVersion());
+                    if (resolved.add(id)) {
+                        classpath.workQueue.add(id);
                     }
+                    logger.debug("Looking up POM from AllDeps " + id);
                 }
             }
+            copied.addAll(classpath.workQueue);
         }
+        Set<String> scopes = new HashSet<>(Arrays.asList(dependencyOptions.getScopes()));
+        int wave = 0;
+        while (classpaths.stream().anyMatch(Classpath::hasWork)) {
+            long start = System.currentTimeMillis();
+            ArrayList<Classpath> owners = new ArrayList<>();
+            ArrayList<ComponentIdentifier> readers = new ArrayList<>();
+            ArrayList<Callable<DependencyResolutionResult>> reads = new ArrayList<>();
+            int components = 0;
+            int poms = 0;
+            for (Classpath classpath : classpaths) {
+                if (!classpath.hasWork()) {
+                    continue;
+                }
+                HashSet<ComponentIdentifier> waveComponents = new HashSet<>(classpath.workQueue);
+                waveComponents.addAll(classpath.bomQueue);
+                components += waveComponents.size();
+                metrics.addBoms(classpath.bomQueue.size());
+
+                long phaseStart = System.nanoTime();
+                ArtifactResolutionResult artifacts = resolvePoms(classpath.handler, waveComponents);
+                metrics.addTime(ExportMetrics.Phase.resolution, System.nanoTime() - phaseStart);
+                phaseStart = System.nanoTime();
+                collectExtraFiles(classpath.container, classpath.handler, collector, waveComponents);
+                metrics.addTime(ExportMetrics.Phase.extraFiles, System.nanoTime() - phaseStart);
+                for (ComponentArtifactsResult component : artifacts.getResolvedComponents()) {
+                    if (component.getId() instanceof ModuleComponentIdentifier) {
+                        for (ArtifactResult artifact : component.getArtifacts(MavenPomArtifact.class)) {
+                            logger.debug("Found artifact " + artifact.getId());
+                            collector.add((ResolvedArtifactResult) artifact);
+                            poms++;
+                            // BOM POMs are copied, but their dependencies are not followed
+                            if (classpath.workQueue.contains(component.getId())) {
+                                File pom = ((ResolvedArtifactResult) artifact).getFile();
+                                Set<String> inherited = exclusions.getOrDefault(component.getId(), Collections.emptySet());
+                                owners.add(classpath);
+                                readers.add(component.getId());
+                                reads.add(() -> classpath.reader.read(pom, scopes, inherited));
+                            }
+                        }
+                    }
+                }
+                classpath.workQueue = new HashSet<>();
+                classpath.bomQueue = new HashSet<>();
+            }
+            // resolve maven dependencies to fetch poms
+            long readStart = System.nanoTime();
+            List<DependencyResolutionResult> results = dispatcher.invokeAll(reads, dependencyOptions.getParallelism());
+            metrics.addTime(ExportMetrics.Phase.modelBuilding, System.nanoTime() - readStart);
+            metrics.addComponents(components);
+            metrics.addPoms(reads.size());
+            for (int i = 0; i < results.size(); i++) {
+                Classpath classpath = owners.get(i);
+                DependencyResolutionResult dependencies = results.get(i);
+                boolean inGraph = graph.contains(readers.get(i));
+                // add unresolved modules to the next wave
+                for (ComponentIdentifier id : dependencies.getDependencies()) {
+                    if (inGraph && GRAPH_SCOPES.contains(dependencies.getScope(id))
+                            && id instanceof ModuleComponentIdentifier && !graphModules.contains(moduleOf((ModuleComponentIdentifier) id))) {
+                        logger.debug("Dropped {} because it is excluded from the resolved graph", id);
+                        continue;
+                    }
+                    if (dependencyOptions.isNearestWins() && !select(selected, id)) {
+                        logger.debug("Dropped {} because a nearer version was selected", id);
+                        mediated++;
+                        continue;
+                    }
+                    Set<String> inherited = dependencies.getExclusions(id);
+                    if (resolved.add(id)) {
+                        exclusions.put(id, inherited);
+                        classpath.workQueue.add(id);
+                        copied.add(id);
+                    } else if (relaxExclusions(exclusions, id, inherited)) {
+                        // reached along a path that excludes less, follow the dependencies it no longer excludes
+                        classpath.workQueue.add(id);
+                    }
+                }
+                // add uncopied boms to the next wave
+                for (ComponentIdentifier id : dependencies.getDependencyManagement()) {
+                    if (copied.add(id)) {
+                        classpath.bomQueue.add(id);
+                    }
+                }
+            }
+            // a BOM discovered as a dependency in the same wave is resolved as a dependency
+            for (Classpath classpath : classpaths) {
+                for (Classpath other : classpaths) {
+                    classpath.bomQueue.removeAll(other.workQueue);
+                }
+            }
+            logger.info("{}, wave {}: {} components, {} POMs in {} ms",
+                    names, wave, components, poms, System.currentTimeMillis() - start);
+            wave++;
+        }
+        if (dependencyOptions.isNearestWins()) {
+            logger.info("{}: {} dependencies dropped by nearest-wins mediation", names, mediated);
+        }
+    }
+
+    /**
+     * Selects the module version for nearest-wins mediation
+     * @return true if the version was selected
+     */
+    private static boolean select(Map<String, String> selected, ComponentIdentifier id) {
+        if (!(id instanceof ModuleComponentIdentifier)) {
+            return true;
+        }
+        ModuleComponentIdentifier mid = (ModuleComponentIdentifier) id;
+        String version = selected.putIfAbsent(moduleOf(mid), mid.getVersion());
+        return version == null || version.equals(mid.getVersion());
+    }
+
+    private static String moduleOf(ModuleComponentIdentifier id) {
+        return id.getGroup() + ":" + id.getModule();
+    }
+
+    /**
+     * Keeps only the exclusions common to all paths that reach the component
+     * @return true if the component has fewer exclusions
+     */
+    private static boolean relaxExclusions(Map<ComponentIdentifier, Set<String>> exclusions, ComponentIdentifier id, Set<String> inherited) {
+        Set<String> known = exclusions.getOrDefault(id, Collections.emptySet());
+        if (inherited.containsAll(known)) {
+            return false;
+        }
+        HashSet<String> common = new HashSet<>(known);
+        common.retainAll(inherited);
+        exclusions.put(id, common);
+        return true;
     }
 
-    private void copyExtraFiles(ConfigurationContainer configurations, ArtifactCopy artifactCopy, Set<ComponentIdentifier> workQueue) throws IOException {
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static ArtifactResolutionResult resolvePoms(DependencyHandler handler, Set<ComponentIdentifier> componentIdentifiers) {
+        return handler.createArtifactResolutionQuery().forComponents(componentIdentifiers).withArtifacts(MavenModule.class, new Class[]{MavenPomArtifact.class}).execute();
+    }
+
+    private void collectExtraFiles(ConfigurationContainer configurations, DependencyHandler handler, ArtifactCollector artifacts, Set<ComponentIdentifier> workQueue) {
         ArrayList<Dependency> dependencies = new ArrayList<>();
         for (String type : ARTIFACT_TYPES) {
             for (ComponentIdentifier id : workQueue) {
                 if (id instanceof ModuleComponentIdentifier) {
                     ModuleComponentIdentifier mid = (ModuleComponentIdentifier) id;
-                    dependencies.add(getProject().getDependencies().create(mid.getGroup() + ":" + mid.getModule() + ":" + mid.getVersion() + "@" + type));
+                    dependencies.add(handler.create(mid.getGroup() + ":" + mid.getModule() + ":" + mid.getVersion() + "@" + type));
                 }
             }
         }
+        if (dependencies.isEmpty()) {
+            return;
+        }
         LenientConfiguration extraConfig = configurations.detachedConfiguration(dependencies.toArray(new Dependency[0])).setTransitive(true).getResolvedConfiguration().getLenientConfiguration();
         for (ResolvedArtifact resolvedArtifact : extraConfig.getArtifacts()) {
             File f = resolvedArtifact.getFile();
@@ -176,23 +523,144 @@ public abstract class DependencyExportTask extends DefaultTask {
                 logger.warn("Group, name and version should be set for the artifact {}:{}:{}", group, name, version);
                 continue;
             }
-            artifactCopy.copyToMavenRepository(f, group, name, version);
+            artifacts.add(f, group, name, version);
         }
     }
 
-    @SuppressWarnings({"unchecked", "rawtypes"})
-    private void copyBoms(ConfigurationContainer configurations, DependencyHandler handler, ArtifactCopy artifactCopy, Set<ComponentIdentifier> componentIdentifiers) throws IOException {
-        ArtifactResolutionResult artifacts = handler.createArtifactResolutionQuery().forComponents(componentIdentifiers).withArtifacts(MavenModule.class, new Class[]{MavenPomArtifact.class}).execute();
-        for (ComponentArtifactsResult component : artifacts.getResolvedComponents()) {
-            if (component.getId() instanceof ModuleComponentIdentifier) {
-                for (ArtifactResult artifact : component.getArtifacts(MavenPomArtifact.class)) {
-                    logger.debug("Found artifact {}", artifact.getId());
-                    artifactCopy.copyToMavenRepository(((ResolvedArtifactResult) artifact));
+    private List<Configuration> getExportedConfigurations(ConfigurationContainer container) {
+        ArrayList<Configuration> configurations = new ArrayList<>();
+        if (hasConfigurations()) {
+            for (String configName : dependencyOptions.getConfigurations()) {
+                Configuration config = container.findByName(configName);
+                if (config == null)
+                    throw new IllegalArgumentException(String.format("Configuration %s was not found", configName));
+                configurations.add(config);
+            }
+        } else {
+            configurations.addAll(container);
+        }
+        return configurations;
+    }
+
+    private boolean hasConfigurations() {
+        return dependencyOptions.getConfigurations() != null && dependencyOptions.getConfigurations().length > 0;
+    }
+
+    private List<ExportedConfiguration> getExported() {
+        ArrayList<ExportedConfiguration> configurations = new ArrayList<>(exportedConfigurations.get());
+        if (isBuildScript()) {
+            configurations.addAll(buildscriptConfigurations.get());
+        }
+        return configurations;
+    }
+
+    private List<FileCollection> getExportedFiles() {
+        return getExported().stream().map(x -> x.files).collect(Collectors.toList());
+    }
+
+    /**
+     * Describes the resolved dependency graphs of the exported configurations
+     * and the options that change the exported files or their layout
+     * @param withFiles - add the name, size and modification time of the resolved artifact files
+     */
+    private List<String> describeExport(boolean withFiles) {
+        ArrayList<String> lines = new ArrayList<>();
+        lines.add("scopes:" + String.join(",", dependencyOptions.getScopes()));
+        lines.add("nearestWins:" + dependencyOptions.isNearestWins());
+        lines.add("buildScript:" + isBuildScript());
+        lines.add("copyStrategy:" + dependencyOptions.getCopyStrategy());
+        lines.add("sharedStore:" + (dependencyOptions.isSharedStore() ? getStoreDirectory().get().getAsFile() : ""));
+        addComponents(lines, "project", exportedConfigurations.get(), withFiles);
+        if (isBuildScript()) {
+            addComponents(lines, "buildscript", buildscriptConfigurations.get(), withFiles);
+        }
+        return lines;
+    }
+
+    /**
+     * Computes the fingerprint of the resolved dependency graphs of the exported configurations,
+     * the resolved artifact files and the options that change the exported files or their layout
+     */
+    private String fingerprint() {
+        List<String> lines = describeExport(true);
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            for (String line : lines) {
+                digest.update(line.getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) '\n');
+            }
+            StringBuilder hexString = new StringBuilder();
+            for (byte b : digest.digest()) {
+                hexString.append(String.format("%02x", b));
+            }
+            return hexString.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static void addComponents(List<String> lines, String prefix, List<ExportedConfiguration> configurations, boolean withFiles) {
+        for (ExportedConfiguration config : configurations) {
+            ArrayList<String> components = new ArrayList<>();
+            for (ResolvedComponentResult component : getAllComponents(config.root.get())) {
+                components.add(component.getId().getDisplayName());
+            }
+            // a republished snapshot keeps its coordinates but changes its file
+            if (withFiles) {
+                List<ComponentArtifactIdentifier> ids = config.artifactIds.get();
+                List<File> files = config.artifactFiles.get();
+                for (int i = 0; i < ids.size(); i++) {
+                    File file = files.get(i);
+                    components.add(String.format("%s %s %d %d", ids.get(i).getDisplayName(), file.getName(), file.length(), file.lastModified()));
                 }
             }
+            Collections.sort(components);
+            lines.add(prefix + ":" + config.name);
+            lines.addAll(components);
         }
     }
 
+    private boolean isBuildScript() {
+        return !hasConfigurations() || dependencyOptions.isBuildScript();
+    }
+
+    /**
+     * Walks the POM closure of the exported configurations and the buildscript classpath
+     */
+    private DependencyClosure walk(DependencyHandler projectDependencies, ConfigurationContainer projectConfigurations, ScriptHandler buildscript) {
+        long start = System.nanoTime();
+        ExportMetrics metrics = new ExportMetrics();
+        ArtifactCollector artifacts = new ArtifactCollector();
+        PomModelCache modelCache = new PomModelCache();
+        TaskThreadDispatcher dispatcher = new TaskThreadDispatcher();
+        ArrayList<Classpath> classpaths = new ArrayList<>();
+        classpaths.add(createClasspath("project", projectDependencies, projectConfigurations, exportedConfigurations.get(), artifacts, modelCache, dispatcher));
+        if (isBuildScript()) {
+            classpaths.add(createClasspath("buildscript", buildscript.getDependencies(), buildscript.getConfigurations(), buildscriptConfigurations.get(), artifacts, modelCache, dispatcher));
+        }
+        if (dependencyOptions.isParallelClasspaths()) {
+            // walk the union of all classpaths at once
+            for (Classpath classpath : classpaths) {
+                logRedundantWalks(classpath);
+            }
+            walkClasspaths(classpaths, artifacts, metrics, dispatcher);
+        } else {
+            for (Classpath classpath : classpaths) {
+                if (classpath == classpaths.get(0) && !hasConfigurations()) {
+                    // all project configurations overlap, walk their union once
+                    logRedundantWalks(classpath);
+                    walkClasspaths(Collections.singletonList(classpath), artifacts, metrics, dispatcher);
+                    continue;
+                }
+                for (ExportedConfiguration config : classpath.configurations) {
+                    walkClasspaths(Collections.singletonList(classpath.withConfiguration(config)), artifacts, metrics, dispatcher);
+                }
+            }
+        }
+        logger.info("POM model cache: {} hits, {} misses", modelCache.getHits(), modelCache.getMisses());
+        return new DependencyClosure(artifacts, metrics, System.nanoTime() - start);
+    }
+
     /**
      * Task action to write dependencies
      *
@@ -201,24 +669,42 @@ public abstract class DependencyExportTask extends DefaultTask {
     @TaskAction
     public void export() throws IOException {
         Path outputLocationRoot = getOutputDirectory().getAsFile().get().toPath();
-        ArtifactCopy artifactCopy = new ArtifactCopy(outputLocationRoot);
-        if (dependencyOptions.getConfigurations() != null && dependencyOptions.getConfigurations().length > 0) {
-            for (String configName : dependencyOptions.getConfigurations()) {
-                Configuration config = getProject().getConfigurations().findByName(configName);
-                if (config == null)
-                    throw new IllegalArgumentException(String.format("Configuration %s was not found", configName));
-                exportConfiguration(config, artifactCopy);
-            }
-            if (dependencyOptions.isBuildScript()) {
-                exportBuildScript(artifactCopy);
-                exportSettings(artifactCopy);
+        String fingerprint = null;
+        if (dependencyOptions.isIncremental()) {
+            ExportManifest previous = ExportManifest.read(outputLocationRoot);
+            fingerprint = fingerprint();
+            if (fingerprint.equals(previous.getFingerprint()) && previous.isIntact(outputLocationRoot)) {
+                logger.lifecycle("Exported dependencies are up to date");
+                ExportMetrics metrics = new ExportMetrics();
+                metrics.setExported(previous);
+                DependencyExportAction.writeMetrics(metrics, new ArtifactCopy(outputLocationRoot, previous), getReportFile().get().getAsFile().toPath());
+                return;
             }
-        } else {
-            for (Configuration config : getProject().getConfigurations()) {
-                exportConfiguration(config, artifactCopy);
+        }
+
+        // artifacts of project dependencies are task outputs, they are resolved when the task runs
+        ArtifactCollector incoming = new ArtifactCollector();
+        for (ExportedConfiguration config : getExported()) {
+            List<ComponentArtifactIdentifier> ids = config.artifactIds.get();
+            List<File> files = config.artifactFiles.get();
+            for (int i = 0; i < ids.size(); i++) {
+                incoming.add(ids.get(i).getComponentIdentifier(), files.get(i));
             }
-            exportBuildScript(artifactCopy);
-            exportSettings(artifactCopy);
         }
+        DependencyClosure dependencyClosure = closure.get();
+        String exportFingerprint = fingerprint;
+        WorkQueue workQueue = getWorkerExecutor().noIsolation();
+        workQueue.submit(DependencyExportAction.class, parameters -> {
+            parameters.getOutputDirectory().set(getOutputDirectory());
+            if (dependencyOptions.isSharedStore()) {
+                parameters.getStoreDirectory().set(getStoreDirectory());
+            }
+            parameters.getReportFile().set(getReportFile());
+            parameters.getFingerprint().set(exportFingerprint);
+            parameters.getCopyStrategy().set(dependencyOptions.getCopyStrategy());
+            parameters.getArtifacts().set(incoming.getArtifacts());
+            parameters.getClosure().set(dependencyClosure);
+            parameters.getClosureWalked().set(dependencyClosure.isWalked());
+        });
     }
 }
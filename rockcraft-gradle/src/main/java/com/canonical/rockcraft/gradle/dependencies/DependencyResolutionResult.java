@@ -15,6 +15,8 @@ package com.canonical.rockcraft.gradle.dependencies;
 
 import org.gradle.api.artifacts.component.ComponentIdentifier;
 
+import java.util.Collections;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -23,6 +25,8 @@ import java.util.Set;
 public class DependencyResolutionResult {
     private Set<ComponentIdentifier> dependencies;
     private Set<ComponentIdentifier> dependencyManagement;
+    private Map<ComponentIdentifier, Set<String>> exclusions;
+    private Map<ComponentIdentifier, String> scopes;
 
     /**
      * Result of dependency resolution
@@ -30,8 +34,31 @@ public class DependencyResolutionResult {
      * @param dependencyManagement - dependency management boms
      */
     public DependencyResolutionResult(Set<ComponentIdentifier> dependencies, Set<ComponentIdentifier> dependencyManagement) {
+        this(dependencies, dependencyManagement, Collections.emptyMap());
+    }
+
+    /**
+     * Result of dependency resolution
+     * @param dependencies - direct dependencies
+     * @param dependencyManagement - dependency management boms
+     * @param exclusions - groupId:artifactId exclusions that apply to the subtree of each dependency
+     */
+    public DependencyResolutionResult(Set<ComponentIdentifier> dependencies, Set<ComponentIdentifier> dependencyManagement, Map<ComponentIdentifier, Set<String>> exclusions) {
+        this(dependencies, dependencyManagement, exclusions, Collections.emptyMap());
+    }
+
+    /**
+     * Result of dependency resolution
+     * @param dependencies - direct dependencies
+     * @param dependencyManagement - dependency management boms
+     * @param exclusions - groupId:artifactId exclusions that apply to the subtree of each dependency
+     * @param scopes - Maven scopes of the direct dependencies
+     */
+    public DependencyResolutionResult(Set<ComponentIdentifier> dependencies, Set<ComponentIdentifier> dependencyManagement, Map<ComponentIdentifier, Set<String>> exclusions, Map<ComponentIdentifier, String> scopes) {
         this.dependencies = dependencies;
         this.dependencyManagement = dependencyManagement;
+        this.exclusions = exclusions;
+        this.scopes = scopes;
     }
 
     /**
@@ -45,4 +72,22 @@ public class DependencyResolutionResult {
      * @return project boms
      */
     public Set<ComponentIdentifier> getDependencyManagement() { return this.dependencyManagement; }
+
+    /**
+     * Get exclusions of the dependency subtree
+     * @param dependency - direct dependency
+     * @return groupId:artifactId exclusions
+     */
+    public Set<String> getExclusions(ComponentIdentifier dependency) {
+        return this.exclusions.getOrDefault(dependency, Collections.emptySet());
+    }
+
+    /**
+     * Get Maven scope of the dependency
+     * @param dependency - direct dependency
+     * @return scope, compile if not known
+     */
+    public String getScope(ComponentIdentifier dependency) {
+        return this.scopes.getOrDefault(dependency, "compile");
+    }
 }
@@ -0,0 +1,325 @@
+/*
+ * Copyright 2025 Canonical Ltd.
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ * <p>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.canonical.rockcraft.gradle.dependencies;
+
+import com.canonical.rockcraft.util.ExportManifest;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Collects timings and counters of the dependency export
+ */
+public class ExportMetrics {
+    /**
+     * Number of the slowest artifacts kept in the report
+     */
+    public static final int SLOWEST_ARTIFACTS = 10;
+
+    /**
+     * Phases of the dependency export
+     */
+    public enum Phase {
+        /**
+         * Artifact resolution queries for POM files
+         */
+        resolution,
+        /**
+         * Building effective POM models
+         */
+        modelBuilding,
+        /**
+         * Resolving jar and module files with detached configurations
+         */
+        extraFiles,
+        /**
+         * Copying files into the repository, including checksums
+         */
+        copy
+    }
+
+    /**
+     * Time spent on a single artifact
+     */
+    private static class ArtifactTime {
+        private final String path;
+        private final long size;
+        private final long nanos;
+
+        private ArtifactTime(String path, long size, long nanos) {
+            this.path = path;
+            this.size = size;
+            this.nanos = nanos;
+        }
+    }
+
+    private final EnumMap<Phase, AtomicLong> phases = new EnumMap<>(Phase.class);
+    private final AtomicLong components = new AtomicLong();
+    private final AtomicLong poms = new AtomicLong();
+    private final AtomicLong boms = new AtomicLong();
+    private final AtomicLong writtenJars = new AtomicLong();
+    private long exportedJars;
+    private long duplicates;
+    private long walkNanos;
+    private boolean closureCached;
+    private final PriorityQueue<ArtifactTime> slowest = new PriorityQueue<>(Comparator.comparingLong(x -> x.nanos));
+    private final long start = System.nanoTime();
+    private long end;
+
+    /**
+     * Constructs ExportMetrics
+     */
+    public ExportMetrics() {
+        for (Phase phase : Phase.values()) {
+            phases.put(phase, new AtomicLong());
+        }
+    }
+
+    /**
+     * Adds time spent in the phase
+     * @param phase - export phase
+     * @param nanos - time in nanoseconds
+     */
+    public void addTime(Phase phase, long nanos) {
+        phases.get(phase).addAndGet(nanos);
+    }
+
+    /**
+     * Time spent in the phase
+     * @param phase - export phase
+     * @return time in nanoseconds
+     */
+    public long getTime(Phase phase) {
+        return phases.get(phase).get();
+    }
+
+    /**
+     * Counts components whose POM was looked up
+     * @param count - number of components
+     */
+    public void addComponents(long count) {
+        components.addAndGet(count);
+    }
+
+    /**
+     * Counts POM files read for dependencies
+     * @param count - number of POM files
+     */
+    public void addPoms(long count) {
+        poms.addAndGet(count);
+    }
+
+    /**
+     * Counts BOMs copied without following their dependencies
+     * @param count - number of BOMs
+     */
+    public void addBoms(long count) {
+        boms.addAndGet(count);
+    }
+
+    /**
+     * Number of components whose POM was looked up
+     * @return component count
+     */
+    public long getComponents() {
+        return components.get();
+    }
+
+    /**
+     * Number of POM files read for dependencies
+     * @return POM count
+     */
+    public long getPoms() {
+        return poms.get();
+    }
+
+    /**
+     * Number of BOMs copied without following their dependencies
+     * @return BOM count
+     */
+    public long getBoms() {
+        return boms.get();
+    }
+
+    /**
+     * Adds the statistics of the dependency closure walk
+     * @param closure - dependency closure
+     * @param walked - false when the closure was loaded from the configuration cache,
+     *               the time of the walk is not added in this case
+     */
+    public void addClosure(DependencyClosure closure, boolean walked) {
+        addComponents(closure.getComponents());
+        addPoms(closure.getPoms());
+        addBoms(closure.getBoms());
+        duplicates += closure.getDuplicates();
+        closureCached = !walked;
+        if (walked) {
+            for (Phase phase : Phase.values()) {
+                addTime(phase, closure.getTime(phase));
+            }
+            walkNanos += closure.getWalkNanos();
+        }
+    }
+
+    /**
+     * Records an artifact copy that wrote a file into the repository
+     * @param path - repository path of the artifact
+     * @param size - size of the artifact
+     * @param nanos - time spent copying and hashing the artifact
+     */
+    public void addArtifact(String path, long size, long nanos) {
+        addTime(Phase.copy, nanos);
+        if (path.endsWith(".jar")) {
+            writtenJars.incrementAndGet();
+        }
+        synchronized (slowest) {
+            slowest.add(new ArtifactTime(path, size, nanos));
+            if (slowest.size() > SLOWEST_ARTIFACTS) {
+                slowest.poll();
+            }
+        }
+    }
+
+    /**
+     * Counts the jars in the repository, including the files kept from the previous export
+     * @param manifest - manifest of the exported files
+     */
+    public void setExported(ExportManifest manifest) {
+        long count = 0;
+        for (String path : manifest.getEntries().keySet()) {
+            if (path.endsWith(".jar")) {
+                count++;
+            }
+        }
+        exportedJars = count;
+    }
+
+    /**
+     * Marks the end of the export
+     */
+    public void finish() {
+        end = System.nanoTime();
+    }
+
+    // the closure may be walked before the metrics are created
+    private long getWallTime() {
+        return end - start + walkNanos;
+    }
+
+    private static long millis(long nanos) {
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+
+    private List<ArtifactTime> getSlowest() {
+        ArrayList<ArtifactTime> result;
+        synchronized (slowest) {
+            result = new ArrayList<>(slowest);
+        }
+        result.sort(Comparator.comparingLong((ArtifactTime x) -> x.nanos).reversed());
+        return result;
+    }
+
+    /**
+     * Writes the JSON report
+     * @param report - report file
+     * @param artifactCopy - artifact copy used by the export
+     * @throws IOException - failed to write the report
+     */
+    public void write(Path report, ArtifactCopy artifactCopy) throws IOException {
+        StringBuilder json = new StringBuilder();
+        json.append("{\n");
+        json.append("  \"wallTimeMillis\": ").append(millis(getWallTime())).append(",\n");
+        json.append("  \"closureCached\": ").append(closureCached).append(",\n");
+        json.append("  \"phases\": {\n");
+        for (Phase phase : Phase.values()) {
+            json.append("    \"").append(phase.name()).append("Millis\": ").append(millis(phases.get(phase).get())).append(",\n");
+        }
+        json.append("    \"hashingMillis\": ").append(artifactCopy.getHashMillis()).append("\n");
+        json.append("  },\n");
+        json.append("  \"components\": ").append(components.get()).append(",\n");
+        json.append("  \"poms\": ").append(poms.get()).append(",\n");
+        json.append("  \"boms\": ").append(boms.get()).append(",\n");
+        json.append("  \"jars\": ").append(exportedJars).append(",\n");
+        json.append("  \"writtenJars\": ").append(writtenJars.get()).append(",\n");
+        json.append("  \"copiedFiles\": ").append(artifactCopy.getCopied().getFiles()).append(",\n");
+        json.append("  \"copiedBytes\": ").append(artifactCopy.getCopied().getBytes()).append(",\n");
+        json.append("  \"skippedFiles\": ").append(artifactCopy.getSkipped().getFiles()).append(",\n");
+        json.append("  \"skippedBytes\": ").append(artifactCopy.getSkipped().getBytes()).append(",\n");
+        json.append("  \"duplicates\": ").append(duplicates + artifactCopy.getDuplicateCount()).append(",\n");
+        json.append("  \"slowestArtifacts\": [");
+        List<ArtifactTime> artifacts = getSlowest();
+        for (int i = 0; i < artifacts.size(); i++) {
+            ArtifactTime artifact = artifacts.get(i);
+            json.append(i == 0 ? "\n" : ",\n");
+            json.append("    {\"path\": \"").append(escape(artifact.path))
+                    .append("\", \"bytes\": ").append(artifact.size)
+                    .append(", \"millis\": ").append(millis(artifact.nanos)).append("}");
+        }
+        json.append(artifacts.isEmpty() ? "]\n" : "\n  ]\n");
+        json.append("}\n");
+        Files.createDirectories(report.getParent());
+        Files.write(report, json.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Short summary of the export for the console
+     * @param artifactCopy - artifact copy used by the export
+     * @return summary lines
+     */
+    public List<String> getSummary(ArtifactCopy artifactCopy) {
+        ArrayList<String> lines = new ArrayList<>();
+        lines.add(String.format("Exported %d components (%d POMs, %d BOMs, %d jars, %d jars written) in %d ms",
+                components.get(), poms.get(), boms.get(), exportedJars, writtenJars.get(), millis(getWallTime())));
+        if (closureCached) {
+            lines.add("  dependency closure loaded from the configuration cache");
+        }
+        lines.add(String.format("  resolution %d ms, model building %d ms, extra files %d ms, copy %d ms, hashing %d ms",
+                millis(phases.get(Phase.resolution).get()),
+                millis(phases.get(Phase.modelBuilding).get()),
+                millis(phases.get(Phase.extraFiles).get()),
+                millis(phases.get(Phase.copy).get()),
+                artifactCopy.getHashMillis()));
+        lines.add(String.format("  %d bytes copied, %d bytes skipped, %d duplicate requests",
+                artifactCopy.getCopied().getBytes(), artifactCopy.getSkipped().getBytes(), duplicates + artifactCopy.getDuplicateCount()));
+        List<ArtifactTime> artifacts = getSlowest();
+        if (!artifacts.isEmpty()) {
+            ArtifactTime artifact = artifacts.get(0);
+            lines.add(String.format("  slowest artifact %s (%d bytes) %d ms", artifact.path, artifact.size, millis(artifact.nanos)));
+        }
+        return lines;
+    }
+
+    private static String escape(String value) {
+        StringBuilder sb = new StringBuilder();
+        for (char c : value.toCharArray()) {
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < 0x20) {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+}
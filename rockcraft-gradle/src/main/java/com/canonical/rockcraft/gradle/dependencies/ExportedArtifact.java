@@ -0,0 +1,74 @@
+/*
+ * Copyright 2025 Canonical Ltd.
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ * <p>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.canonical.rockcraft.gradle.dependencies;
+
+import java.io.File;
+import java.io.Serializable;
+
+/**
+ * Artifact file of the exported dependencies and its maven coordinates
+ */
+public class ExportedArtifact implements Serializable {
+    private static final long serialVersionUID = 1L;
+    private final File file;
+    private final String group;
+    private final String name;
+    private final String version;
+
+    /**
+     * Constructs ExportedArtifact
+     * @param file    - artifact file
+     * @param group   - maven group id
+     * @param name    - maven artifact name
+     * @param version - maven artifact version
+     */
+    public ExportedArtifact(File file, String group, String name, String version) {
+        this.file = file;
+        this.group = group;
+        this.name = name;
+        this.version = version;
+    }
+
+    /**
+     * Gets the artifact file
+     * @return artifact file
+     */
+    public File getFile() { return file; }
+
+    /**
+     * Gets the maven group id
+     * @return group id
+     */
+    public String getGroup() { return group; }
+
+    /**
+     * Gets the maven artifact name
+     * @return artifact name
+     */
+    public String getName() { return name; }
+
+    /**
+     * Gets the maven artifact version
+     * @return artifact version
+     */
+    public String getVersion() { return version; }
+
+    /**
+     * Gets the location of the artifact in the maven repository
+     * @return repository path
+     */
+    public String getPath() {
+        return String.format("%s/%s/%s/%s", group.replace('.', '/'), name, version, file.getName());
+    }
+}
@@ -14,6 +14,7 @@
 package com.canonical.rockcraft.gradle.dependencies;
 
 import org.apache.commons.text.StringSubstitutor;
+import org.apache.maven.model.Exclusion;
 import org.apache.maven.model.Model;
 import org.apache.maven.model.building.DefaultModelBuilder;
 import org.apache.maven.model.building.DefaultModelBuilderFactory;
@@ -31,8 +32,11 @@ import org.gradle.api.logging.Logging;
 import org.gradle.internal.component.external.model.DefaultModuleComponentIdentifier;
 
 import java.io.File;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -42,45 +46,76 @@ public class PomDependencyReader {
     private final Logger logger = Logging.getLogger(PomDependencyReader.class);
     private final PomResolver pomResolver;
     private final DefaultModelBuilder builder;
+    private final PomModelCache modelCache;
 
     /**
      * Constructs POM dependency reader
      * @param handler - DependencyHandler to construct new dependencies
      * @param container - ConfigurationContainer to create detached configurations
-     * @param artifactCopy - ArtifactCopy utility class to copy POMs into destination
+     * @param artifacts - ArtifactCollector to collect the POMs of the closure
      */
-    public PomDependencyReader(DependencyHandler handler, ConfigurationContainer container, ArtifactCopy artifactCopy) {
+    public PomDependencyReader(DependencyHandler handler, ConfigurationContainer container, ArtifactCollector artifacts) {
+        this(handler, container, artifacts, new PomModelCache(), new TaskThreadDispatcher());
+    }
+
+    /**
+     * Constructs POM dependency reader
+     * The reader can build models on any thread, parent and BOM POMs
+     * are resolved on the thread that owns the dispatcher.
+     * @param handler - DependencyHandler to construct new dependencies
+     * @param container - ConfigurationContainer to create detached configurations
+     * @param artifacts - ArtifactCollector to collect the POMs of the closure
+     * @param modelCache - cache of parent and imported POMs shared between readers
+     * @param dispatcher - dispatcher to the task thread
+     */
+    PomDependencyReader(DependencyHandler handler, ConfigurationContainer container, ArtifactCollector artifacts, PomModelCache modelCache, TaskThreadDispatcher dispatcher) {
         DefaultModelBuilderFactory factory = new DefaultModelBuilderFactory();
         this.builder = factory.newInstance();
         this.builder.setModelValidator(new SilentModelValidator());
-        this.pomResolver = new PomResolver(handler, container, artifactCopy);
+        this.modelCache = modelCache;
+        this.pomResolver = new PomResolver(handler, container, artifacts, dispatcher, modelCache);
     }
 
     /**
      * Read pom file and return dependencies
      * @param pom - POM file
+     * @param scopes - scopes of the followed dependencies
      * @return ComponentIdentifiers for dependencies
      */
     DependencyResolutionResult read(File pom, Set<String> scopes) {
-        HashSet<ComponentIdentifier> toLookup = new HashSet<>();
+        return read(pom, scopes, Collections.emptySet());
+    }
+
+    /**
+     * Read pom file and return dependencies that are not excluded
+     * @param pom - POM file
+     * @param scopes - scopes of the followed dependencies
+     * @param exclusions - groupId:artifactId exclusions inherited from the dependency path of the POM
+     * @return ComponentIdentifiers for dependencies in declaration order
+     */
+    DependencyResolutionResult read(File pom, Set<String> scopes, Set<String> exclusions) {
+        LinkedHashSet<ComponentIdentifier> toLookup = new LinkedHashSet<>();
         HashSet<ComponentIdentifier> bomLookup = new HashSet<>();
+        HashMap<ComponentIdentifier, Set<String>> dependencyExclusions = new HashMap<>();
+        HashMap<ComponentIdentifier, String> dependencyScopes = new HashMap<>();
 
         try {
             ModelBuildingRequest req = new DefaultModelBuildingRequest();
             req.setModelResolver(pomResolver);
+            req.setModelCache(modelCache);
             req.setPomFile(pom);
             req.setSystemProperties(System.getProperties());
             req.setValidationLevel(ModelBuildingRequest.VALIDATION_LEVEL_MINIMAL);
             ModelBuildingResult builtModel = builder.build(req);
-            processModel(scopes, builtModel.getEffectiveModel(), toLookup, bomLookup);
+            processModel(scopes, exclusions, builtModel.getEffectiveModel(), toLookup, bomLookup, dependencyExclusions, dependencyScopes);
         } catch (ModelBuildingException mbe) {
             logger.warn("Unable to process " + pom, mbe);
             throw new RuntimeException(mbe);
         }
-        return new DependencyResolutionResult(toLookup, bomLookup);
+        return new DependencyResolutionResult(toLookup, bomLookup, dependencyExclusions, dependencyScopes);
     }
 
-    private void processModel(Set<String> scopes, Model mavenModel, HashSet<ComponentIdentifier> toLookup, HashSet<ComponentIdentifier> bomLookup) {
+    private void processModel(Set<String> scopes, Set<String> exclusions, Model mavenModel, Set<ComponentIdentifier> toLookup, Set<ComponentIdentifier> bomLookup, Map<ComponentIdentifier, Set<String>> dependencyExclusions, Map<ComponentIdentifier, String> dependencyScopes) {
         if (mavenModel != null) {
             StringSubstitutor replacer = createPropertyReplacer(mavenModel);
             if (mavenModel.getDependencies() != null) {
@@ -91,7 +126,20 @@ public class PomDependencyReader {
                     if (scopes.contains(scope)) {
                         ModuleComponentIdentifier id =
                                 createComponentIdentifier(replacer, mavenDep);
+                        if (isExcluded(exclusions, id.getGroup(), id.getModule())) {
+                            logger.debug("Dropped " + mavenDep + " because it is excluded");
+                            continue;
+                        }
                         toLookup.add(id);
+                        // exclusions apply to the whole subtree of the dependency
+                        HashSet<String> inherited = new HashSet<>(exclusions);
+                        for (Exclusion exclusion : mavenDep.getExclusions()) {
+                            inherited.add(replacer.replace(exclusion.getGroupId()) + ":" + replacer.replace(exclusion.getArtifactId()));
+                        }
+                        dependencyExclusions.put(id, inherited);
+                        if (scope != null) {
+                            dependencyScopes.put(id, scope);
+                        }
                     } else {
                         logger.debug("Dropped "+ mavenDep + " because scope "+ scope);
                     }
@@ -107,6 +155,16 @@ public class PomDependencyReader {
         }
     }
 
+    private static boolean isExcluded(Set<String> exclusions, String group, String artifact) {
+        if (exclusions.isEmpty()) {
+            return false;
+        }
+        return exclusions.contains(group + ":" + artifact)
+                || exclusions.contains(group + ":*")
+                || exclusions.contains("*:" + artifact)
+                || exclusions.contains("*:*");
+    }
+
     private static ModuleComponentIdentifier createComponentIdentifier(StringSubstitutor replacer, org.apache.maven.model.Dependency dep) {
         return DefaultModuleComponentIdentifier.newId(
                 DefaultModuleIdentifier.newId(
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2025 Canonical Ltd.
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ * <p>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.canonical.rockcraft.gradle.dependencies;
+
+import org.apache.maven.model.building.ModelCache;
+
+import java.io.File;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-build cache of parent and imported POMs.
+ * Holds the resolved POM files and the models parsed by the model builder,
+ * keyed by group, artifact and version.
+ */
+class PomModelCache implements ModelCache {
+    private final ConcurrentHashMap<String, Object> models = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, File> files = new ConcurrentHashMap<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    @Override
+    public void put(String groupId, String artifactId, String version, String tag, Object data) {
+        models.put(key(groupId, artifactId, version) + ":" + tag, data);
+    }
+
+    @Override
+    public Object get(String groupId, String artifactId, String version, String tag) {
+        return count(models.get(key(groupId, artifactId, version) + ":" + tag));
+    }
+
+    /**
+     * Get the resolved POM file
+     * @param groupId - group id
+     * @param artifactId - artifact id
+     * @param version - version
+     * @return POM file or null if it was not resolved yet
+     */
+    File getFile(String groupId, String artifactId, String version) {
+        return count(files.get(key(groupId, artifactId, version)));
+    }
+
+    /**
+     * Store the resolved POM file
+     * @param groupId - group id
+     * @param artifactId - artifact id
+     * @param version - version
+     * @param pom - POM file
+     */
+    void putFile(String groupId, String artifactId, String version, File pom) {
+        files.put(key(groupId, artifactId, version), pom);
+    }
+
+    /**
+     * Number of cache lookups that returned a value
+     * @return hit count
+     */
+    long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Number of cache lookups that did not return a value
+     * @return miss count
+     */
+    long getMisses() {
+        return misses.get();
+    }
+
+    private <T> T count(T value) {
+        if (value == null) {
+            misses.incrementAndGet();
+        } else {
+            hits.incrementAndGet();
+        }
+        return value;
+    }
+
+    private static String key(String groupId, String artifactId, String version) {
+        return groupId + ":" + artifactId + ":" + version;
+    }
+}
@@ -35,22 +35,39 @@ import java.io.InputStream;
 class PomResolver implements ModelResolver {
     private final ConfigurationContainer configurationContainer;
     private final DependencyHandler handler;
-    private final ArtifactCopy artifactCopy;
+    private final ArtifactCollector artifacts;
+    private final TaskThreadDispatcher dispatcher;
+    private final PomModelCache modelCache;
 
-    public PomResolver(DependencyHandler handler, ConfigurationContainer configurationContainer, ArtifactCopy artifactCopy) {
+    public PomResolver(DependencyHandler handler, ConfigurationContainer configurationContainer, ArtifactCollector artifacts, TaskThreadDispatcher dispatcher, PomModelCache modelCache) {
         this.configurationContainer = configurationContainer;
         this.handler = handler;
-        this.artifactCopy = artifactCopy;
+        this.artifacts = artifacts;
+        this.dispatcher = dispatcher;
+        this.modelCache = modelCache;
     }
 
     public ModelSource resolveModel(String groupId, String artifactId, String version) throws UnresolvableModelException {
-        Dependency dep = handler.create(String.format("%s:%s:%s@pom", groupId, artifactId, version));
-        Configuration pomConfiguration = configurationContainer.detachedConfiguration(dep);
-        final File pomXml = pomConfiguration.getSingleFile();
-        try {
-            artifactCopy.copyToMavenRepository(pomXml, groupId, artifactId, version);
-        } catch (IOException e) {
-            throw new RuntimeException(e);
+        File cached = modelCache.getFile(groupId, artifactId, version);
+        final File pomXml;
+        if (cached != null) {
+            pomXml = cached;
+        } else {
+            try {
+                // configurations can only be resolved on the task thread
+                pomXml = dispatcher.call(() -> {
+                    Dependency dep = handler.create(String.format("%s:%s:%s@pom", groupId, artifactId, version));
+                    Configuration pomConfiguration = configurationContainer.detachedConfiguration(dep);
+                    File f = pomConfiguration.getSingleFile();
+                    artifacts.add(f, groupId, artifactId, version);
+                    return f;
+                });
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+            modelCache.putFile(groupId, artifactId, version, pomXml);
         }
         return new ModelSource() {
             public InputStream getInputStream() throws IOException {
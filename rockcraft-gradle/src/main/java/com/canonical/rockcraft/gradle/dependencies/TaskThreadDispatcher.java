@@ -0,0 +1,128 @@
+/*
+ * Copyright 2025 Canonical Ltd.
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ * <p>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.canonical.rockcraft.gradle.dependencies;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs work on the thread that created the dispatcher.
+ * Gradle does not allow resolving configurations from threads it does not manage,
+ * so model building workers hand POM resolution back to the task thread.
+ */
+class TaskThreadDispatcher {
+    private static final long POLL_INTERVAL_MS = 10;
+    private final Thread owner = Thread.currentThread();
+    private final LinkedBlockingQueue<FutureTask<?>> queue = new LinkedBlockingQueue<>();
+
+    /**
+     * Runs the callable on the owner thread and waits for the result.
+     * The callable runs immediately when called from the owner thread.
+     * @param callable - work to run
+     * @return result of the callable
+     * @throws Exception - exception thrown by the callable
+     */
+    <T> T call(Callable<T> callable) throws Exception {
+        if (Thread.currentThread() == owner) {
+            return callable.call();
+        }
+        FutureTask<T> task = new FutureTask<>(callable);
+        queue.add(task);
+        try {
+            return task.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Runs the tasks on a bounded thread pool while servicing the dispatched work on the owner thread.
+     * The tasks run one after another on the owner thread when parallelism is one.
+     * @param tasks - tasks to run
+     * @param parallelism - maximum number of concurrent tasks
+     * @return results in the order of the tasks
+     */
+    <T> List<T> invokeAll(List<Callable<T>> tasks, int parallelism) {
+        ArrayList<T> results = new ArrayList<>(tasks.size());
+        if (parallelism <= 1 || tasks.size() < 2) {
+            for (Callable<T> task : tasks) {
+                try {
+                    results.add(task.call());
+                } catch (RuntimeException e) {
+                    throw e;
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }
+            return results;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, tasks.size()));
+        try {
+            ArrayList<Future<T>> futures = new ArrayList<>(tasks.size());
+            for (Callable<T> task : tasks) {
+                futures.add(executor.submit(task));
+            }
+            runUntilDone(futures);
+            for (Future<T> future : futures) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        return results;
+    }
+
+    /**
+     * Services the dispatched work on the owner thread until all futures complete
+     * @param futures - futures to wait for
+     * @throws InterruptedException - the owner thread was interrupted
+     */
+    void runUntilDone(Collection<? extends Future<?>> futures) throws InterruptedException {
+        while (!isDone(futures)) {
+            FutureTask<?> task = queue.poll(POLL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+            if (task != null) {
+                task.run();
+            }
+        }
+    }
+
+    private static boolean isDone(Collection<? extends Future<?>> futures) {
+        for (Future<?> future : futures) {
+            if (!future.isDone()) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -14,12 +14,15 @@
 package com.canonical.rockcraft.gradle;
 
 import com.canonical.rockcraft.builder.IRockcraftNames;
+import com.canonical.rockcraft.gradle.dependencies.DependencyExportTask;
+import com.canonical.rockcraft.util.ExportManifest;
 import org.gradle.testkit.runner.BuildResult;
 import org.gradle.testkit.runner.TaskOutcome;
 import org.junit.jupiter.api.Tag;
 import org.junit.jupiter.api.Test;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 
@@ -107,4 +110,167 @@ public class DependencyExportTest extends BaseRockcraftTest {
         Path pluginJar = projectDir.toPath().resolve("build/" + IRockcraftNames.BUILD_ROCK_OUTPUT + "/" + IRockcraftNames.DEPENDENCIES_ROCK_OUTPUT + "/io/gitlab/plunts/plantuml-gradle-plugin/2.0.0/plantuml-gradle-plugin-2.0.0.jar");
         assertTrue(pluginJar.toFile().exists(), "Plugin JAR is downloaded");
     }
+
+    @Test
+    public void testIncrementalExport() throws IOException {
+        // the second export of an unchanged project is skipped and
+        // artifacts removed from the graph are removed from the export
+        String build = getResource("dependencies-incremental.in");
+        writeString(getBuildFile(), build);
+        BuildResult result = runBuild("dependencies-export", "--stacktrace");
+        assertEquals(TaskOutcome.SUCCESS, getLastTaskOutcome(result)); // the build needs to succeed
+        Path dependencies = projectDir.toPath().resolve("build/" + IRockcraftNames.BUILD_ROCK_OUTPUT + "/" + IRockcraftNames.DEPENDENCIES_ROCK_OUTPUT);
+        assertTrue(dependencies.resolve(ExportManifest.FILE_NAME).toFile().exists(), "Export manifest is written");
+        Path codec = dependencies.resolve("commons-codec/commons-codec/1.15/commons-codec-1.15.jar");
+        assertTrue(codec.toFile().exists(), "commons-codec is exported");
+
+        Path report = projectDir.toPath().resolve("build/" + DependencyExportTask.REPORT);
+        Files.delete(report);
+        result = runBuild("dependencies-export", "--stacktrace");
+        assertEquals(TaskOutcome.SUCCESS, getLastTaskOutcome(result));
+        assertTrue(result.getOutput().contains("Exported dependencies are up to date"));
+        String metrics = new String(Files.readAllBytes(report), StandardCharsets.UTF_8);
+        assertFalse(metrics.contains("\"jars\": 0,"), "Up to date export reports the exported jars");
+        assertTrue(metrics.contains("\"writtenJars\": 0,"), "Up to date export writes no jars");
+
+        writeString(getBuildFile(), build.replace("implementation 'commons-codec:commons-codec:1.15'", ""));
+        result = runBuild("dependencies-export", "--stacktrace");
+        assertEquals(TaskOutcome.SUCCESS, getLastTaskOutcome(result));
+        assertFalse(codec.toFile().exists(), "commons-codec is removed");
+    }
+
+    @Test
+    public void testConfigurationCache() throws IOException {
+        // the second build reuses the configuration cache entry with the stored dependency closure
+        writeString(getBuildFile(), getResource("dependencies-incremental.in"));
+        BuildResult result = runBuild("dependencies-export", "--configuration-cache", "--stacktrace");
+        assertEquals(TaskOutcome.SUCCESS, getLastTaskOutcome(result));
+        assertTrue(result.getOutput().contains("Configuration cache entry stored"));
+        Path dependencies = projectDir.toPath().resolve("build/" + IRockcraftNames.BUILD_ROCK_OUTPUT + "/" + IRockcraftNames.DEPENDENCIES_ROCK_OUTPUT);
+        Path codec = dependencies.resolve("commons-codec/commons-codec/1.15/commons-codec-1.15.jar");
+        Path codecPom = dependencies.resolve("commons-codec/commons-codec/1.15/commons-codec-1.15.pom");
+        assertTrue(codec.toFile().exists(), "commons-codec is exported");
+
+        Files.delete(codec);
+        Files.delete(codecPom);
+        result = runBuild("dependencies-export", "--configuration-cache", "--stacktrace");
+        assertEquals(TaskOutcome.SUCCESS, getLastTaskOutcome(result));
+        assertTrue(result.getOutput().contains("Configuration cache entry reused"));
+        assertTrue(codec.toFile().exists(), "commons-codec is exported from the cached closure");
+        assertTrue(codecPom.toFile().exists(), "commons-codec POM is exported from the cached closure");
+    }
+
+    @Test
+    public void testParallelClasspathsExport() throws IOException {
+        // project and plugin classpaths are exported in a single walk
+        writeString(getBuildFile(), getResource("dependencies-build.in")
+                + "dependenciesExport {\n    parallelClasspaths = true\n    parallelism = 4\n}\n");
+        BuildResult result = runBuild("dependencies-export", "--stacktrace");
+        assertEquals(TaskOutcome.SUCCESS, getLastTaskOutcome(result)); // the build needs to succeed
+        Path springBoot = projectDir.toPath().resolve("build/" + IRockcraftNames.BUILD_ROCK_OUTPUT + "/" + IRockcraftNames.DEPENDENCIES_ROCK_OUTPUT + "/org/springframework/boot/spring-boot/2.7.9/spring-boot-2.7.9.jar");
+        assertTrue(springBoot.toFile().exists(), "Spring Boot Jar is downloaded");
+        Path pluginJar = projectDir.toPath().resolve("build/" + IRockcraftNames.BUILD_ROCK_OUTPUT + "/" + IRockcraftNames.DEPENDENCIES_ROCK_OUTPUT + "/io/gitlab/plunts/plantuml-gradle-plugin/2.0.0/plantuml-gradle-plugin-2.0.0.jar");
+        assertTrue(pluginJar.toFile().exists(), "Plugin JAR is downloaded");
+    }
+
+    @Test
+    public void testNearestWinsExport() throws IOException {
+        // only compile scope dependencies are followed, with Maven mediation
+        writeString(getBuildFile(), getResource("dependencies-build.in")
+                + "dependenciesExport {\n    scopes = [\"compile\", \"import\"]\n    nearestWins = true\n}\n");
+        BuildResult result = runBuild("dependencies-export", "--stacktrace");
+        assertEquals(TaskOutcome.SUCCESS, getLastTaskOutcome(result)); // the build needs to succeed
+        Path springBoot = projectDir.toPath().resolve("build/" + IRockcraftNames.BUILD_ROCK_OUTPUT + "/" + IRockcraftNames.DEPENDENCIES_ROCK_OUTPUT + "/org/springframework/boot/spring-boot/2.7.9/spring-boot-2.7.9.jar");
+        assertTrue(springBoot.toFile().exists(), "Spring Boot Jar is downloaded");
+    }
+
+    @Test
+    public void testExclusionsExport() throws IOException {
+        // excluded artifacts and test or provided scope transitives are not exported,
+        // versions that lost conflict resolution are exported for Gradle to resolve offline
+        writeRepository();
+        writeString(getBuildFile(), getResource("dependencies-pruned.in"));
+        BuildResult result = runBuild("dependencies-export", "--stacktrace");
+        assertEquals(TaskOutcome.SUCCESS, getLastTaskOutcome(result)); // the build needs to succeed
+        Path dependencies = projectDir.toPath().resolve("build/" + IRockcraftNames.BUILD_ROCK_OUTPUT + "/" + IRockcraftNames.DEPENDENCIES_ROCK_OUTPUT);
+        assertTrue(dependencies.resolve("test/lib-a/1.0/lib-a-1.0.jar").toFile().exists(), "lib-a is exported");
+        assertTrue(dependencies.resolve("test/shared/2.0/shared-2.0.jar").toFile().exists(), "selected version is exported");
+        assertTrue(dependencies.resolve("test/shared/1.0/shared-1.0.pom").toFile().exists(), "losing version POM is exported");
+        assertFalse(dependencies.resolve("test/excluded").toFile().exists(), "excluded artifact is not exported");
+        assertFalse(dependencies.resolve("test/tested").toFile().exists(), "test scope transitive is not exported");
+        assertFalse(dependencies.resolve("test/provided").toFile().exists(), "provided scope transitive is not exported");
+    }
+
+    @Test
+    public void testNearestWinsPrunedExport() throws IOException {
+        // nearest-wins mediation drops the version that lost conflict resolution
+        writeRepository();
+        writeString(getBuildFile(), getResource("dependencies-pruned.in")
+                + "dependenciesExport {\n    scopes = [\"compile\", \"runtime\", \"provided\", \"import\"]\n    nearestWins = true\n}\n");
+        BuildResult result = runBuild("dependencies-export", "--stacktrace");
+        assertEquals(TaskOutcome.SUCCESS, getLastTaskOutcome(result)); // the build needs to succeed
+        Path dependencies = projectDir.toPath().resolve("build/" + IRockcraftNames.BUILD_ROCK_OUTPUT + "/" + IRockcraftNames.DEPENDENCIES_ROCK_OUTPUT);
+        assertTrue(dependencies.resolve("test/shared/2.0/shared-2.0.jar").toFile().exists(), "selected version is exported");
+        assertFalse(dependencies.resolve("test/shared/1.0").toFile().exists(), "losing version is not exported");
+        assertTrue(dependencies.resolve("test/provided/1.0/provided-1.0.pom").toFile().exists(), "provided scope transitive is exported");
+        assertFalse(dependencies.resolve("test/tested").toFile().exists(), "test scope transitive is not exported");
+        assertFalse(dependencies.resolve("test/excluded").toFile().exists(), "excluded artifact is not exported");
+    }
+
+    @Test
+    public void testExportReport() throws IOException {
+        writeString(getBuildFile(), getResource("dependencies-build.in"));
+        BuildResult result = runBuild("dependencies-export", "--stacktrace");
+        assertEquals(TaskOutcome.SUCCESS, getLastTaskOutcome(result)); // the build needs to succeed
+        Path report = projectDir.toPath().resolve("build/reports/rockcraft/dependencies-export.json");
+        assertTrue(report.toFile().exists(), "Export report is written");
+        String json = new String(Files.readAllBytes(report), StandardCharsets.UTF_8);
+        assertTrue(json.contains("\"modelBuildingMillis\""), json);
+        assertTrue(json.contains("\"slowestArtifacts\""), json);
+        assertTrue(result.getOutput().contains("Exported "), result.getOutput());
+    }
+
+    /**
+     * Writes a Maven repository where app depends on lib-a, which excludes excluded,
+     * and on lib-b. lib-a depends on shared 1.0, which loses to shared 2.0 from lib-b,
+     * and on test and provided scope dependencies.
+     */
+    private void writeRepository() throws IOException {
+        writeModule("app", dependency("lib-a", "compile", "excluded") + dependency("lib-b", "compile", null));
+        writeModule("lib-a", dependency("excluded", "compile", null)
+                + dependency("tested", "test", null)
+                + dependency("provided", "provided", null)
+                + "<dependency><groupId>test</groupId><artifactId>shared</artifactId><version>1.0</version></dependency>");
+        writeModule("lib-b", "<dependency><groupId>test</groupId><artifactId>shared</artifactId><version>2.0</version></dependency>");
+        writeModule("excluded", "");
+        writeModule("tested", "");
+        writeModule("provided", "");
+        writeModule("shared", "", "1.0");
+        writeModule("shared", "", "2.0");
+    }
+
+    private static String dependency(String name, String scope, String exclusion) {
+        return "<dependency><groupId>test</groupId><artifactId>" + name + "</artifactId><version>1.0</version>"
+                + "<scope>" + scope + "</scope>"
+                + (exclusion == null ? "" : "<exclusions><exclusion><groupId>test</groupId><artifactId>" + exclusion + "</artifactId></exclusion></exclusions>")
+                + "</dependency>";
+    }
+
+    private void writeModule(String name, String dependencies) throws IOException {
+        writeModule(name, dependencies, "1.0");
+    }
+
+    private void writeModule(String name, String dependencies, String version) throws IOException {
+        Path dir = projectDir.toPath().resolve("repo/test/" + name + "/" + version);
+        Files.createDirectories(dir);
+        writeString(dir.resolve(name + "-" + version + ".pom").toFile(),
+                "<project xmlns=\"http://maven.apache.org/POM/4.0.0\">\n"
+                        + "  <modelVersion>4.0.0</modelVersion>\n"
+                        + "  <groupId>test</groupId>\n"
+                        + "  <artifactId>" + name + "</artifactId>\n"
+                        + "  <version>" + version + "</version>\n"
+                        + "  <dependencies>" + dependencies + "</dependencies>\n"
+                        + "</project>\n");
+        Files.write(dir.resolve(name + "-" + version + ".jar"), new byte[0]);
+    }
 }
@@ -13,6 +13,7 @@
  */
 package com.canonical.rockcraft.maven;
 
+import com.canonical.rockcraft.builder.CdsMode;
 import com.canonical.rockcraft.builder.RockArchitecture;
 import com.canonical.rockcraft.builder.RockcraftOptions;
 import org.apache.maven.plugin.AbstractMojo;
@@ -86,6 +87,24 @@ public abstract class AbstractRockMojo extends AbstractMojo {
     @Parameter(property = "service")
     private boolean createService = true;
 
+    @Parameter(property = "timeout")
+    private long timeout = 0;
+
+    @Parameter(property = "registry")
+    private String registry = "";
+
+    @Parameter(property = "maxParallelPacks")
+    private int maxParallelPacks = 1;
+
+    @Parameter(property = "layered")
+    private boolean layered = false;
+
+    @Parameter(property = "cds")
+    private CdsMode cds = CdsMode.none;
+
+    @Parameter(property = "cdsTrainingArguments")
+    private String cdsTrainingArguments = "";
+
     private RockcraftOptions options = new RockcraftOptions();
 
     /**
@@ -135,6 +154,12 @@ public abstract class AbstractRockMojo extends AbstractMojo {
         options.setSlices(slices);
         options.setRockcraftYaml(rockcraftYaml);
         options.setCreateService(createService);
+        options.setTimeout(timeout);
+        options.setRegistry(registry);
+        options.setMaxParallelPacks(maxParallelPacks);
+        options.setLayered(layered);
+        options.setCds(cds);
+        options.setCdsTrainingArguments(cdsTrainingArguments);
         options.setNativeImage(isNativeImageRequested());
         if ("".equals(options.getBuildPackage())) {
             options.setBuildPackage(Toolchain.getToolchainPackage(getSession(), toolchainManager, getLog()));
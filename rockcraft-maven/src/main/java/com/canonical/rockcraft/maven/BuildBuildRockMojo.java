@@ -37,7 +37,7 @@ public class BuildBuildRockMojo extends AbstractRockMojo {
     public void execute() throws MojoExecutionException {
         super.execute();
         try {
-            RockBuilder.buildRock(RockSettingsFactory.createBuildRockProjectSettings(getRuntimeInformation(), getProject()), getOptions());
+            RockBuilder.buildRock(RockSettingsFactory.createBuildRockProjectSettings(getRuntimeInformation(), getProject()), getOptions(), x -> getLog().info(x));
         } catch (InterruptedException | IOException e) {
             throw new MojoExecutionException(e.getMessage(), e);
         }
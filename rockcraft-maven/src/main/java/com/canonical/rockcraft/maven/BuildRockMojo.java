@@ -44,7 +44,7 @@ public class BuildRockMojo extends AbstractRockMojo {
                 getLog().warn("Skipping build-rock, rockcraft.yaml does not exist");
                 return;
             }
-            RockBuilder.buildRock(settings, getOptions());
+            RockBuilder.buildRock(settings, getOptions(), x -> getLog().info(x));
         } catch (InterruptedException | IOException e) {
             throw new MojoExecutionException(e.getMessage(), e);
         }
@@ -6,7 +6,8 @@ import com.canonical.rockcraft.builder.IRockcraftNames;
 import com.canonical.rockcraft.builder.RockArchitecture;
 import com.canonical.rockcraft.builder.RockProjectSettings;
 import com.canonical.rockcraft.util.BuildRunner;
-import com.canonical.rockcraft.util.MavenArtifactCopy;
+import com.canonical.rockcraft.util.LogPump;
+import com.canonical.rockcraft.util.ProcessRunner;
 import com.canonical.rockcraft.util.POMUtil;
 import org.apache.maven.execution.MavenSession;
 import org.apache.maven.plugin.AbstractMojo;
@@ -19,14 +20,20 @@ import org.apache.maven.plugins.annotations.ResolutionScope;
 import org.apache.maven.project.MavenProject;
 import org.apache.maven.rtinfo.RuntimeInformation;
 import org.apache.maven.toolchain.ToolchainManager;
+import org.eclipse.aether.AbstractRepositoryListener;
+import org.eclipse.aether.DefaultRepositorySystemSession;
+import org.eclipse.aether.RepositoryEvent;
+import org.eclipse.aether.RepositoryException;
+import org.eclipse.aether.RepositorySystem;
 import org.eclipse.aether.RepositorySystemSession;
+import org.eclipse.aether.repository.RemoteRepository;
+import org.eclipse.aether.util.listener.ChainedRepositoryListener;
 import org.xml.sax.SAXException;
 
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.transform.TransformerException;
 import java.io.File;
 import java.io.IOException;
-import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
@@ -34,6 +41,9 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Writes build rock rockcraft file to the output directory
@@ -108,6 +118,26 @@ public final class CreateBuildRockMojo extends AbstractMojo {
     @Parameter(property = "buildGoals", defaultValue = "package")
     private String[] buildGoals;
 
+    @Parameter(property = "inProcessResolution", defaultValue = "false")
+    private boolean inProcessResolution;
+
+    @Parameter(property = "dynamicPlugins")
+    private final List<String> dynamicPlugins = new ArrayList<String>(InProcessDependencyResolver.DEFAULT_DYNAMIC_PLUGINS);
+
+    @Component
+    private RepositorySystem repositorySystem;
+
+    @Parameter(property = "seedFromLocal", defaultValue = "false")
+    private boolean seedFromLocal;
+
+    @Parameter(property = "logDownloads", defaultValue = "true")
+    private boolean logDownloads;
+
+    @Parameter(property = "buildTimeout", defaultValue = "0")
+    private long buildTimeout;
+
+    private static final int LOG_QUEUE_CAPACITY = 8192;
+
     private final BuildRockcraftOptions options = new BuildRockcraftOptions();
 
     /**
@@ -179,20 +209,30 @@ public final class CreateBuildRockMojo extends AbstractMojo {
                 buildPom = temp;
             }
             dependenciesOutput.toFile().mkdirs();
-            List<String> args = new ArrayList<>(Arrays.asList("mvn",
-                    "-Dmaven.repo.local="+dependenciesOutput,
-                    "-f", buildPom.toString()));
-            args.addAll(Arrays.asList(buildGoals));
-            args.add("dependency:go-offline");
-            int exitCode = BuildRunner.runBuild(x ->  getLog().info(x), workingDirectory, args);
-
-            if (exitCode != 0){
-                throw new MojoExecutionException("Failed to build project "+ project.getName() + ", dependencies are not available");
+            if (seedFromLocal) {
+                seedRepository(dependenciesOutput);
             }
-            if (workaroundPlexusUtils) {
-                workaroundPlexusUtils(dependenciesOutput);
+            if (!inProcessResolution || !resolveInProcess(dependenciesOutput)) {
+                List<String> args = new ArrayList<>(Arrays.asList("mvn",
+                        "-Dmaven.repo.local="+dependenciesOutput,
+                        "-f", buildPom.toString()));
+                args.addAll(Arrays.asList(buildGoals));
+                args.add("dependency:go-offline");
+                LogPump pump = new LogPump(x -> getLog().info(x));
+                pump.setQueueCapacity(LOG_QUEUE_CAPACITY);
+                if (!logDownloads) {
+                    pump.setFilter(LogPump.DOWNLOAD_LINES);
+                }
+                ProcessRunner runner = new ProcessRunner(TimeUnit.SECONDS.toMillis(buildTimeout));
+                runner.setLog(x -> getLog().info(x));
+                int exitCode = BuildRunner.runBuild(pump, workingDirectory, args, runner);
+
+                if (exitCode != 0){
+                    throw new MojoExecutionException("Failed to build project "+ project.getName() + ", dependencies are not available");
+                }
             }
-            removeResolverFiles(dependenciesOutput);
+            RepositoryNormalizer normalizer = new RepositoryNormalizer(dependenciesOutput, workaroundPlexusUtils, x -> getLog().warn(x));
+            getLog().info(normalizer.normalize(Runtime.getRuntime().availableProcessors()));
             BuildRockCrafter rockCrafter = new BuildRockCrafter(settings, getOptions(), Collections.singletonList(dependenciesOutput.toFile()));
             rockCrafter.writeRockcraft();
         }
@@ -201,6 +241,73 @@ public final class CreateBuildRockMojo extends AbstractMojo {
         }
     }
 
+    /**
+     * Resolves the project, plugin and extension dependencies without a nested Maven build
+     *
+     * @param output - output repository
+     * @return false if the nested build is needed to complete the repository
+     */
+    private boolean resolveInProcess(Path output) {
+        List<RemoteRepository> extraRepositories = new ArrayList<>();
+        if (allowLocal) {
+            File localRepo = repoSession.getLocalRepository().getBasedir();
+            extraRepositories.add(new RemoteRepository.Builder("local-maven-cache", "default", "file://" + localRepo).build());
+        }
+        InProcessDependencyResolver resolver = new InProcessDependencyResolver(repositorySystem,
+                InProcessDependencyResolver.createOutputSession(repositorySystem, repoSession, output),
+                project, extraRepositories, getLog());
+        try {
+            List<String> unresolved = resolver.resolve(dynamicPlugins);
+            if (!unresolved.isEmpty()) {
+                getLog().info("Dependencies of " + String.join(", ", unresolved) + " are resolved by the build, running Maven");
+                return false;
+            }
+            return true;
+        } catch (RepositoryException e) {
+            getLog().warn("In-process resolution failed, running Maven: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Hard links or copies the artifacts of the project, plugins and extensions that are
+     * available in the local repository into the output repository, see {@link RepositorySeeder}
+     *
+     * @param output - output repository
+     * @throws IOException - failed to copy the artifacts
+     */
+    private void seedRepository(Path output) throws IOException {
+        Path localRepo = repoSession.getLocalRepository().getBasedir().toPath().toAbsolutePath();
+        Set<Path> directories = ConcurrentHashMap.newKeySet();
+        DefaultRepositorySystemSession offline = new DefaultRepositorySystemSession(repoSession);
+        offline.setOffline(true);
+        offline.setRepositoryListener(ChainedRepositoryListener.newInstance(repoSession.getRepositoryListener(),
+                new AbstractRepositoryListener() {
+                    @Override
+                    public void artifactResolved(RepositoryEvent event) {
+                        File file = event.getFile();
+                        if (file != null && event.getExceptions().isEmpty()
+                                && file.toPath().toAbsolutePath().startsWith(localRepo)) {
+                            directories.add(file.toPath().toAbsolutePath().getParent());
+                        }
+                    }
+                }));
+        InProcessDependencyResolver resolver = new InProcessDependencyResolver(repositorySystem, offline, project,
+                Collections.emptyList(), getLog());
+        resolver.setLenient(true);
+        try {
+            resolver.resolve(Collections.emptyList());
+        } catch (RepositoryException e) {
+            getLog().debug("Unable to resolve dependencies from the local repository: " + e.getMessage());
+        }
+        RepositorySeeder seeder = new RepositorySeeder();
+        for (Path directory : directories) {
+            seeder.seed(directory, output.resolve(localRepo.relativize(directory).toString()));
+        }
+        getLog().info("Seeded " + directories.size() + " artifact directories from " + localRepo
+                + ": " + seeder.getLinked() + " files linked, " + seeder.getCopied() + " files copied");
+    }
+
     private boolean isNativeImageRequested() {
         List<String> activeProfiles = session.getRequest().getActiveProfiles();
         boolean nativeProfileActivated = activeProfiles.stream().anyMatch(profile -> "native".equals(profile));
@@ -215,39 +322,4 @@ public final class CreateBuildRockMojo extends AbstractMojo {
         }
         return nativeProfileActivated && nativeCompileGoalRequested;
     }
-
-    private void workaroundPlexusUtils(Path output) throws IOException{
-        Path oldPlexus = output.resolve("org/codehaus/plexus/plexus-utils/1.1");
-        if (Files.exists(oldPlexus)) {
-            return;
-        }
-        Files.createDirectories(oldPlexus);
-        Path pomFile = oldPlexus.resolve("plexus-utils-1.1.pom");
-        ArrayList<String> lines = new ArrayList<>();
-        lines.add("<project>");
-        lines.add("<modelVersion>4.0.0</modelVersion>");
-        lines.add("<groupId>org.codehaus.plexus</groupId>");
-        lines.add("<artifactId>plexus-utils</artifactId>");
-        lines.add("<version>1.1</version>");
-        lines.add("<name>Empty Jar</name>");
-        lines.add("<description>Workaround for https://issues.apache.org/jira/browse/MNG-6965</description>");
-        lines.add("</project>");
-        Files.write(pomFile, lines, Charset.defaultCharset());
-        Path jarFile = oldPlexus.resolve("plexus-utils-1.1.jar");
-        MavenArtifactCopy.createCompanionJar(jarFile.toFile());
-    }
-
-    private void removeResolverFiles(Path output) throws IOException {
-        Files.walk(output)
-                .filter(path ->
-                    path.getFileName().toString().equals("_remote.repositories")
-                    || path.getFileName().toString().endsWith(".lastUpdated"))
-                .forEach(path -> {
-                    try {
-                        Files.delete(path);
-                    } catch (IOException e) {
-                        getLog().warn("Failed to delete resolver file: " + path.toString());
-                    }
-                });
-    }
 }
@@ -68,6 +68,7 @@ public class CreateRockMojo extends AbstractRockMojo {
         }
 
         RockCrafter rockCrafter = new RockCrafter(RockSettingsFactory.createRockProjectSettings(getRuntimeInformation(), getProject()), getOptions(), artifacts);
+        rockCrafter.setLog(x -> getLog().info(x));
         try {
             rockCrafter.writeRockcraft();
         } catch (IOException e) {
@@ -0,0 +1,217 @@
+package com.canonical.rockcraft.maven;
+
+import org.apache.maven.RepositoryUtils;
+import org.apache.maven.model.Dependency;
+import org.apache.maven.model.Extension;
+import org.apache.maven.model.Plugin;
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.project.MavenProject;
+import org.eclipse.aether.DefaultRepositorySystemSession;
+import org.eclipse.aether.RepositoryException;
+import org.eclipse.aether.RepositorySystem;
+import org.eclipse.aether.RepositorySystemSession;
+import org.eclipse.aether.artifact.ArtifactTypeRegistry;
+import org.eclipse.aether.artifact.DefaultArtifact;
+import org.eclipse.aether.collection.CollectRequest;
+import org.eclipse.aether.repository.LocalRepository;
+import org.eclipse.aether.repository.RemoteRepository;
+import org.eclipse.aether.resolution.ArtifactRequest;
+import org.eclipse.aether.resolution.DependencyRequest;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Resolves the dependency closure of the project, its build plugins and build extensions
+ * without running a nested Maven build.
+ * With an output session the output directory is the local repository,
+ * so parent POMs and imported BOMs read during the resolution are stored there as well.
+ */
+final class InProcessDependencyResolver {
+    /**
+     * Plugins that download their providers while they run: surefire and failsafe resolve
+     * the JUnit or TestNG provider of the project tests
+     */
+    static final List<String> DEFAULT_DYNAMIC_PLUGINS = Collections.unmodifiableList(Arrays.asList(
+            "org.apache.maven.plugins:maven-surefire-plugin",
+            "org.apache.maven.plugins:maven-failsafe-plugin"));
+
+    private static final Pattern PROPERTY = Pattern.compile("\\$\\{([^}]+)}");
+
+    private final RepositorySystem repositorySystem;
+    private final RepositorySystemSession session;
+    private final MavenProject project;
+    private final List<RemoteRepository> extraRepositories;
+    private final Log log;
+    private boolean lenient;
+
+    /**
+     * Constructs InProcessDependencyResolver
+     * @param repositorySystem - resolver
+     * @param session - resolver session
+     * @param project - project to export
+     * @param extraRepositories - repositories added to the project and plugin repositories
+     * @param log - mojo log
+     */
+    InProcessDependencyResolver(RepositorySystem repositorySystem, RepositorySystemSession session, MavenProject project,
+                                List<RemoteRepository> extraRepositories, Log log) {
+        this.repositorySystem = repositorySystem;
+        this.session = session;
+        this.project = project;
+        this.extraRepositories = extraRepositories;
+        this.log = log;
+    }
+
+    /**
+     * Creates a session that stores the resolved artifacts in the output repository
+     * @param repositorySystem - resolver
+     * @param parent - session of the current build
+     * @param output - output repository
+     * @return resolver session
+     */
+    static RepositorySystemSession createOutputSession(RepositorySystem repositorySystem, RepositorySystemSession parent, Path output) {
+        DefaultRepositorySystemSession session = new DefaultRepositorySystemSession(parent);
+        session.setLocalRepositoryManager(repositorySystem.newLocalRepositoryManager(session, new LocalRepository(output.toFile())));
+        return session;
+    }
+
+    /**
+     * Ignores resolution failures, e.g. when only the artifacts available offline are needed
+     * @param lenient - true to ignore failures
+     */
+    void setLenient(boolean lenient) {
+        this.lenient = lenient;
+    }
+
+    /**
+     * Resolves the project, plugin and extension dependencies
+     * @param dynamicPlugins - groupId:artifactId of plugins that resolve dependencies while they run
+     * @return keys of the plugins whose dependencies could not be determined statically
+     * @throws RepositoryException - failed to resolve the project dependencies
+     */
+    List<String> resolve(Collection<String> dynamicPlugins) throws RepositoryException {
+        ArtifactTypeRegistry stereotypes = session.getArtifactTypeRegistry();
+        List<RemoteRepository> projectRepositories = withExtraRepositories(project.getRemoteProjectRepositories());
+        List<RemoteRepository> pluginRepositories = withExtraRepositories(project.getRemotePluginRepositories());
+
+        // project dependencies of all scopes, the offline build also runs the tests
+        CollectRequest projectRequest = new CollectRequest();
+        projectRequest.setRootArtifact(RepositoryUtils.toArtifact(project.getArtifact()));
+        for (Dependency dependency : project.getDependencies()) {
+            projectRequest.addDependency(RepositoryUtils.toDependency(dependency, stereotypes));
+        }
+        if (project.getDependencyManagement() != null) {
+            for (Dependency dependency : project.getDependencyManagement().getDependencies()) {
+                projectRequest.addManagedDependency(RepositoryUtils.toDependency(dependency, stereotypes));
+            }
+        }
+        projectRequest.setRepositories(projectRepositories);
+        resolveDependencies(projectRequest);
+        resolveProjectPoms(projectRepositories);
+
+        ArrayList<String> unresolved = new ArrayList<>();
+        for (Plugin plugin : project.getBuildPlugins()) {
+            if (dynamicPlugins.contains(plugin.getGroupId() + ":" + plugin.getArtifactId())) {
+                unresolved.add(plugin.getKey());
+                continue;
+            }
+            if (plugin.getVersion() == null) {
+                unresolved.add(plugin.getKey());
+                continue;
+            }
+            CollectRequest pluginRequest = new CollectRequest();
+            pluginRequest.setRoot(new org.eclipse.aether.graph.Dependency(
+                    new DefaultArtifact(plugin.getGroupId(), plugin.getArtifactId(), "jar", plugin.getVersion()), "runtime"));
+            for (Dependency dependency : plugin.getDependencies()) {
+                pluginRequest.addDependency(RepositoryUtils.toDependency(dependency, stereotypes));
+            }
+            pluginRequest.setRepositories(pluginRepositories);
+            try {
+                resolveDependencies(pluginRequest);
+            } catch (RepositoryException e) {
+                log.warn("Unable to resolve plugin " + plugin.getId() + ": " + e.getMessage());
+                unresolved.add(plugin.getKey());
+            }
+        }
+
+        for (Extension extension : project.getBuildExtensions()) {
+            CollectRequest extensionRequest = new CollectRequest();
+            extensionRequest.setRoot(new org.eclipse.aether.graph.Dependency(
+                    new DefaultArtifact(extension.getGroupId(), extension.getArtifactId(), "jar", extension.getVersion()), "runtime"));
+            extensionRequest.setRepositories(pluginRepositories);
+            resolveDependencies(extensionRequest);
+        }
+        return unresolved;
+    }
+
+    private void resolveDependencies(CollectRequest request) throws RepositoryException {
+        try {
+            repositorySystem.resolveDependencies(session, new DependencyRequest(request, null));
+        } catch (RepositoryException e) {
+            if (!lenient) {
+                throw e;
+            }
+            log.debug("Unable to resolve " + request.getRoot() + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Resolves parent POMs and BOMs imported by the project
+     */
+    private void resolveProjectPoms(List<RemoteRepository> repositories) {
+        ArrayList<ArtifactRequest> requests = new ArrayList<>();
+        for (MavenProject parent = project.getParent(); parent != null; parent = parent.getParent()) {
+            requests.add(new ArtifactRequest(new DefaultArtifact(parent.getGroupId(), parent.getArtifactId(), "pom", parent.getVersion()), repositories, null));
+        }
+        if (project.getOriginalModel().getDependencyManagement() != null) {
+            for (Dependency dependency : project.getOriginalModel().getDependencyManagement().getDependencies()) {
+                if ("import".equals(dependency.getScope())) {
+                    requests.add(new ArtifactRequest(new DefaultArtifact(
+                            interpolate(dependency.getGroupId()),
+                            interpolate(dependency.getArtifactId()),
+                            "pom",
+                            interpolate(dependency.getVersion())), repositories, null));
+                }
+            }
+        }
+        for (ArtifactRequest request : requests) {
+            try {
+                repositorySystem.resolveArtifact(session, request);
+            } catch (RepositoryException e) {
+                // parents built in the reactor are not published
+                log.debug("Unable to resolve " + request.getArtifact() + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private String interpolate(String value) {
+        if (value == null) {
+            return null;
+        }
+        Properties properties = project.getProperties();
+        Matcher matcher = PROPERTY.matcher(value);
+        StringBuffer sb = new StringBuffer();
+        while (matcher.find()) {
+            String name = matcher.group(1);
+            String replacement = "project.version".equals(name) ? project.getVersion()
+                    : "project.groupId".equals(name) ? project.getGroupId()
+                    : properties.getProperty(name, matcher.group());
+            matcher.appendReplacement(sb, Matcher.quoteReplacement(replacement));
+        }
+        matcher.appendTail(sb);
+        return sb.toString();
+    }
+
+    private List<RemoteRepository> withExtraRepositories(List<RemoteRepository> repositories) {
+        ArrayList<RemoteRepository> result = new ArrayList<>(extraRepositories);
+        result.addAll(repositories);
+        return result;
+    }
+}
@@ -0,0 +1,148 @@
+package com.canonical.rockcraft.maven;
+
+import com.canonical.rockcraft.util.MavenArtifactCopy;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Normalizes the exported Maven repository for the offline build:
+ * removes resolver tracking files and adds the plexus-utils placeholder.
+ * Each directory is listed by its own task, so the work is split down to
+ * the artifact and version directories rather than the top-level groups.
+ */
+final class RepositoryNormalizer {
+    private final Path output;
+    private final boolean workaroundPlexusUtils;
+    private final Consumer<String> warn;
+    private final AtomicLong removedFiles = new AtomicLong();
+    private final AtomicLong reclaimedBytes = new AtomicLong();
+    private final AtomicLong failedFiles = new AtomicLong();
+
+    /**
+     * Constructs RepositoryNormalizer
+     * @param output - exported repository
+     * @param workaroundPlexusUtils - add a placeholder for org.codehaus.plexus:plexus-utils:1.1
+     * @param warn - warning log
+     */
+    RepositoryNormalizer(Path output, boolean workaroundPlexusUtils, Consumer<String> warn) {
+        this.output = output;
+        this.workaroundPlexusUtils = workaroundPlexusUtils;
+        this.warn = warn;
+    }
+
+    /**
+     * Normalizes the repository
+     * @param threads - number of directories listed concurrently
+     * @return normalization report
+     * @throws IOException - failed to normalize the repository
+     * @throws InterruptedException - normalization was interrupted
+     */
+    String normalize(int threads) throws IOException, InterruptedException {
+        long start = System.currentTimeMillis();
+        if (workaroundPlexusUtils) {
+            workaroundPlexusUtils();
+        }
+        ForkJoinPool pool = new ForkJoinPool(Math.max(1, threads));
+        try {
+            pool.submit(new DirectoryTask(output)).get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) e.getCause()).getCause();
+            }
+            throw new IOException(e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+        return String.format("Normalized %s: %d resolver files removed, %d bytes reclaimed, %d failures in %d ms",
+                output, removedFiles.get(), reclaimedBytes.get(), failedFiles.get(), System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Removes the resolver files of a directory and forks a task per subdirectory
+     */
+    private class DirectoryTask extends RecursiveAction {
+        private final Path directory;
+
+        private DirectoryTask(Path directory) {
+            this.directory = directory;
+        }
+
+        @Override
+        protected void compute() {
+            ArrayList<DirectoryTask> subdirectories = new ArrayList<>();
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+                for (Path entry : entries) {
+                    BasicFileAttributes attrs;
+                    try {
+                        attrs = Files.readAttributes(entry, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                    } catch (IOException e) {
+                        warn.accept("Failed to visit " + entry + ": " + e.getMessage());
+                        failedFiles.incrementAndGet();
+                        continue;
+                    }
+                    if (attrs.isDirectory()) {
+                        subdirectories.add(new DirectoryTask(entry));
+                    } else {
+                        removeIfResolverFile(entry, attrs);
+                    }
+                }
+            } catch (IOException e) {
+                if (directory.equals(output)) {
+                    throw new UncheckedIOException(e);
+                }
+                warn.accept("Failed to visit " + directory + ": " + e.getMessage());
+                failedFiles.incrementAndGet();
+            }
+            invokeAll(subdirectories);
+        }
+    }
+
+    private void removeIfResolverFile(Path file, BasicFileAttributes attrs) {
+        String name = file.getFileName().toString();
+        if (!name.equals("_remote.repositories") && !name.endsWith(".lastUpdated")) {
+            return;
+        }
+        try {
+            Files.delete(file);
+            removedFiles.incrementAndGet();
+            reclaimedBytes.addAndGet(attrs.size());
+        } catch (IOException e) {
+            warn.accept("Failed to delete resolver file: " + file);
+            failedFiles.incrementAndGet();
+        }
+    }
+
+    private void workaroundPlexusUtils() throws IOException {
+        Path oldPlexus = output.resolve("org/codehaus/plexus/plexus-utils/1.1");
+        if (Files.exists(oldPlexus)) {
+            return;
+        }
+        Files.createDirectories(oldPlexus);
+        Path pomFile = oldPlexus.resolve("plexus-utils-1.1.pom");
+        ArrayList<String> lines = new ArrayList<>();
+        lines.add("<project>");
+        lines.add("<modelVersion>4.0.0</modelVersion>");
+        lines.add("<groupId>org.codehaus.plexus</groupId>");
+        lines.add("<artifactId>plexus-utils</artifactId>");
+        lines.add("<version>1.1</version>");
+        lines.add("<name>Empty Jar</name>");
+        lines.add("<description>Workaround for https://issues.apache.org/jira/browse/MNG-6965</description>");
+        lines.add("</project>");
+        Files.write(pomFile, lines, Charset.defaultCharset());
+        Path jarFile = oldPlexus.resolve("plexus-utils-1.1.jar");
+        MavenArtifactCopy.createCompanionJar(jarFile.toFile());
+    }
+}
@@ -0,0 +1,65 @@
+package com.canonical.rockcraft.maven;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.regex.Pattern;
+
+/**
+ * Seeds the exported repository from the local repository.
+ * Release jars, poms and their checksums never change once installed, so they are hard linked.
+ * Resolver metadata such as <i>_remote.repositories</i>, <i>resolver-status.properties</i> and
+ * <i>maven-metadata*.xml</i> and snapshot artifacts are rewritten by the resolver of the offline
+ * build and are copied, so the rewrites do not reach the local repository through the link.
+ */
+final class RepositorySeeder {
+    private static final Pattern IMMUTABLE = Pattern.compile(".*\\.(jar|pom)(\\.(sha1|sha256|sha512|md5|asc))?");
+
+    private int linked;
+    private int copied;
+
+    /**
+     * Seeds the artifact directory
+     * @param directory - artifact version directory in the local repository
+     * @param target - artifact version directory in the exported repository
+     * @throws IOException - failed to copy the files
+     */
+    void seed(Path directory, Path target) throws IOException {
+        Files.createDirectories(target);
+        boolean snapshot = directory.getFileName().toString().endsWith("-SNAPSHOT");
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                Path destination = target.resolve(name);
+                if (!Files.isRegularFile(file) || name.endsWith(".lastUpdated") || Files.exists(destination)) {
+                    continue;
+                }
+                if (!snapshot && isImmutable(name)) {
+                    try {
+                        Files.createLink(destination, file);
+                        linked++;
+                        continue;
+                    } catch (IOException | UnsupportedOperationException e) {
+                        // different file systems, copy the file
+                    }
+                }
+                Files.copy(file, destination, StandardCopyOption.COPY_ATTRIBUTES);
+                copied++;
+            }
+        }
+    }
+
+    static boolean isImmutable(String name) {
+        return IMMUTABLE.matcher(name).matches() && !name.startsWith("maven-metadata");
+    }
+
+    int getLinked() {
+        return linked;
+    }
+
+    int getCopied() {
+        return copied;
+    }
+}
@@ -0,0 +1,62 @@
+package com.canonical.rockcraft.maven;
+
+import org.apache.maven.model.Build;
+import org.apache.maven.model.Dependency;
+import org.apache.maven.model.Plugin;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.apache.maven.project.MavenProject;
+import org.eclipse.aether.DefaultRepositorySystemSession;
+import org.eclipse.aether.RepositoryException;
+import org.eclipse.aether.RepositorySystem;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+
+public class InProcessDependencyResolverTest {
+
+    private static Plugin plugin(String artifactId, String version) {
+        Plugin plugin = new Plugin();
+        plugin.setGroupId("org.apache.maven.plugins");
+        plugin.setArtifactId(artifactId);
+        plugin.setVersion(version);
+        return plugin;
+    }
+
+    private static MavenProject createProjectWithTests() {
+        MavenProject project = new MavenProject();
+        project.setGroupId("org.example");
+        project.setArtifactId("app");
+        project.setVersion("1.0");
+        Dependency junit = new Dependency();
+        junit.setGroupId("org.junit.jupiter");
+        junit.setArtifactId("junit-jupiter");
+        junit.setVersion("5.11.4");
+        junit.setScope("test");
+        project.getModel().addDependency(junit);
+        Build build = new Build();
+        build.addPlugin(plugin("maven-compiler-plugin", "3.13.0"));
+        build.addPlugin(plugin("maven-surefire-plugin", "3.5.2"));
+        build.addPlugin(plugin("maven-failsafe-plugin", "3.5.2"));
+        project.getModel().setBuild(build);
+        project.setOriginalModel(project.getModel().clone());
+        project.setRemoteArtifactRepositories(Collections.emptyList());
+        project.setPluginArtifactRepositories(Collections.emptyList());
+        return project;
+    }
+
+    @Test
+    public void testTestProvidersAreResolvedByTheBuild() throws RepositoryException {
+        MavenProject project = createProjectWithTests();
+        InProcessDependencyResolver resolver = new InProcessDependencyResolver(mock(RepositorySystem.class),
+                new DefaultRepositorySystemSession(), project, Collections.emptyList(), new SystemStreamLog());
+        // surefire and failsafe download the JUnit provider when the tests run
+        List<String> unresolved = resolver.resolve(InProcessDependencyResolver.DEFAULT_DYNAMIC_PLUGINS);
+        assertEquals(Arrays.asList("org.apache.maven.plugins:maven-surefire-plugin",
+                "org.apache.maven.plugins:maven-failsafe-plugin"), unresolved);
+    }
+}
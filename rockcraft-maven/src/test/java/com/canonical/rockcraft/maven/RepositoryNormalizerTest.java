@@ -0,0 +1,56 @@
+package com.canonical.rockcraft.maven;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class RepositoryNormalizerTest {
+
+    @TempDir
+    private Path tempDir;
+
+    @Test
+    public void testResolverFilesAreRemoved() throws IOException, InterruptedException {
+        List<Path> kept = new ArrayList<>();
+        List<Path> removed = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            Path version = tempDir.resolve("org/example/lib" + i + "/1.0");
+            Files.createDirectories(version);
+            kept.add(Files.write(version.resolve("lib" + i + "-1.0.jar"), new byte[0]));
+            kept.add(Files.write(version.resolve("lib" + i + "-1.0.pom"), new byte[0]));
+            removed.add(Files.write(version.resolve("_remote.repositories"), new byte[1]));
+            removed.add(Files.write(version.resolve("lib" + i + "-1.0.jar.lastUpdated"), new byte[1]));
+        }
+        removed.add(Files.write(tempDir.resolve("resolver.lastUpdated"), new byte[1]));
+
+        List<String> warnings = new ArrayList<>();
+        String report = new RepositoryNormalizer(tempDir, false, warnings::add).normalize(4);
+
+        for (Path file : kept) {
+            assertTrue(Files.exists(file), file.toString());
+        }
+        for (Path file : removed) {
+            assertFalse(Files.exists(file), file.toString());
+        }
+        assertTrue(warnings.isEmpty());
+        assertTrue(report.contains("41 resolver files removed, 41 bytes reclaimed, 0 failures"), report);
+    }
+
+    @Test
+    public void testPlexusUtilsPlaceholder() throws IOException, InterruptedException {
+        new RepositoryNormalizer(tempDir, true, x -> { }).normalize(1);
+        Path plexus = tempDir.resolve("org/codehaus/plexus/plexus-utils/1.1");
+        assertTrue(Files.exists(plexus.resolve("plexus-utils-1.1.pom")));
+        assertTrue(Files.exists(plexus.resolve("plexus-utils-1.1.jar")));
+        assertEquals(2, plexus.toFile().list().length);
+    }
+}
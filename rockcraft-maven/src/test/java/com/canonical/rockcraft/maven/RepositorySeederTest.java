@@ -0,0 +1,64 @@
+package com.canonical.rockcraft.maven;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+public class RepositorySeederTest {
+
+    @TempDir
+    private Path tempDir;
+
+    private static Map<String, byte[]> write(Path directory, String... names) throws IOException {
+        Files.createDirectories(directory);
+        Map<String, byte[]> content = new LinkedHashMap<>();
+        for (String name : names) {
+            byte[] bytes = ("original " + name).getBytes(StandardCharsets.UTF_8);
+            Files.write(directory.resolve(name), bytes);
+            content.put(name, bytes);
+        }
+        return content;
+    }
+
+    @Test
+    public void testLocalRepositoryIsUnchanged() throws IOException {
+        Path release = tempDir.resolve("m2/org/example/lib/1.0");
+        Path snapshot = tempDir.resolve("m2/org/example/lib/2.0-SNAPSHOT");
+        Map<String, byte[]> releaseFiles = write(release, "lib-1.0.jar", "lib-1.0.jar.sha1", "lib-1.0.pom", "lib-1.0.pom.sha1",
+                "_remote.repositories", "resolver-status.properties", "maven-metadata-central.xml", "lib-1.0.jar.lastUpdated");
+        Map<String, byte[]> snapshotFiles = write(snapshot, "lib-2.0-SNAPSHOT.jar", "maven-metadata-local.xml");
+
+        RepositorySeeder seeder = new RepositorySeeder();
+        Path output = tempDir.resolve("export");
+        seeder.seed(release, output.resolve("org/example/lib/1.0"));
+        seeder.seed(snapshot, output.resolve("org/example/lib/2.0-SNAPSHOT"));
+        assertEquals(4, seeder.getLinked());
+        assertEquals(5, seeder.getCopied());
+        assertFalse(Files.exists(output.resolve("org/example/lib/1.0/lib-1.0.jar.lastUpdated")));
+
+        // the resolver of the offline build rewrites its metadata in place
+        for (String name : new String[]{"_remote.repositories", "resolver-status.properties", "maven-metadata-central.xml"}) {
+            Files.write(output.resolve("org/example/lib/1.0").resolve(name), "rewritten".getBytes(StandardCharsets.UTF_8));
+        }
+        for (String name : snapshotFiles.keySet()) {
+            Files.write(output.resolve("org/example/lib/2.0-SNAPSHOT").resolve(name), "rewritten".getBytes(StandardCharsets.UTF_8));
+        }
+
+        for (Map.Entry<String, byte[]> file : releaseFiles.entrySet()) {
+            assertArrayEquals(file.getValue(), Files.readAllBytes(release.resolve(file.getKey())), file.getKey());
+        }
+        for (Map.Entry<String, byte[]> file : snapshotFiles.entrySet()) {
+            assertArrayEquals(file.getValue(), Files.readAllBytes(snapshot.resolve(file.getKey())), file.getKey());
+        }
+    }
+}
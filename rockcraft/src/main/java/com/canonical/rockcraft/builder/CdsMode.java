@@ -0,0 +1,32 @@
+/*
+ * Copyright 2025 Canonical Ltd.
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ * <p>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.canonical.rockcraft.builder;
+
+/**
+ * Class data sharing archives created while building the rock
+ */
+public enum CdsMode {
+    /**
+     * No archive
+     */
+    none,
+    /**
+     * Archive of the JDK classes, created with -Xshare:dump
+     */
+    base,
+    /**
+     * Archive of the JDK classes and the classes loaded by a training run of the application
+     */
+    application
+}
@@ -32,6 +32,9 @@ public class CommonRockcraftOptions {
     private RockArchitecture[] architectures = new RockArchitecture[0];
     private List<String> slices = new ArrayList<String>();
     private Path rockcraftYaml = null;
+    private long timeout = 0;
+    private String registry = "";
+    private int maxParallelPacks = 1;
 
     /**
      * Get the Ubuntu OpenJDK package used to build the runtime image
@@ -181,6 +184,62 @@ public class CommonRockcraftOptions {
         }
     }
 
+    /**
+     * Gets the timeout of the rockcraft, skopeo and docker processes
+     *
+     * @return timeout in seconds, 0 waits without a limit
+     */
+    public long getTimeout() {
+        return timeout;
+    }
+
+    /**
+     * Sets the timeout of the rockcraft, skopeo and docker processes
+     *
+     * @param timeout - timeout in seconds, 0 waits without a limit
+     */
+    public void setTimeout(long timeout) {
+        this.timeout = timeout;
+    }
+
+    /**
+     * Gets the registry the rock is pushed to
+     *
+     * @return registry, e.g. <i>ghcr.io/acme</i>, empty to push to the local docker daemon
+     */
+    public String getRegistry() {
+        return registry;
+    }
+
+    /**
+     * Sets the registry the rock is pushed to.
+     * The image is uploaded from the rock archive, blobs already present in the registry are skipped.
+     *
+     * @param registry - registry, e.g. <i>ghcr.io/acme</i> or <i>http://localhost:5000</i>, empty to push to the local docker daemon
+     */
+    public void setRegistry(String registry) {
+        this.registry = registry;
+    }
+
+    /**
+     * Gets the number of platforms packed concurrently
+     *
+     * @return number of concurrent <i>rockcraft pack</i> processes
+     */
+    public int getMaxParallelPacks() {
+        return maxParallelPacks;
+    }
+
+    /**
+     * Sets the number of platforms packed concurrently.
+     * With more than one, each platform buildable on the host is packed by its own <i>rockcraft pack</i> process.
+     *
+     * @param maxParallelPacks - number of concurrent <i>rockcraft pack</i> processes, 1 packs all platforms at once
+     */
+    public void setMaxParallelPacks(int maxParallelPacks) {
+        this.maxParallelPacks = maxParallelPacks;
+    }
+
     public boolean isJava8() {
         return ToolchainHelper.OPENJDK_8.equals(getBuildPackage()) || ToolchainHelper.OPENJDK_8_HEADLESS.equals(getBuildPackage());
     }
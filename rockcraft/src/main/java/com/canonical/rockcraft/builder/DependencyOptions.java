@@ -13,9 +13,18 @@
  */
 package com.canonical.rockcraft.builder;
 
+import com.canonical.rockcraft.util.CopyStrategy;
+
 /**
  * Dependency export options:
  *  - List of configurations
+ *  - Number of POM models built concurrently
+ *  - Incremental export
+ *  - Copy strategy
+ *  - Single walk over the project, buildscript and settings classpaths
+ *  - Scopes of the followed POM dependencies
+ *  - Nearest-wins dependency mediation
+ *  - Content-addressed store shared by the subprojects
  */
 public class DependencyOptions  {
 
@@ -35,6 +44,69 @@ public class DependencyOptions  {
         this.buildScript = buildScript;
     }
 
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
+    public boolean isIncremental() {
+        return incremental;
+    }
+
+    public void setIncremental(boolean incremental) {
+        this.incremental = incremental;
+    }
+
+    public CopyStrategy getCopyStrategy() {
+        return copyStrategy;
+    }
+
+    public void setCopyStrategy(CopyStrategy copyStrategy) {
+        this.copyStrategy = copyStrategy;
+    }
+
+    public boolean isParallelClasspaths() {
+        return parallelClasspaths;
+    }
+
+    public void setParallelClasspaths(boolean parallelClasspaths) {
+        this.parallelClasspaths = parallelClasspaths;
+    }
+
+    public String[] getScopes() {
+        return scopes;
+    }
+
+    public void setScopes(String[] scopes) {
+        this.scopes = scopes;
+    }
+
+    public boolean isNearestWins() {
+        return nearestWins;
+    }
+
+    public void setNearestWins(boolean nearestWins) {
+        this.nearestWins = nearestWins;
+    }
+
+    public boolean isSharedStore() {
+        return sharedStore;
+    }
+
+    public void setSharedStore(boolean sharedStore) {
+        this.sharedStore = sharedStore;
+    }
+
     private String[] configurations = new String[0];
     private boolean buildScript  = true;
+    private int parallelism = 1;
+    private boolean incremental = false;
+    private CopyStrategy copyStrategy = CopyStrategy.copy;
+    private boolean parallelClasspaths = false;
+    private String[] scopes = {"compile", "import", "runtime"};
+    private boolean nearestWins = false;
+    private boolean sharedStore = false;
 }
@@ -13,6 +13,21 @@ public interface IRockcraftNames {
      */
     String ROCK_OUTPUT = "rock";
 
+    /**
+     * Layers the packed rock is split into
+     */
+    String ROCK_LAYERS = "rock-layers.yaml";
+
+    /**
+     * Exploded jars of the layered rock
+     */
+    String LAYERS_OUTPUT = "layers";
+
+    /**
+     * Class data sharing archive of the application in the rock
+     */
+    String CDS_ARCHIVE = "jars/classes.jsa";
+
     /**
      * Rockcraft project name
      */
@@ -33,4 +48,9 @@ public interface IRockcraftNames {
      */
     String DEPENDENCIES_ROCK_OUTPUT = "dependencies";
 
+    /**
+     * Content-addressed store of the dependencies shared by the subprojects
+     */
+    String DEPENDENCY_STORE_OUTPUT = "dependency-store";
+
 }
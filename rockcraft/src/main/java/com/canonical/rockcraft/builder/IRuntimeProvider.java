@@ -26,6 +26,7 @@ public interface IRuntimeProvider {
 
     /**
      * Generate rockcraft Java runtime part code.
+     * The caller orders the part after the parts of its build system.
      *
      * @param files - list of jar files to analyze
      * @return part code
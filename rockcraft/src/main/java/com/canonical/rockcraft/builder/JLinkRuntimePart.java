@@ -13,11 +13,16 @@
  */
 package com.canonical.rockcraft.builder;
 
+import com.canonical.rockcraft.util.ModuleDeps;
+import com.canonical.rockcraft.util.ToolchainHelper;
+
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 
 /**
  *  Implements Rockcraft Java runtime part using JLink plugin (experimental)
@@ -25,31 +30,104 @@ import java.util.Map;
 public class JLinkRuntimePart implements IRuntimeProvider {
 
     private final RockcraftOptions options;
+    private final ModuleDeps moduleDeps;
+    private Consumer<String> log = x -> {};
 
     /**
      * Constructs the JLinkRuntimePart
      * @param options - plugin options
      */
     public JLinkRuntimePart(RockcraftOptions options) {
+        this(options, ModuleDeps.getDefault());
+    }
+
+    /**
+     * Constructs the JLinkRuntimePart
+     * @param options - plugin options
+     * @param moduleDeps - module analyzer of the application jars
+     */
+    public JLinkRuntimePart(RockcraftOptions options, ModuleDeps moduleDeps) {
         this.options = options;
+        this.moduleDeps = moduleDeps;
+    }
+
+    /**
+     * Sets the log for the module analysis
+     * @param log - log consumer
+     */
+    public void setLog(Consumer<String> log) {
+        this.log = log;
     }
 
     /**
-     * Retuns the part contents
+     * Retuns the part contents.
+     * The modules of the runtime image are found with jdeps when the rock is created,
+     * the jlink plugin analyzes the jars during the build if jdeps is not available
+     * or belongs to a different Java release than the build package.
      * @param files - list of jar files to analyze
      * @return part contents
      */
     @Override
     public Map<String, Object> getRuntimePart(List<File> files) {
-        ArrayList<String> relativeJars = new ArrayList<String>();
-        for (File jar : files) {
-            relativeJars.add(String.format("jars/%s", jar.getName()));
-        }
         HashMap<String, Object> part = new HashMap<String, Object>();
         part.put("build-packages", new String[]{options.getBuildPackage()});
-        part.put("after", new String[]{"gradle/rockcraft/dump", "gradle/rockcraft/deps"});
-        part.put("plugin", "jlink");
-        part.put("jlink-jars", relativeJars);
+        List<String> modules = getModules(files);
+        if (modules.isEmpty()) {
+            ArrayList<String> relativeJars = new ArrayList<String>();
+            for (File jar : files) {
+                relativeJars.add(String.format("jars/%s", jar.getName()));
+            }
+            part.put("plugin", "jlink");
+            part.put("jlink-jars", relativeJars);
+            return part;
+        }
+        part.put("plugin", "nil");
+        part.put("override-build", getJLinkCommands(modules));
         return part;
     }
+
+    private List<String> getModules(List<File> files) {
+        int release = ToolchainHelper.getRelease(options.getBuildPackage());
+        if (release == 0) {
+            // the JDK location of custom build packages is not known
+            return new ArrayList<>();
+        }
+        if (moduleDeps.getRelease() != release) {
+            // other releases analyze different multi-release classes and may list modules the build package does not have
+            log.accept("Modules of the Java runtime are found during the build: jdeps of Java " + moduleDeps.getRelease()
+                    + " does not match the build package Java " + release);
+            return new ArrayList<>();
+        }
+        try {
+            return moduleDeps.getModules(files, options.getTargetRelease());
+        } catch (IOException e) {
+            log.accept("Modules of the Java runtime are found during the build: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return new ArrayList<>();
+    }
+
+    /**
+     * Links the runtime image with the build package JDK and reports its size against the full runtime.
+     * The build package is installed for the build-on architecture, the runtime is named after the build-for architecture.
+     */
+    private String getJLinkCommands(List<String> modules) {
+        int release = ToolchainHelper.getRelease(options.getBuildPackage());
+        String jdk = "usr/lib/jvm/java-%d-openjdk-${CRAFT_ARCH_BUILD_%s}";
+        // numeric levels are deprecated since JDK 21
+        String compress = release >= 21 ? "zip-6" : "2";
+        StringBuilder commands = new StringBuilder();
+        commands.append(String.format("JAVA_HOME=/" + jdk + "\n", release, "ON"));
+        commands.append(String.format("RUNTIME=${CRAFT_PART_INSTALL}/" + jdk + "\n", release, "FOR"));
+        commands.append("rm -rf ${RUNTIME}\n");
+        commands.append(String.format("${JAVA_HOME}/bin/jlink --add-modules %s --strip-debug --no-header-files --no-man-pages --compress=%s --output ${RUNTIME}\n",
+                String.join(",", modules), compress));
+        commands.append("mkdir -p ${CRAFT_PART_INSTALL}/usr/bin\n");
+        commands.append("ln -sf --relative ${RUNTIME}/bin/java ${CRAFT_PART_INSTALL}/usr/bin/java\n");
+        commands.append("FULL_SIZE=$(stat -c %s ${JAVA_HOME}/lib/modules)\n");
+        commands.append("SIZE=$(stat -c %s ${RUNTIME}/lib/modules)\n");
+        commands.append("echo \"Java runtime modules: ${SIZE} bytes, full runtime: ${FULL_SIZE} bytes, saved $((FULL_SIZE - SIZE)) bytes\"\n");
+        return commands.toString();
+    }
 }
@@ -76,7 +76,6 @@ public class RawRuntimePart implements IRuntimeProvider {
         overrideCommands.append("mkdir -p ${CRAFT_PART_INSTALL}/etc/ssl/certs/java/ &&  cp /etc/ssl/certs/java/cacerts ${CRAFT_PART_INSTALL}/etc/ssl/certs/java/cacerts\n");
         overrideCommands.append("\ncraftctl default\n");
         part.put("override-build", overrideCommands.toString());
-        part.put("after", new String[]{"gradle/rockcraft/dump", "gradle/rockcraft/deps"});
         return part;
     }
 }
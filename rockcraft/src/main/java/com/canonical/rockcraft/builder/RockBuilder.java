@@ -13,6 +13,11 @@
  */
 package com.canonical.rockcraft.builder;
 
+import com.canonical.rockcraft.util.LogPump;
+import com.canonical.rockcraft.util.OciArchive;
+import com.canonical.rockcraft.util.OciRegistryClient;
+import com.canonical.rockcraft.util.ProcessRunner;
+import com.canonical.rockcraft.util.RockLayerSplitter;
 import org.yaml.snakeyaml.Yaml;
 
 import java.io.File;
@@ -20,12 +25,25 @@ import java.io.FileReader;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 /**
  * Utilities to build rock image
  */
 public class RockBuilder {
+    private static final long CHECK_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
     /**
      * Creates RockBuilder
      */
@@ -41,52 +59,93 @@ public class RockBuilder {
     public static void checkRockcraft() throws InterruptedException, IOException {
         ProcessBuilder pb = new ProcessBuilder("rockcraft", "--version");
         pb.inheritIO();
-        Process versionProcess = pb.start();
-        int ret = versionProcess.waitFor();
+        int ret = new ProcessRunner(CHECK_TIMEOUT_MILLIS).run(pb);
         if (ret != 0)
             throw new UnsupportedOperationException("Please install rockcraft 'snap install rockcraft'.");
     }
 
     /**
-     * Pushes rock image to the docker
+     * Pushes rock image to the docker daemon or to the registry when it is configured.
+     * Rocks of several architectures are pushed concurrently, the registry gets an image index
+     * that refers to all of them, the docker daemon gets an image per architecture.
      *
      * @param settings - rockcraft project settings
      * @param options = rockcraft options
      * @throws IOException          - IO error while writing <i>rockcraft.yaml</i>
      * @throws InterruptedException - <i>rockcraft</i> process was aborted
      */
-    @SuppressWarnings("unchecked")
     public static void pushRock(RockProjectSettings settings, CommonRockcraftOptions options) throws InterruptedException, IOException {
-        Yaml yaml = YamlFactory.createYaml();
-        Map<String, Object> rockcraft = yaml.load(new FileReader(settings.getRockOutput().resolve(IRockcraftNames.ROCKCRAFT_YAML).toFile()));
+        Map<String, Object> rockcraft = loadRockcraft(settings);
         String imageName = String.valueOf(rockcraft.get(IRockcraftNames.ROCKCRAFT_NAME));
         String imageVersion = String.valueOf(rockcraft.get(IRockcraftNames.ROCKCRAFT_VERSION));
         Path rockDestPath = settings.getRockOutput().resolve(IRockcraftNames.ROCK_OUTPUT);
         File[] f = rockDestPath.toFile().listFiles((dir, file) -> file.endsWith(".rock"));
-        if (f == null) {
+        if (f == null || f.length == 0) {
             throw new UnsupportedOperationException("Please set up build-build-rock goal before push-build-rock");
         }
+        List<String> tags = Arrays.asList("latest", imageVersion);
+        if (options.getRegistry() != null && !options.getRegistry().isEmpty()) {
+            OciRegistryClient client = new OciRegistryClient(options.getRegistry());
+            if (f.length == 1) {
+                client.push(OciArchive.open(f[0].toPath()), imageName, tags);
+                return;
+            }
+            ArrayList<OciArchive> archives = new ArrayList<>();
+            for (File file : f) {
+                archives.add(OciArchive.open(file.toPath()));
+            }
+            client.pushIndex(archives, imageName, tags, archives.size());
+            return;
+        }
+        ProcessRunner runner = createRunner(options);
+        if (f.length == 1) {
+            copyInDocker(runner, f[0], imageName, tags);
+            return;
+        }
+        // the docker daemon does not store image indexes, each architecture gets its own tags
+        String host = getHostArchitecture();
+        ArrayList<Callable<Void>> copies = new ArrayList<>();
         for (File file : f) {
-            copyInDocker(file, imageName, imageVersion);
+            String architecture = getArchitecture(file);
+            ArrayList<String> rockTags = new ArrayList<>();
+            rockTags.add(String.format("%s-%s", imageVersion, architecture));
+            if (architecture.equals(host)) {
+                rockTags.addAll(tags);
+            }
+            copies.add(() -> {
+                copyInDocker(runner, file, imageName, rockTags);
+                return null;
+            });
         }
+        runAll(copies, copies.size());
     }
 
     /**
-     * Builds the rock image
+     * Builds the rock image.
+     * With {@link CommonRockcraftOptions#getMaxParallelPacks()} above one, the platforms
+     * that can be built on this host are packed concurrently.
      *
      * @param settings - rockcraft project settings
      * @param options - rockcraft options
+     * @param log - build log for the output of concurrent packs and the layer split
      * @throws IOException          - IO error while writing <i>rockcraft.yaml</i>
      * @throws InterruptedException - <i>rockcraft</i> process was aborted
      */
-    public static void buildRock(RockProjectSettings settings, CommonRockcraftOptions options) throws InterruptedException, IOException {
-        ProcessBuilder pb = new ProcessBuilder("rockcraft", "pack")
-                .directory(settings.getRockOutput().toFile())
-                .inheritIO();
-        Process process = pb.start();
-        int result = process.waitFor();
-        if (result != 0)
-            throw new UnsupportedOperationException("Failed to pack rock for " + settings.getName());
+    public static void buildRock(RockProjectSettings settings, CommonRockcraftOptions options, Consumer<String> log) throws InterruptedException, IOException {
+        ProcessRunner runner = createRunner(options);
+        List<String> platforms = options.getMaxParallelPacks() > 1 ? getHostPlatforms(loadRockcraft(settings)) : new ArrayList<>();
+        if (platforms.size() > 1) {
+            ArrayList<Callable<Void>> packs = new ArrayList<>();
+            for (String platform : platforms) {
+                packs.add(() -> {
+                    pack(settings, runner, platform, log);
+                    return null;
+                });
+            }
+            runAll(packs, options.getMaxParallelPacks());
+        } else {
+            pack(settings, runner, null, log);
+        }
 
         Path rockDestPath = settings.getRockOutput().resolve(IRockcraftNames.ROCK_OUTPUT);
         File rockDest = rockDestPath.toFile();
@@ -100,28 +159,163 @@ public class RockBuilder {
             Path destination = rockDestPath.resolve(source.getFileName());
             Files.move(source, destination);
         }
+        splitLayers(settings, rockDest, log);
+    }
+
+    /**
+     * Splits the rock layer into the layers listed in <i>rock-layers.yaml</i>
+     */
+    @SuppressWarnings("unchecked")
+    private static void splitLayers(RockProjectSettings settings, File rockDest, Consumer<String> log) throws IOException {
+        Path layersFile = settings.getRockOutput().resolve(IRockcraftNames.ROCK_LAYERS);
+        if (!Files.exists(layersFile)) {
+            return;
+        }
+        Map<String, List<String>> layers;
+        try (FileReader reader = new FileReader(layersFile.toFile())) {
+            layers = YamlFactory.createYaml().load(reader);
+        }
+        RockLayerSplitter splitter = new RockLayerSplitter(layers);
+        for (File rock : rockDest.listFiles((dir, file) -> file.endsWith(".rock"))) {
+            if (!splitter.split(rock.toPath())) {
+                log.accept("Rock " + rock.getName() + " was not split into layers");
+            }
+        }
+    }
+
+    private static void pack(RockProjectSettings settings, ProcessRunner runner, String platform, Consumer<String> log) throws InterruptedException, IOException {
+        ProcessBuilder pb = new ProcessBuilder("rockcraft", "pack")
+                .directory(settings.getRockOutput().toFile());
+        int result;
+        if (platform == null) {
+            pb.inheritIO();
+            result = runner.run(pb);
+        } else {
+            // concurrent packs share the console, their output is prefixed with the platform
+            pb.command().add("--platform=" + platform);
+            pb.redirectErrorStream(true);
+            result = runner.run(pb, new LogPump(line -> log.accept("[" + platform + "] " + line)));
+        }
+        if (result != 0)
+            throw new UnsupportedOperationException("Failed to pack rock for " + settings.getName() + (platform == null ? "" : " " + platform));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> loadRockcraft(RockProjectSettings settings) throws IOException {
+        Yaml yaml = YamlFactory.createYaml();
+        try (FileReader reader = new FileReader(settings.getRockOutput().resolve(IRockcraftNames.ROCKCRAFT_YAML).toFile())) {
+            return yaml.load(reader);
+        }
+    }
+
+    /**
+     * Gets the platforms of rockcraft.yaml that build on this host,
+     * a platform without <i>build-on</i> builds on the architecture it is named after
+     */
+    @SuppressWarnings("unchecked")
+    static List<String> getHostPlatforms(Map<String, Object> rockcraft) {
+        ArrayList<String> platforms = new ArrayList<>();
+        Object value = rockcraft.get("platforms");
+        if (!(value instanceof Map)) {
+            return platforms;
+        }
+        String host = getHostArchitecture();
+        for (Map.Entry<String, Object> platform : ((Map<String, Object>) value).entrySet()) {
+            Object buildOn = platform.getValue() instanceof Map ? ((Map<String, Object>) platform.getValue()).get("build-on") : null;
+            if (host == null
+                    || (buildOn == null && host.equals(platform.getKey()))
+                    || (buildOn instanceof List && ((List<Object>) buildOn).contains(host))
+                    || host.equals(buildOn)) {
+                platforms.add(platform.getKey());
+            }
+        }
+        return platforms;
+    }
+
+    /**
+     * Ubuntu name of the host architecture or null if it is not known
+     */
+    private static String getHostArchitecture() {
+        switch (System.getProperty("os.arch", "")) {
+            case "amd64":
+            case "x86_64":
+                return RockArchitecture.amd64.name();
+            case "aarch64":
+                return RockArchitecture.arm64.name();
+            case "arm":
+                return RockArchitecture.armhf.name();
+            case "x86":
+            case "i386":
+                return RockArchitecture.i386.name();
+            case "ppc64le":
+                return RockArchitecture.ppc64el.name();
+            case "riscv64":
+                return RockArchitecture.riscv64.name();
+            case "s390x":
+                return RockArchitecture.s390x.name();
+            default:
+                return null;
+        }
     }
 
-    private static void copyInDocker(File ociImage, String imageName, String imageVersion) throws IOException, InterruptedException {
+    /**
+     * Gets the architecture from the rock file name, <i>name_version_architecture.rock</i>
+     */
+    private static String getArchitecture(File rock) {
+        String name = rock.getName().substring(0, rock.getName().length() - ".rock".length());
+        return name.substring(name.lastIndexOf('_') + 1);
+    }
+
+    private static void runAll(List<Callable<Void>> tasks, int threads) throws InterruptedException, IOException {
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, tasks.size())));
+        CompletionService<Void> completion = new ExecutorCompletionService<>(executor);
+        try {
+            for (Callable<Void> task : tasks) {
+                completion.submit(task);
+            }
+            // the first failure cancels the remaining tasks
+            for (int i = 0; i < tasks.size(); i++) {
+                completion.take().get();
+            }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        } finally {
+            // interrupts the remaining processes, ProcessRunner terminates them
+            executor.shutdownNow();
+        }
+    }
+
+    private static ProcessRunner createRunner(CommonRockcraftOptions options) {
+        return new ProcessRunner(TimeUnit.SECONDS.toMillis(options.getTimeout()));
+    }
+
+    private static void copyInDocker(ProcessRunner runner, File ociImage, String imageName, List<String> tags) throws IOException, InterruptedException {
+        String image = String.format("%s:%s", imageName, tags.get(0));
         ProcessBuilder pb = new ProcessBuilder("rockcraft.skopeo",
                 "--insecure-policy",
                 "copy",
                 String.format("oci-archive:%s", ociImage.getAbsolutePath()),
-                String.format("docker-daemon:%s:latest", imageName))
+                String.format("docker-daemon:%s", image))
                 .directory(ociImage.getParentFile())
                 .inheritIO();
-        Process process = pb.start();
-        int result = process.waitFor();
+        int result = runner.run(pb);
         if (result != 0)
-            throw new UnsupportedOperationException("Failed to copy " + ociImage.getAbsolutePath() + " to docker image " + String.format("%s:latest", imageName));
+            throw new UnsupportedOperationException("Failed to copy " + ociImage.getAbsolutePath() + " to docker image " + image);
 
-        pb = new ProcessBuilder("docker", "tag", imageName,
-                String.format("%s:%s", imageName, imageVersion))
-                .directory(ociImage.getParentFile())
-                .inheritIO();
-        process = pb.start();
-        result = process.waitFor();
-        if (result != 0)
-            throw new UnsupportedOperationException("Failed to tag " + String.format("%s:%s", imageName, imageVersion));
+        for (String tag : tags.subList(1, tags.size())) {
+            pb = new ProcessBuilder("docker", "tag", image,
+                    String.format("%s:%s", imageName, tag))
+                    .directory(ociImage.getParentFile())
+                    .inheritIO();
+            result = runner.run(pb);
+            if (result != 0)
+                throw new UnsupportedOperationException("Failed to tag " + String.format("%s:%s", imageName, tag));
+        }
     }
 }
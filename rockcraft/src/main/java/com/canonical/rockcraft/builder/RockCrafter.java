@@ -13,16 +13,22 @@
  */
 package com.canonical.rockcraft.builder;
 
+import com.canonical.rockcraft.util.LayeredJar;
 import com.canonical.rockcraft.util.MapMerger;
+import com.canonical.rockcraft.util.ToolchainHelper;
 import org.yaml.snakeyaml.Yaml;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 
 /**
  * Creates a rockcraft.yaml based on RockOptions
@@ -30,7 +36,14 @@ import java.util.Map;
 public class RockCrafter extends AbstractRockCrafter {
 
 
+    private static final String JAVA = "/usr/bin/java ";
+    private static final int CDS_TRAINING_TIMEOUT = 120;
+
     private boolean nativeImage;
+    private CdsMode cdsMode = CdsMode.none;
+    private final Map<String, LayeredJar> layeredJars = new LinkedHashMap<>();
+    private final Map<String, List<String>> rockLayers = new LinkedHashMap<>();
+    private Consumer<String> log = x -> {};
 
     /**
      * Creates RockCrafter
@@ -44,6 +57,14 @@ public class RockCrafter extends AbstractRockCrafter {
         this.nativeImage = options.isNativeImage();
     }
 
+    /**
+     * Sets the log for the messages about the generated parts
+     * @param log - log consumer
+     */
+    public void setLog(Consumer<String> log) {
+        this.log = log;
+    }
+
     /**
      * Generate content of the <i>rockcraft.yaml</i>
      *
@@ -67,6 +88,8 @@ public class RockCrafter extends AbstractRockCrafter {
         for (File file : filtered) {
             relativeOutputs.add(root.relativize(file.toPath()).toString());
         }
+        explodeLayeredJars(root, filtered, relativeOutputs);
+        cdsMode = getSettings().getBeryxJLink() ? CdsMode.none : getCdsMode(relativeOutputs);
 
         Map<String, Object> rockcraft = createCommonSection();
 
@@ -111,6 +134,70 @@ public class RockCrafter extends AbstractRockCrafter {
         return yamlOutput.toString();
     }
 
+    /**
+     * Explodes Spring Boot jars into a directory per layer and writes the layers of the packed rock
+     */
+    private void explodeLayeredJars(Path root, List<File> files, List<String> relativeOutputs) throws IOException {
+        RockcraftOptions options = (RockcraftOptions) getOptions();
+        layeredJars.clear();
+        rockLayers.clear();
+        Path layersFile = root.resolve(IRockcraftNames.ROCK_LAYERS);
+        if (options.isLayered() && !nativeImage && !getSettings().getBeryxJLink()) {
+            for (int i = 0; i < files.size(); i++) {
+                File file = files.get(i);
+                LayeredJar jar = file.getName().endsWith(".jar") ? LayeredJar.read(file) : null;
+                if (jar == null) {
+                    continue;
+                }
+                Map<String, List<String>> layers = jar.extract(root.resolve(IRockcraftNames.LAYERS_OUTPUT).resolve(jar.getName()));
+                for (Map.Entry<String, List<String>> layer : layers.entrySet()) {
+                    List<String> paths = rockLayers.computeIfAbsent(layer.getKey(), x -> new ArrayList<>());
+                    for (String entry : layer.getValue()) {
+                        paths.add(String.format("jars/%s/%s", jar.getName(), entry));
+                    }
+                }
+                layeredJars.put(relativeOutputs.get(i), jar);
+            }
+        }
+        if (rockLayers.isEmpty()) {
+            Files.deleteIfExists(layersFile);
+            return;
+        }
+        try (Writer writer = new OutputStreamWriter(Files.newOutputStream(layersFile), StandardCharsets.UTF_8)) {
+            YamlFactory.createYaml().dump(rockLayers, writer);
+        }
+    }
+
+    /**
+     * Parts that copy the exploded layers, one part per layer
+     */
+    private Map<String, Object> getLayerParts() {
+        Map<String, Object> parts = new LinkedHashMap<>();
+        for (String layer : rockLayers.keySet()) {
+            StringBuilder commands = new StringBuilder();
+            for (LayeredJar jar : layeredJars.values()) {
+                if (!jar.getLayerNames().contains(layer)) {
+                    continue;
+                }
+                String source = String.format("%s/%s/%s", IRockcraftNames.LAYERS_OUTPUT, jar.getName(), layer);
+                commands.append(String.format("if [ -d %s ]; then\n", source));
+                commands.append(String.format("  mkdir -p ${CRAFT_PART_INSTALL}/jars/%s\n", jar.getName()));
+                commands.append(String.format("  cp --archive --link %s/. ${CRAFT_PART_INSTALL}/jars/%s/\n", source, jar.getName()));
+                commands.append("fi\n");
+            }
+            Map<String, Object> part = new HashMap<String, Object>();
+            part.put("source", ".");
+            part.put("plugin", "nil");
+            part.put("override-build", commands.toString());
+            parts.put(getLayerPartName(layer), part);
+        }
+        return parts;
+    }
+
+    private String getLayerPartName(String layer) {
+        return String.format("%s/rockcraft/layer-%s", getSettings().getBuildSystem(), layer);
+    }
+
     private Map<String,Object> getImageProjectParts(List<String> images) {
         HashMap<String, Object> parts = new HashMap<String, Object>();
         int id = 0;
@@ -181,6 +268,10 @@ public class RockCrafter extends AbstractRockCrafter {
         } else {
             buffer.append("mkdir -p ${CRAFT_PART_INSTALL}/jars\n");
             for (String jar : relativeJars) {
+                if (layeredJars.containsKey(jar)) {
+                    // copied by the layer parts
+                    continue;
+                }
                 buffer.append(String.format("cp %s ${CRAFT_PART_INSTALL}/jars\n", jar));
             }
         }
@@ -189,16 +280,35 @@ public class RockCrafter extends AbstractRockCrafter {
 
     private Map<String, Object> getProjectParts(List<File> files, List<String> relativeJars) {
         RockcraftOptions options = (RockcraftOptions) getOptions();
-        IRuntimeProvider provider = options.getJlink() ? new JLinkRuntimePart(options) : new RawRuntimePart(options);
+        IRuntimeProvider provider;
+        if (options.getJlink()) {
+            JLinkRuntimePart jlinkPart = new JLinkRuntimePart(options);
+            jlinkPart.setLog(log);
+            provider = jlinkPart;
+        } else {
+            provider = new RawRuntimePart(options);
+        }
         HashMap<String, Object> parts = new HashMap<String, Object>();
         parts.put(getSettings().getBuildSystem() + "/rockcraft/dump", getDumpPart(relativeJars));
 
+        parts.putAll(getLayerParts());
+
         if (!nativeImage) {
             Map<java.lang.String,java.lang.Object> runtimePart = provider.getRuntimePart(files);
-            runtimePart.put("after", new String[]{
-                getSettings().getBuildSystem() + "/rockcraft/dump",
-                getSettings().getBuildSystem() + "/rockcraft/deps"
-            });
+            List<String> after = new ArrayList<>();
+            after.add(getSettings().getBuildSystem() + "/rockcraft/dump");
+            after.add(getSettings().getBuildSystem() + "/rockcraft/deps");
+            for (String layer : rockLayers.keySet()) {
+                after.add(getLayerPartName(layer));
+            }
+            runtimePart.put("after", after.toArray(new String[0]));
+            if (runtimePart.containsKey("jlink-jars") && !layeredJars.isEmpty()) {
+                runtimePart.put("jlink-jars", getLayeredRuntimeJars(files, relativeJars));
+            }
+            if (cdsMode != CdsMode.none) {
+                Object overrideBuild = runtimePart.getOrDefault("override-build", "craftctl default\n");
+                runtimePart.put("override-build", overrideBuild + getCdsTraining(getServiceCommand(relativeJars)));
+            }
             parts.put(getSettings().getBuildSystem() + "/rockcraft/runtime", runtimePart);
         }
 
@@ -206,6 +316,26 @@ public class RockCrafter extends AbstractRockCrafter {
         return parts;
     }
 
+    /**
+     * Jars analyzed by jlink, the exploded jars contribute their nested libraries
+     */
+    private List<String> getLayeredRuntimeJars(List<File> files, List<String> relativeJars) {
+        List<String> jars = new ArrayList<>();
+        for (int i = 0; i < files.size(); i++) {
+            if (!layeredJars.containsKey(relativeJars.get(i))) {
+                jars.add(String.format("jars/%s", files.get(i).getName()));
+            }
+        }
+        for (List<String> paths : rockLayers.values()) {
+            for (String path : paths) {
+                if (path.endsWith(".jar")) {
+                    jars.add(path);
+                }
+            }
+        }
+        return jars;
+    }
+
     private Map<String, Object> getDumpPart(List<String> relativeJars) {
         HashMap<String, Object> part = new HashMap<String, Object>();
         part.put("source", ".");
@@ -243,12 +373,81 @@ public class RockCrafter extends AbstractRockCrafter {
         return part;
     }
 
-    private Map<String, Object> getProjectService(List<String> relativeJars) {
+    /**
+     * Gets the class data sharing archive the runtime supports
+     */
+    private CdsMode getCdsMode(List<String> relativeJars) {
+        RockcraftOptions options = (RockcraftOptions) getOptions();
+        if (options.getCds() == CdsMode.none || nativeImage || options.isJava8()) {
+            return CdsMode.none;
+        }
+        String command = getServiceCommand(relativeJars);
+        if (!command.startsWith(JAVA)) {
+            throw new UnsupportedOperationException("Class data sharing requires a command starting with " + JAVA + ": " + command);
+        }
+        // dynamic archives require JDK 13 and jar files on the class path
+        if (options.getCds() == CdsMode.application
+                && ToolchainHelper.getRelease(options.getBuildPackage()) >= 13
+                && layeredJars.isEmpty()) {
+            return CdsMode.application;
+        }
+        return CdsMode.base;
+    }
+
+    /**
+     * Commands that create the class data sharing archives with the runtime in the part install directory.
+     * The JDK archive is dumped to its default location, the application archive is recorded
+     * by running the service command until it exits or the training times out.
+     * The archive only accepts the class path it was recorded with, so <i>/jars</i> is linked
+     * to the staged jars during the training and the service command runs unchanged.
+     */
+    private String getCdsTraining(String command) {
+        StringBuilder commands = new StringBuilder();
+        commands.append("${CRAFT_PART_INSTALL}/usr/bin/java -Xshare:dump\n");
+        if (cdsMode != CdsMode.application) {
+            return commands.toString();
+        }
+        String archive = "${CRAFT_PART_INSTALL}/" + IRockcraftNames.CDS_ARCHIVE;
+        String arguments = command.substring(JAVA.length());
+        String trainingOptions = "-XX:ArchiveClassesAtExit=" + archive;
+        String trainingArguments = ((RockcraftOptions) getOptions()).getCdsTrainingArguments();
+        if (trainingArguments != null && !trainingArguments.trim().isEmpty()) {
+            trainingOptions += " " + trainingArguments.trim();
+        }
+        commands.append(String.format("mkdir -p $(dirname %s)\n", archive));
+        // an existing /jars directory of the build environment is not replaced
+        commands.append("test ! -e /jars || test -L /jars\n");
+        commands.append("ln -sfn ${CRAFT_STAGE}/jars /jars\n");
+        // files written by the application stay out of the rock
+        commands.append("cd ${CRAFT_PART_BUILD}\n");
+        commands.append(String.format("timeout --signal=TERM %d ${CRAFT_PART_INSTALL}/usr/bin/java %s %s || true\n",
+                CDS_TRAINING_TIMEOUT, trainingOptions, arguments));
+        commands.append("rm /jars\n");
+        commands.append(String.format("test -f %s\n", archive));
+        return commands.toString();
+    }
+
+    /**
+     * Adds the class data sharing options to the java command
+     */
+    private String withCds(String command) {
+        if (cdsMode != CdsMode.application) {
+            // the JDK archive is in its default location
+            return command;
+        }
+        // the archive is read only, the service does not regenerate it in the container
+        return JAVA + "-XX:SharedArchiveFile=/" + IRockcraftNames.CDS_ARCHIVE + " " + command.substring(JAVA.length());
+    }
+
+    private String getServiceCommand(List<String> relativeJars) {
         String command = ((RockcraftOptions)getOptions()).getCommand();
         if (command == null || command.trim().isEmpty()) {
             if (relativeJars.size() == 1) {
+                LayeredJar layered = layeredJars.get(relativeJars.get(0));
                 if (nativeImage) {
                     command = "/" + Paths.get(relativeJars.iterator().next()).getFileName().toString();
+                } else if (layered != null) {
+                    command = String.format("/usr/bin/java -cp /jars/%s %s", layered.getName(), layered.getMainClass());
                 } else {
                     command = String.format("/usr/bin/java -jar /jars/%s", Paths.get(relativeJars.iterator().next()).getFileName().toString());
                 }
@@ -263,6 +462,11 @@ public class RockCrafter extends AbstractRockCrafter {
                 throw new UnsupportedOperationException("Rockcraft plugin requires either single jar output or a command defined: " + message);
             }
         }
+        return command;
+    }
+
+    private Map<String, Object> getProjectService(List<String> relativeJars) {
+        String command = withCds(getServiceCommand(relativeJars));
         HashMap<String, String> serviceData = new HashMap<String, String>();
         serviceData.put("override", "replace");
         serviceData.put("summary", getOptions().getSummary());
@@ -24,6 +24,9 @@ public class RockcraftOptions extends CommonRockcraftOptions {
     private boolean createService = true;
     private String distTask;
     private boolean nativeImage = false;
+    private boolean layered = false;
+    private CdsMode cds = CdsMode.none;
+    private String cdsTrainingArguments = "";
 
     /**
      * Construct RockcraftOptions
@@ -137,4 +140,62 @@ public class RockcraftOptions extends CommonRockcraftOptions {
     public void setNativeImage(boolean nativeImage) {
         this.nativeImage = nativeImage;
     }
+
+    /**
+     * Get whether Spring Boot jars are exploded into layers
+     *
+     * @return default false
+     */
+    public boolean isLayered() {
+        return layered;
+    }
+
+    /**
+     * Enable or disable the layered layout. Spring Boot jars are exploded into
+     * dependencies, loader, snapshot dependencies, resources and application layers,
+     * so a change of the application does not change the dependency layers of the rock.
+     *
+     * @param layered - whether to explode Spring Boot jars into layers
+     */
+    public void setLayered(boolean layered) {
+        this.layered = layered;
+    }
+
+    /**
+     * Get the class data sharing archive created while building the rock
+     *
+     * @return default none
+     */
+    public CdsMode getCds() {
+        return cds;
+    }
+
+    /**
+     * Set the class data sharing archive created while building the rock.
+     * The archive is created by the runtime part and used by the generated service command.
+     *
+     * @param cds - class data sharing mode
+     */
+    public void setCds(CdsMode cds) {
+        this.cds = cds;
+    }
+
+    /**
+     * Get the arguments of the training run
+     *
+     * @return default empty
+     */
+    public String getCdsTrainingArguments() {
+        return cdsTrainingArguments;
+    }
+
+    /**
+     * Set the arguments added to the java command of the training run, e.g. <i>-Dspring.context.exit=onRefresh</i>
+     * to stop a Spring Boot application once it has started
+     *
+     * @param cdsTrainingArguments - java arguments
+     */
+    public void setCdsTrainingArguments(String cdsTrainingArguments) {
+        this.cdsTrainingArguments = cdsTrainingArguments;
+    }
 }
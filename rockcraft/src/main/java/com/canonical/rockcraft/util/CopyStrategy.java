@@ -0,0 +1,35 @@
+/*
+ * Copyright 2025 Canonical Ltd.
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ * <p>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.canonical.rockcraft.util;
+
+/**
+ * The way artifacts are placed into the exported Maven repository.
+ * Strategies other than copy fall back to copy when the source and
+ * the destination are on different filesystems or the link fails.
+ */
+public enum CopyStrategy {
+    /**
+     * Full copy of the file
+     */
+    copy,
+    /**
+     * Hard link to the source file
+     */
+    hardlink,
+    /**
+     * Copy that lets the filesystem share the extents of the source file (btrfs, xfs),
+     * a regular copy elsewhere
+     */
+    reflink
+}
@@ -0,0 +1,220 @@
+/*
+ * Copyright 2025 Canonical Ltd.
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ * <p>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.canonical.rockcraft.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+/**
+ * Manifest of the artifacts exported into a Maven repository.
+ * It records the GAV, size, source modification time and SHA-1 of every exported file
+ * together with a fingerprint of the inputs of the export.
+ */
+public class ExportManifest {
+    /**
+     * Manifest file name in the repository root
+     */
+    public static final String FILE_NAME = ".rockcraft-export-manifest";
+    private static final String FINGERPRINT_KEY = ".fingerprint";
+
+    /**
+     * Exported file record
+     */
+    public static class Entry {
+        private final String gav;
+        private final long size;
+        private final long sourceModified;
+        private final String sha1;
+
+        /**
+         * Constructs the entry
+         * @param gav - group:artifact:version of the file
+         * @param size - file size
+         * @param sourceModified - modification time of the source file
+         * @param sha1 - SHA-1 of the file
+         */
+        public Entry(String gav, long size, long sourceModified, String sha1) {
+            this.gav = gav;
+            this.size = size;
+            this.sourceModified = sourceModified;
+            this.sha1 = sha1;
+        }
+
+        public String getGav() { return gav; }
+        public long getSize() { return size; }
+        public long getSourceModified() { return sourceModified; }
+        public String getSha1() { return sha1; }
+    }
+
+    private final TreeMap<String, Entry> entries = new TreeMap<>();
+    private String fingerprint = "";
+
+    /**
+     * Reads the manifest from the repository root
+     * @param root - repository root
+     * @return manifest, empty if the repository has no readable manifest
+     */
+    public static ExportManifest read(Path root) {
+        ExportManifest manifest = new ExportManifest();
+        Path file = root.resolve(FILE_NAME);
+        if (!Files.exists(file)) {
+            return manifest;
+        }
+        Properties properties = new Properties();
+        try (InputStream is = Files.newInputStream(file)) {
+            properties.load(is);
+        } catch (IOException | IllegalArgumentException e) {
+            return manifest;
+        }
+        for (String key : properties.stringPropertyNames()) {
+            String value = properties.getProperty(key);
+            if (FINGERPRINT_KEY.equals(key)) {
+                manifest.fingerprint = value;
+                continue;
+            }
+            String[] split = value.split(",", -1);
+            if (split.length != 4) {
+                // treat a damaged manifest as missing
+                return new ExportManifest();
+            }
+            try {
+                manifest.entries.put(key, new Entry(split[0], Long.parseLong(split[1]), Long.parseLong(split[2]), split[3]));
+            } catch (NumberFormatException e) {
+                return new ExportManifest();
+            }
+        }
+        return manifest;
+    }
+
+    /**
+     * Writes the manifest into the repository root
+     * @param root - repository root
+     * @throws IOException - failed to write the manifest
+     */
+    public void write(Path root) throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty(FINGERPRINT_KEY, fingerprint);
+        for (Map.Entry<String, Entry> e : entries.entrySet()) {
+            Entry entry = e.getValue();
+            properties.setProperty(e.getKey(), String.format("%s,%d,%d,%s", entry.getGav(), entry.getSize(), entry.getSourceModified(), entry.getSha1()));
+        }
+        try (OutputStream os = Files.newOutputStream(root.resolve(FILE_NAME))) {
+            properties.store(os, "Rockcraft dependency export manifest");
+        }
+    }
+
+    /**
+     * Gets the fingerprint of the export inputs
+     * @return fingerprint
+     */
+    public String getFingerprint() {
+        return fingerprint;
+    }
+
+    /**
+     * Sets the fingerprint of the export inputs
+     * @param fingerprint - fingerprint
+     */
+    public void setFingerprint(String fingerprint) {
+        this.fingerprint = fingerprint;
+    }
+
+    /**
+     * Gets the exported files
+     * @return map of the repository relative path to the entry
+     */
+    public synchronized Map<String, Entry> getEntries() {
+        return Collections.unmodifiableMap(new TreeMap<>(entries));
+    }
+
+    /**
+     * Gets the entry for the repository relative path
+     * @param path - repository relative path
+     * @return entry or null
+     */
+    public synchronized Entry get(String path) {
+        return entries.get(path);
+    }
+
+    /**
+     * Records the exported file
+     * @param path - repository relative path
+     * @param entry - file record
+     */
+    public synchronized void put(String path, Entry entry) {
+        entries.put(path, entry);
+    }
+
+    /**
+     * Checks that every recorded file is present in the repository with the recorded size
+     * @param root - repository root
+     * @return true if no file is missing or truncated
+     */
+    public synchronized boolean isIntact(Path root) {
+        for (Map.Entry<String, Entry> e : entries.entrySet()) {
+            Path file = root.resolve(e.getKey());
+            try {
+                if (!Files.isRegularFile(file) || Files.size(file) != e.getValue().getSize()) {
+                    return false;
+                }
+            } catch (IOException ex) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Removes files of the previous export that are no longer exported
+     * together with their checksums and empty directories
+     * @param root - repository root
+     * @param previous - previous export manifest
+     * @return number of removed artifacts
+     * @throws IOException - failed to remove a file
+     */
+    public int removeStale(Path root, ExportManifest previous) throws IOException {
+        int removed = 0;
+        for (String path : previous.getEntries().keySet()) {
+            if (get(path) != null) {
+                continue;
+            }
+            Path file = root.resolve(path);
+            Files.deleteIfExists(file);
+            Files.deleteIfExists(file.resolveSibling(file.getFileName() + ".sha1"));
+            removeEmptyParents(root, file.getParent());
+            removed++;
+        }
+        return removed;
+    }
+
+    private static void removeEmptyParents(Path root, Path dir) throws IOException {
+        while (dir != null && !dir.equals(root) && dir.startsWith(root) && Files.isDirectory(dir)) {
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+                if (stream.iterator().hasNext()) {
+                    return;
+                }
+            }
+            Files.delete(dir);
+            dir = dir.getParent();
+        }
+    }
+}
@@ -0,0 +1,269 @@
+/*
+ * Copyright 2025 Canonical Ltd.
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ * <p>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.canonical.rockcraft.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.Attributes;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Splits a Spring Boot jar into layers ordered from the least to the most frequently changing content.
+ * The layers are read from <i>BOOT-INF/layers.idx</i>. Jars without the index get the default
+ * dependencies, spring-boot-loader, snapshot-dependencies, resources and application layers.
+ * The exploded jar runs with the launcher from its <i>Main-Class</i> attribute.
+ */
+public class LayeredJar {
+    /**
+     * Spring Boot layer index
+     */
+    public static final String LAYERS_INDEX = "BOOT-INF/layers.idx";
+
+    private static final String LIB = "BOOT-INF/lib/";
+    private static final String CLASSES = "BOOT-INF/classes/";
+    private static final String LOADER = "org/springframework/boot/loader/";
+
+    private final File jar;
+    private final String mainClass;
+    private final LinkedHashMap<String, List<String>> index;
+
+    private LayeredJar(File jar, String mainClass, LinkedHashMap<String, List<String>> index) {
+        this.jar = jar;
+        this.mainClass = mainClass;
+        this.index = index;
+    }
+
+    /**
+     * Reads the jar
+     * @param jar - jar file
+     * @return layered jar or null if this is not a Spring Boot jar
+     * @throws IOException - failed to read the jar
+     */
+    public static LayeredJar read(File jar) throws IOException {
+        try (ZipFile zip = new ZipFile(jar)) {
+            ZipEntry manifestEntry = zip.getEntry("META-INF/MANIFEST.MF");
+            if (manifestEntry == null || !hasBootEntries(zip)) {
+                return null;
+            }
+            Manifest manifest;
+            try (InputStream is = zip.getInputStream(manifestEntry)) {
+                manifest = new Manifest(is);
+            }
+            Attributes attributes = manifest.getMainAttributes();
+            if (attributes.getValue("Start-Class") == null || attributes.getValue(Attributes.Name.MAIN_CLASS) == null) {
+                return null;
+            }
+            LinkedHashMap<String, List<String>> index = null;
+            ZipEntry indexEntry = zip.getEntry(LAYERS_INDEX);
+            if (indexEntry != null) {
+                try (InputStream is = zip.getInputStream(indexEntry)) {
+                    index = parseIndex(new String(readAll(is), StandardCharsets.UTF_8));
+                }
+                if (index.isEmpty()) {
+                    index = null;
+                }
+            }
+            return new LayeredJar(jar, attributes.getValue(Attributes.Name.MAIN_CLASS), index);
+        }
+    }
+
+    private static boolean hasBootEntries(ZipFile zip) {
+        // directory entries are optional in jars
+        Enumeration<? extends ZipEntry> entries = zip.entries();
+        while (entries.hasMoreElements()) {
+            String name = entries.nextElement().getName();
+            if (name.startsWith(CLASSES) || name.startsWith(LIB)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Parses layers.idx:
+     * <pre>
+     * - "dependencies":
+     *   - "BOOT-INF/lib/"
+     * </pre>
+     */
+    private static LinkedHashMap<String, List<String>> parseIndex(String content) {
+        LinkedHashMap<String, List<String>> index = new LinkedHashMap<>();
+        List<String> current = null;
+        for (String line : content.split("\n")) {
+            if (line.startsWith("- ")) {
+                String name = unquote(line.substring(2).trim());
+                current = new ArrayList<>();
+                index.put(name.endsWith(":") ? name.substring(0, name.length() - 1) : name, current);
+            } else if (line.trim().startsWith("- ") && current != null) {
+                current.add(unquote(line.trim().substring(2).trim()));
+            }
+        }
+        return index;
+    }
+
+    private static String unquote(String value) {
+        if (value.endsWith(":")) {
+            return unquote(value.substring(0, value.length() - 1)) + ":";
+        }
+        if (value.length() >= 2 && value.startsWith("\"") && value.endsWith("\"")) {
+            return value.substring(1, value.length() - 1);
+        }
+        return value;
+    }
+
+    private static byte[] readAll(InputStream is) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = is.read(buffer)) > 0) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Gets the launcher class that runs the exploded jar
+     * @return launcher class name
+     */
+    public String getMainClass() {
+        return mainClass;
+    }
+
+    /**
+     * Gets the name of the exploded jar directory, the jar name without the extension
+     * @return directory name
+     */
+    public String getName() {
+        String name = jar.getName();
+        return name.endsWith(".jar") ? name.substring(0, name.length() - ".jar".length()) : name;
+    }
+
+    /**
+     * Gets the layer names from the least to the most frequently changing
+     * @return layer names
+     */
+    public List<String> getLayerNames() {
+        if (index != null) {
+            return new ArrayList<>(index.keySet());
+        }
+        ArrayList<String> names = new ArrayList<>();
+        names.add("dependencies");
+        names.add("spring-boot-loader");
+        names.add("snapshot-dependencies");
+        names.add("resources");
+        names.add("application");
+        return names;
+    }
+
+    /**
+     * Gets the layer of the jar entry
+     * @param entry - jar entry name
+     * @return layer name
+     */
+    public String getLayer(String entry) {
+        if (index != null) {
+            String last = null;
+            for (Map.Entry<String, List<String>> layer : index.entrySet()) {
+                for (String prefix : layer.getValue()) {
+                    if (prefix.endsWith("/") ? entry.startsWith(prefix) : entry.equals(prefix)) {
+                        return layer.getKey();
+                    }
+                }
+                last = layer.getKey();
+            }
+            return last;
+        }
+        if (entry.startsWith(LIB)) {
+            return entry.contains("SNAPSHOT") ? "snapshot-dependencies" : "dependencies";
+        }
+        if (entry.startsWith(LOADER)) {
+            return "spring-boot-loader";
+        }
+        if (entry.startsWith(CLASSES) && !entry.endsWith(".class")) {
+            return "resources";
+        }
+        return "application";
+    }
+
+    /**
+     * Extracts the jar into a directory per layer, <i>destination/layer/entry</i>
+     * @param destination - destination directory, its content is replaced
+     * @return jar entries of each layer, layers without entries are omitted
+     * @throws IOException - failed to extract the jar
+     */
+    public Map<String, List<String>> extract(Path destination) throws IOException {
+        deleteTree(destination);
+        LinkedHashMap<String, List<String>> layers = new LinkedHashMap<>();
+        for (String name : getLayerNames()) {
+            layers.put(name, new ArrayList<>());
+        }
+        try (ZipFile zip = new ZipFile(jar)) {
+            Enumeration<? extends ZipEntry> entries = zip.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                if (entry.isDirectory()) {
+                    continue;
+                }
+                String layer = getLayer(entry.getName());
+                Path layerRoot = destination.resolve(layer);
+                Path target = layerRoot.resolve(entry.getName()).normalize();
+                if (!target.startsWith(layerRoot)) {
+                    throw new IOException("Invalid jar entry " + entry.getName() + " in " + jar);
+                }
+                Files.createDirectories(target.getParent());
+                try (InputStream is = zip.getInputStream(entry)) {
+                    Files.copy(is, target, StandardCopyOption.REPLACE_EXISTING);
+                }
+                layers.computeIfAbsent(layer, x -> new ArrayList<>()).add(entry.getName());
+            }
+        }
+        layers.values().removeIf(List::isEmpty);
+        return layers;
+    }
+
+    private static void deleteTree(Path root) throws IOException {
+        if (!Files.exists(root)) {
+            return;
+        }
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+                Files.delete(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright 2025 Canonical Ltd.
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ * <p>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.canonical.rockcraft.util;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+/**
+ * Pumps the output of a subprocess into a log line by line.
+ * Lines can be filtered and rate limited. With a queue the log is written
+ * on a dedicated thread, the subprocess only waits for the log when the queue is full.
+ */
+public class LogPump {
+    /**
+     * Maven transfer progress lines
+     */
+    public static final Predicate<String> DOWNLOAD_LINES =
+            Pattern.compile("^(\\[INFO\\] )?(Downloading|Downloaded|Progress) ").asPredicate();
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final String END = new String("end of stream");
+
+    private interface LineSink {
+        void accept(String line) throws InterruptedException;
+    }
+
+    private final Consumer<String> log;
+    private Charset charset = Charset.defaultCharset();
+    private Predicate<String> filter = x -> false;
+    private int maxLinesPerSecond = 0;
+    private int queueCapacity = 0;
+    private final AtomicLong lines = new AtomicLong();
+    private final AtomicLong suppressed = new AtomicLong();
+    private long windowStart;
+    private int windowLines;
+
+    /**
+     * Constructs LogPump
+     * @param log - consumer of the output lines
+     */
+    public LogPump(Consumer<String> log) {
+        this.log = log;
+    }
+
+    /**
+     * Sets the charset of the subprocess output
+     * @param charset - output charset
+     */
+    public void setCharset(Charset charset) {
+        this.charset = charset;
+    }
+
+    /**
+     * Sets the filter of the lines that are not logged, e.g. {@link #DOWNLOAD_LINES}
+     * @param filter - predicate matching suppressed lines
+     */
+    public void setFilter(Predicate<String> filter) {
+        this.filter = filter;
+    }
+
+    /**
+     * Limits the number of lines logged per second
+     * @param maxLinesPerSecond - maximum lines per second or 0 for no limit
+     */
+    public void setMaxLinesPerSecond(int maxLinesPerSecond) {
+        this.maxLinesPerSecond = maxLinesPerSecond;
+    }
+
+    /**
+     * Logs on a dedicated thread with a bounded queue
+     * @param queueCapacity - number of queued lines or 0 to log on the reading thread
+     */
+    public void setQueueCapacity(int queueCapacity) {
+        this.queueCapacity = queueCapacity;
+    }
+
+    /**
+     * Number of lines read
+     * @return line count
+     */
+    public long getLines() {
+        return lines.get();
+    }
+
+    /**
+     * Number of lines filtered or rate limited
+     * @return line count
+     */
+    public long getSuppressed() {
+        return suppressed.get();
+    }
+
+    /**
+     * Reads the stream until its end and logs the lines
+     * @param stream - subprocess output
+     * @throws IOException - failed to read the stream
+     * @throws InterruptedException - interrupted while waiting for the log
+     */
+    public void pump(InputStream stream) throws IOException, InterruptedException {
+        if (queueCapacity <= 0) {
+            read(stream, log::accept);
+            reportSuppressed(log);
+            return;
+        }
+        BlockingQueue<String> queue = new ArrayBlockingQueue<>(queueCapacity);
+        Thread writer = new Thread(() -> {
+            try {
+                for (String line = queue.take(); line != END; line = queue.take()) {
+                    try {
+                        log.accept(line);
+                    } catch (RuntimeException e) {
+                        // keep draining the queue, the subprocess must not block on a failed log
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, "build-log");
+        writer.setDaemon(true);
+        writer.start();
+        try {
+            read(stream, queue::put);
+        } finally {
+            if (writer.isAlive()) {
+                queue.put(END);
+                writer.join();
+            }
+        }
+        reportSuppressed(log);
+    }
+
+    private void read(InputStream stream, LineSink sink) throws IOException, InterruptedException {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(stream, charset), BUFFER_SIZE)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines.incrementAndGet();
+                if (filter.test(line) || isRateLimited()) {
+                    suppressed.incrementAndGet();
+                    continue;
+                }
+                sink.accept(line);
+            }
+        }
+    }
+
+    private boolean isRateLimited() {
+        if (maxLinesPerSecond <= 0) {
+            return false;
+        }
+        long now = System.nanoTime();
+        if (windowLines == 0 || now - windowStart >= 1_000_000_000L) {
+            windowStart = now;
+            windowLines = 0;
+        }
+        return ++windowLines > maxLinesPerSecond;
+    }
+
+    private void reportSuppressed(Consumer<String> sink) {
+        if (suppressed.get() > 0) {
+            sink.accept(String.format("%d of %d output lines suppressed", suppressed.get(), lines.get()));
+        }
+    }
+}
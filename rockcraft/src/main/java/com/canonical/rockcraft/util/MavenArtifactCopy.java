@@ -16,14 +16,26 @@ package com.canonical.rockcraft.util;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
 import java.util.jar.Attributes;
 import java.util.jar.JarEntry;
 import java.util.jar.JarOutputStream;
@@ -33,29 +45,152 @@ import java.util.jar.Manifest;
  * Utility class to copy a file into Maven repository
  */
 public class MavenArtifactCopy {
+    /**
+     * Number of files and bytes handled by the copy
+     */
+    public static class CopyCounter {
+        private final AtomicLong files = new AtomicLong();
+        private final AtomicLong bytes = new AtomicLong();
+
+        void add(long size) {
+            files.incrementAndGet();
+            bytes.addAndGet(size);
+        }
+
+        /**
+         * Gets the number of files
+         * @return file count
+         */
+        public long getFiles() {
+            return files.get();
+        }
+
+        /**
+         * Gets the total size of the files
+         * @return size in bytes
+         */
+        public long getBytes() {
+            return bytes.get();
+        }
+    }
+
+    private static final int LOCK_STRIPES = 64;
+    private static final int DIGEST_BUFFER_SIZE = 64 * 1024;
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    private static final Pattern SHA1_PATTERN = Pattern.compile("[0-9a-f]{40}");
+    private static final ThreadLocal<MessageDigest> SHA1 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    });
+    private static final ThreadLocal<ByteBuffer> DIGEST_BUFFER = ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(DIGEST_BUFFER_SIZE));
     /**
      * Output location for the copy operation
      */
     protected final Path outputLocationRoot;
+    private final ExportManifest previous;
+    private final ExportManifest exported = new ExportManifest();
+    private final Set<String> exportedPaths = Collections.newSetFromMap(new ConcurrentHashMap<>());
+    private final ReentrantLock[] locks = new ReentrantLock[LOCK_STRIPES];
+    private final AtomicLong duplicates = new AtomicLong();
+    private final AtomicLong contended = new AtomicLong();
+    private final AtomicLong rejectedChecksums = new AtomicLong();
+    private final CopyCounter skipped = new CopyCounter();
+    private final CopyCounter copied = new CopyCounter();
+    private final CopyCounter rehashed = new CopyCounter();
+    private final CopyCounter linked = new CopyCounter();
+    private final AtomicLong hashTime = new AtomicLong();
+    private CopyStrategy copyStrategy = CopyStrategy.copy;
+    private Path store;
+    private volatile Object destinationDevice;
 
     /**
      * Constructs a new MavenArtifactCopy
      * @param outputLocationRoot - output location
      */
     public MavenArtifactCopy(Path outputLocationRoot) {
+        this(outputLocationRoot, new ExportManifest());
+    }
+
+    /**
+     * Constructs a new MavenArtifactCopy that skips files unchanged since the previous export
+     * @param outputLocationRoot - output location
+     * @param previous - manifest of the previous export
+     */
+    public MavenArtifactCopy(Path outputLocationRoot, ExportManifest previous) {
         this.outputLocationRoot = outputLocationRoot;
+        this.previous = previous;
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * Sets the way files are placed into the repository
+     * @param copyStrategy - copy strategy
+     */
+    public void setCopyStrategy(CopyStrategy copyStrategy) {
+        this.copyStrategy = copyStrategy;
+    }
+
+    /**
+     * Places the files into a content-addressed store shared between repositories
+     * and hard links them into the repository
+     * @param store - store directory or null to place the files directly
+     */
+    public void setStore(Path store) {
+        this.store = store;
+    }
+
+    /**
+     * Gets the manifest of the files exported by this instance
+     * @return export manifest
+     */
+    public ExportManifest getExported() {
+        return exported;
     }
 
-    private static String computeHash(Path filePath, String alg) throws IOException, NoSuchAlgorithmException {
-        MessageDigest digest = MessageDigest.getInstance(alg);
-        byte[] bytes = Files.readAllBytes(filePath);
-        digest.update(bytes, 0, bytes.length);
+    private static String computeSha1(Path filePath) throws IOException {
+        // stream the file through a reusable buffer to keep large jars off the heap
+        MessageDigest digest = SHA1.get();
+        digest.reset();
+        ByteBuffer buffer = DIGEST_BUFFER.get();
+        buffer.clear();
+        try (FileChannel channel = FileChannel.open(filePath, StandardOpenOption.READ)) {
+            while (channel.read(buffer) != -1) {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+        }
         byte[] hash = digest.digest();
-        StringBuilder hexString = new StringBuilder();
-        for (byte b : hash) {
-            hexString.append(String.format("%02x", b));
+        char[] hexString = new char[hash.length * 2];
+        for (int i = 0; i < hash.length; i++) {
+            hexString[2 * i] = HEX[(hash[i] >> 4) & 0xf];
+            hexString[2 * i + 1] = HEX[hash[i] & 0xf];
+        }
+        return new String(hexString);
+    }
+
+    /**
+     * Reads the SHA-1 checksum published next to the file, e.g. in the local Maven repository
+     * @param file - checksummed file
+     * @return the checksum or null if there is no valid checksum file
+     */
+    private static String readSha1(Path file) {
+        Path sidecar = Paths.get(file + ".sha1");
+        try {
+            if (!Files.isRegularFile(sidecar) || Files.size(sidecar) > 1024) {
+                return null;
+            }
+            String[] content = new String(Files.readAllBytes(sidecar), StandardCharsets.UTF_8).trim().split("\\s+");
+            String sha1 = content[0].toLowerCase(Locale.ROOT);
+            return SHA1_PATTERN.matcher(sha1).matches() ? sha1 : null;
+        } catch (IOException e) {
+            return null;
         }
-        return hexString.toString();
     }
 
     protected Path getDestinationPath(String group, String name, String version) {
@@ -64,37 +199,332 @@ public class MavenArtifactCopy {
 
     /**
      * Copy file to the maven repository and write file's sha1
-     * synchronized to avoid writing the same file from multiple resolvers
+     * Copies to the same destination are serialized by a striped lock,
+     * repeated copies of an already exported file are skipped.
      * @param f       - source file
      * @param group   - maven group id
      * @param name    - maven artifact name
      * @param version - maven artifact version
+     * @return true if the file was written, false if it was a duplicate or the destination was up to date
      * @throws IOException - failed to copy the artifact
      */
-    public synchronized void copyToMavenRepository(File f, String group, String name, String version) throws IOException {
+    public boolean copyToMavenRepository(File f, String group, String name, String version) throws IOException {
         Path outputLocation = getDestinationPath(group, name, version);
-        outputLocation.toFile().mkdirs();
         Path destinationFile = outputLocation.resolve(f.getName());
-        Files.copy(f.toPath(), destinationFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
-        writeDigest(destinationFile);
+        String relativePath = outputLocationRoot.relativize(destinationFile).toString().replace(File.separatorChar, '/');
+        if (exportedPaths.contains(relativePath)) {
+            duplicates.incrementAndGet();
+            return false;
+        }
+        ReentrantLock lock = locks[(relativePath.hashCode() & Integer.MAX_VALUE) % locks.length];
+        if (!lock.tryLock()) {
+            contended.incrementAndGet();
+            lock.lock();
+        }
+        try {
+            // another thread might have exported the file while we waited for the lock
+            if (exportedPaths.contains(relativePath)) {
+                duplicates.incrementAndGet();
+                return false;
+            }
+            outputLocation.toFile().mkdirs();
+            boolean written = copy(f, destinationFile, relativePath, String.format("%s:%s:%s", group, name, version));
+            exportedPaths.add(relativePath);
+            return written;
+        } finally {
+            lock.unlock();
+        }
     }
 
-    protected static void writeDigest(Path destinationFile) throws IOException {
-        // do not checksum checksums
-        if (destinationFile.toString().endsWith(".sha1")) {
-            return;
+    private boolean copy(File f, Path destinationFile, String relativePath, String gav) throws IOException {
+        long size = f.length();
+        long modified = f.lastModified();
+        ExportManifest.Entry entry = previous.get(relativePath);
+        if (entry != null && entry.getSize() == size && entry.getSourceModified() == modified
+                && Files.isRegularFile(destinationFile) && Files.size(destinationFile) == size) {
+            // unchanged since the previous export
+            exported.put(relativePath, entry);
+            skipped.add(size);
+            return false;
+        }
+        String sha1 = identicalDestinationSha1(destinationFile, size, modified);
+        if (sha1 != null) {
+            exported.put(relativePath, new ExportManifest.Entry(gav, size, modified, sha1));
+            skipped.add(size);
+            return false;
         }
+        boolean written = true;
+        if (isSameSizeAndTime(destinationFile, size, modified)) {
+            // identical file without a checksum
+            sha1 = digest(destinationFile, f.toPath());
+            rehashed.add(size);
+            written = false;
+        } else if (store != null && !destinationFile.toString().endsWith(".sha1")) {
+            sha1 = linkFromStore(f.toPath(), destinationFile);
+        } else {
+            transfer(f.toPath(), destinationFile);
+            sha1 = digest(destinationFile, f.toPath());
+            copied.add(size);
+        }
+        exported.put(relativePath, new ExportManifest.Entry(gav, size, modified, sha1 == null ? "" : sha1));
+        return written;
+    }
+
+    /**
+     * Links the destination to the store object of the source, adding the object if it is missing.
+     * Objects are named by the SHA-1 checksum of their content, so repositories exporting the same file share it.
+     * @return checksum of the file
+     */
+    private String linkFromStore(Path source, Path destination) throws IOException {
+        long start = System.nanoTime();
+        // the key comes from the content, a stale checksum file must not make different files share an object
+        String sha1 = computeSha1(source);
+        hashTime.addAndGet(System.nanoTime() - start);
+        Path object = store.resolve(sha1.substring(0, 2)).resolve(sha1);
+        long size = Files.size(source);
+        if (!Files.isRegularFile(object)) {
+            Files.createDirectories(object.getParent());
+            // other exports may add the same object concurrently
+            Path temporary = Files.createTempFile(object.getParent(), sha1, ".tmp");
+            try {
+                // a hard link to the source would keep the link count above one and the object would never be collected
+                if (copyStrategy == CopyStrategy.reflink) {
+                    clone(source, temporary);
+                } else {
+                    Files.copy(source, temporary, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+                }
+                Files.move(temporary, object, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(temporary);
+            }
+            copied.add(size);
+        } else {
+            linked.add(size);
+        }
+        Files.deleteIfExists(destination);
         try {
-            Path digestFile = Paths.get(destinationFile + ".sha1");
-            String hash = MavenArtifactCopy.computeHash(destinationFile, "sha1");
-            String paddedSha1 = String.format("%40s", hash).replace(' ', '0');
-            Files.write(digestFile, paddedSha1.getBytes(StandardCharsets.UTF_8),
-                    StandardOpenOption.CREATE,
-                    StandardOpenOption.WRITE,
-                    StandardOpenOption.TRUNCATE_EXISTING);
-        } catch (NoSuchAlgorithmException e) {
-            throw new RuntimeException(e);
+            Files.createLink(destination, object);
+        } catch (IOException | UnsupportedOperationException e) {
+            Files.copy(object, destination, StandardCopyOption.COPY_ATTRIBUTES);
+        }
+        writeSha1(destination, sha1);
+        return sha1;
+    }
+
+    /**
+     * Removes the store objects that no repository links to any more, e.g. after the repository was deleted
+     * or re-exported, and temporary files left by interrupted exports.
+     * Files changed within the grace period are kept, since an export may be about to link them.
+     * @param store - store directory
+     * @param graceMillis - minimum age of the removed files
+     * @return number of removed files
+     * @throws IOException - failed to list or remove the files
+     */
+    public static long collectStore(Path store, long graceMillis) throws IOException {
+        if (!Files.isDirectory(store)) {
+            return 0;
+        }
+        long deadline = System.currentTimeMillis() - graceMillis;
+        AtomicLong removed = new AtomicLong();
+        try (Stream<Path> files = Files.walk(store, 2)) {
+            for (Path file : (Iterable<Path>) files.filter(Files::isRegularFile)::iterator) {
+                if (isUnreferenced(file, deadline) && Files.deleteIfExists(file)) {
+                    removed.incrementAndGet();
+                }
+            }
+        }
+        return removed.get();
+    }
+
+    private static boolean isUnreferenced(Path file, long deadline) throws IOException {
+        if (file.getFileName().toString().endsWith(".tmp")) {
+            return Files.getLastModifiedTime(file).toMillis() < deadline;
+        }
+        try {
+            // linking a file changes its status time
+            long changed = ((FileTime) Files.getAttribute(file, "unix:ctime")).toMillis();
+            return (Integer) Files.getAttribute(file, "unix:nlink") == 1 && changed < deadline;
+        } catch (UnsupportedOperationException | IllegalArgumentException e) {
+            // links cannot be counted, keep the object
+            return false;
+        }
+    }
+
+    /**
+     * Checks whether the destination already holds the source file and its checksum.
+     * Compares the size and the modification time recorded with the destination checksum file.
+     * @return checksum of the destination or null if the file needs to be copied or hashed
+     */
+    private static String identicalDestinationSha1(Path destination, long size, long modified) throws IOException {
+        if (!Files.isRegularFile(destination) || Files.size(destination) != size) {
+            return null;
+        }
+        String destinationSha1 = readSha1(destination);
+        if (destinationSha1 == null) {
+            return null;
+        }
+        // the checksum files are not verified, they are only trusted for the same size and modification time
+        return Files.getLastModifiedTime(destination).toMillis() == modified ? destinationSha1 : null;
+    }
+
+    private static boolean isSameSizeAndTime(Path destination, long size, long modified) throws IOException {
+        return Files.isRegularFile(destination)
+                && Files.size(destination) == size
+                && Files.getLastModifiedTime(destination).toMillis() == modified;
+    }
+
+    /**
+     * Statistics of the files skipped because the destination was identical
+     * @return skipped files
+     */
+    public CopyCounter getSkipped() {
+        return skipped;
+    }
+
+    /**
+     * Statistics of the files copied into the repository
+     * @return copied files
+     */
+    public CopyCounter getCopied() {
+        return copied;
+    }
+
+    /**
+     * Statistics of the identical files that only needed a checksum
+     * @return rehashed files
+     */
+    public CopyCounter getRehashed() {
+        return rehashed;
+    }
+
+    /**
+     * Statistics of the files linked from objects already in the store
+     * @return linked files
+     */
+    public CopyCounter getLinked() {
+        return linked;
+    }
+
+    /**
+     * Time spent computing and writing checksums
+     * @return time in milliseconds
+     */
+    public long getHashMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(hashTime.get());
+    }
+
+    /**
+     * Number of copy requests for files that were already exported
+     * @return duplicate request count
+     */
+    public long getDuplicateCount() {
+        return duplicates.get();
+    }
+
+    /**
+     * Number of source checksum files that did not match the content of the file
+     * @return rejected checksum file count
+     */
+    public long getRejectedChecksumCount() {
+        return rejectedChecksums.get();
+    }
+
+    /**
+     * Number of copy requests that waited for another copy to the same lock stripe
+     * @return contended request count
+     */
+    public long getContendedCount() {
+        return contended.get();
+    }
+
+    private void transfer(Path source, Path destination) throws IOException {
+        if (copyStrategy != CopyStrategy.copy && isSameFileSystem(source)) {
+            try {
+                switch (copyStrategy) {
+                    case hardlink:
+                        Files.deleteIfExists(destination);
+                        Files.createLink(destination, source);
+                        return;
+                    case reflink:
+                        clone(source, destination);
+                        return;
+                    default:
+                        break;
+                }
+            } catch (IOException | UnsupportedOperationException e) {
+                // fall back to copy
+            }
         }
+        Files.copy(source, destination, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+    }
+
+    /**
+     * Copies the file through {@link FileChannel#transferTo}, which recent JDKs implement with
+     * <i>copy_file_range</i> on Linux, so btrfs and xfs can share the extents instead of copying them
+     */
+    private static void clone(Path source, Path destination) throws IOException {
+        try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(destination, StandardOpenOption.WRITE,
+                     StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            long size = in.size();
+            long position = 0;
+            while (position < size) {
+                position += in.transferTo(position, size - position, out);
+            }
+        }
+        Files.setLastModifiedTime(destination, Files.getLastModifiedTime(source));
+    }
+
+    private boolean isSameFileSystem(Path source) {
+        try {
+            if (destinationDevice == null) {
+                destinationDevice = Files.getAttribute(outputLocationRoot, "unix:dev");
+            }
+            return destinationDevice.equals(Files.getAttribute(source, "unix:dev"));
+        } catch (IOException | UnsupportedOperationException | IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Writes the checksum of the destination file computed from its content.
+     * The checksum file of the source is only checked against it, a mismatching one is rejected.
+     */
+    private String digest(Path destinationFile, Path source) throws IOException {
+        long start = System.nanoTime();
+        try {
+            String hash = writeDigest(destinationFile);
+            String published = readSha1(source);
+            if (hash != null && published != null && !published.equals(hash)) {
+                rejectedChecksums.incrementAndGet();
+            }
+            return hash;
+        } finally {
+            hashTime.addAndGet(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Writes the SHA-1 checksum file next to the destination file
+     * @param destinationFile - file to checksum
+     * @return the checksum or null if the file is a checksum itself
+     * @throws IOException - failed to read the file or write the checksum
+     */
+    protected static String writeDigest(Path destinationFile) throws IOException {
+        // do not checksum checksums
+        if (destinationFile.toString().endsWith(".sha1")) {
+            return null;
+        }
+        String hash = MavenArtifactCopy.computeSha1(destinationFile);
+        writeSha1(destinationFile, hash);
+        return hash;
+    }
+
+    private static void writeSha1(Path file, String hash) throws IOException {
+        Files.write(Paths.get(file + ".sha1"), hash.getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
     }
 
     public static void createCompanionJar(File f) throws IOException {
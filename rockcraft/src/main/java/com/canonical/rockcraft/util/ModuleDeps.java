@@ -0,0 +1,189 @@
+/*
+ * Copyright 2025 Canonical Ltd.
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ * <p>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.canonical.rockcraft.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Finds the JDK modules required by the application jars with <i>jdeps --print-module-deps</i>.
+ * Jars nested in Spring Boot and war archives are analyzed as well, since their classes are loaded at runtime.
+ */
+public class ModuleDeps {
+    private static final long TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(5);
+    private static final Pattern MODULES = Pattern.compile("[\\w.]+(,[\\w.]+)*");
+
+    private final String jdeps;
+    private final int release;
+
+    /**
+     * Constructs ModuleDeps
+     * @param jdeps - path to jdeps
+     * @param release - Java release of the JDK providing jdeps
+     */
+    public ModuleDeps(String jdeps, int release) {
+        this.jdeps = jdeps;
+        this.release = release;
+    }
+
+    /**
+     * Gets ModuleDeps of the JDK running the build
+     * @return ModuleDeps with the jdeps of the build JDK
+     */
+    public static ModuleDeps getDefault() {
+        String version = System.getProperty("java.specification.version", "0");
+        // Java 8 and earlier report 1.x
+        if (version.startsWith("1.")) {
+            version = version.substring(2);
+        }
+        int runtimeRelease;
+        try {
+            runtimeRelease = Integer.parseInt(version);
+        } catch (NumberFormatException e) {
+            runtimeRelease = 0;
+        }
+        return new ModuleDeps(getDefaultTool(), runtimeRelease);
+    }
+
+    /**
+     * Gets the Java release of the JDK providing jdeps.
+     * The reported modules are modules of this release.
+     * @return Java release or 0 if it is not known
+     */
+    public int getRelease() {
+        return release;
+    }
+
+    /**
+     * Gets jdeps of the JDK running the build
+     * @return path to jdeps, it may not exist, e.g. in a JRE
+     */
+    public static String getDefaultTool() {
+        Path home = Paths.get(System.getProperty("java.home"));
+        Path tool = home.resolve("bin").resolve("jdeps");
+        if (!Files.exists(tool) && home.getParent() != null) {
+            // Java 8 home is the jre directory of the JDK
+            tool = home.getParent().resolve("bin").resolve("jdeps");
+        }
+        return tool.toString();
+    }
+
+    /**
+     * Gets the modules required by the jars
+     * @param files - jar files and directories containing jar files
+     * @param release - release of the multi-release jar classes to analyze
+     * @return sorted module names or an empty list if there is nothing to analyze
+     * @throws IOException - jdeps failed
+     * @throws InterruptedException - interrupted while waiting for jdeps
+     */
+    public List<String> getModules(List<File> files, int release) throws IOException, InterruptedException {
+        Path temp = Files.createTempDirectory("rockcraft-jdeps");
+        try {
+            List<String> jars = new ArrayList<>();
+            for (File file : files) {
+                for (Path jar : findJars(file.toPath())) {
+                    jars.add(jar.toString());
+                    extractNestedJars(jar, temp.resolve(String.valueOf(jars.size())), jars);
+                }
+            }
+            if (jars.isEmpty()) {
+                return Collections.emptyList();
+            }
+            ProcessBuilder pb = new ProcessBuilder(jdeps, "--print-module-deps", "--ignore-missing-deps", "-q",
+                    "--multi-release", release < 9 ? "base" : String.valueOf(release),
+                    "--class-path", String.join(File.pathSeparator, jars));
+            pb.command().addAll(jars);
+            pb.redirectErrorStream(true);
+            List<String> output = Collections.synchronizedList(new ArrayList<>());
+            int result = new ProcessRunner(TIMEOUT_MILLIS).run(pb, new LogPump(output::add));
+            String modules = output.isEmpty() ? "" : output.get(output.size() - 1).trim();
+            if (result != 0 || !MODULES.matcher(modules).matches()) {
+                throw new IOException("jdeps failed with exit code " + result + ": " + String.join("\n", output));
+            }
+            return Arrays.stream(modules.split(",")).sorted().collect(Collectors.toList());
+        } finally {
+            deleteTree(temp);
+        }
+    }
+
+    private static List<Path> findJars(Path file) throws IOException {
+        if (!Files.isDirectory(file)) {
+            return file.toString().endsWith(".jar") || file.toString().endsWith(".war")
+                    ? Collections.singletonList(file) : Collections.emptyList();
+        }
+        try (Stream<Path> paths = Files.walk(file)) {
+            return paths.filter(x -> Files.isRegularFile(x) && x.toString().endsWith(".jar"))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private static void extractNestedJars(Path jar, Path destination, List<String> jars) throws IOException {
+        try (ZipFile zip = new ZipFile(jar.toFile())) {
+            Enumeration<? extends ZipEntry> entries = zip.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                if (entry.isDirectory() || !entry.getName().endsWith(".jar")) {
+                    continue;
+                }
+                Path target = destination.resolve(entry.getName()).normalize();
+                if (!target.startsWith(destination)) {
+                    throw new IOException("Invalid jar entry " + entry.getName() + " in " + jar);
+                }
+                Files.createDirectories(target.getParent());
+                try (InputStream is = zip.getInputStream(entry)) {
+                    Files.copy(is, target);
+                }
+                jars.add(target.toString());
+            }
+        }
+    }
+
+    private static void deleteTree(Path root) throws IOException {
+        if (!Files.exists(root)) {
+            return;
+        }
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+                Files.delete(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+}
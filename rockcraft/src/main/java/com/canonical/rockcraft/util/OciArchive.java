@@ -0,0 +1,451 @@
+/*
+ * Copyright 2025 Canonical Ltd.
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ * <p>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.canonical.rockcraft.util;
+
+import org.yaml.snakeyaml.Yaml;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads an OCI image layout stored in a tar archive, e.g. a <i>.rock</i> file.
+ * The archive is indexed once and the blobs are read in place, without extracting them.
+ */
+public class OciArchive {
+    static final int BLOCK = 512;
+    private static final String BLOBS = "blobs/";
+
+    /**
+     * Content descriptor of a blob
+     */
+    public static class Descriptor {
+        private final String mediaType;
+        private final String digest;
+        private final long size;
+        private final Map<String, Object> platform;
+
+        /**
+         * Constructs Descriptor
+         * @param mediaType - media type of the blob
+         * @param digest - digest of the blob, e.g. sha256:...
+         * @param size - size of the blob
+         * @param platform - platform of the manifest or null
+         */
+        public Descriptor(String mediaType, String digest, long size, Map<String, Object> platform) {
+            this.mediaType = mediaType;
+            this.digest = digest;
+            this.size = size;
+            this.platform = platform;
+        }
+
+        /**
+         * Gets the media type
+         * @return media type
+         */
+        public String getMediaType() {
+            return mediaType;
+        }
+
+        /**
+         * Gets the digest
+         * @return digest
+         */
+        public String getDigest() {
+            return digest;
+        }
+
+        /**
+         * Gets the blob size
+         * @return size in bytes
+         */
+        public long getSize() {
+            return size;
+        }
+
+        /**
+         * Gets the platform of the manifest
+         * @return platform properties (architecture, os, variant) or null
+         */
+        public Map<String, Object> getPlatform() {
+            return platform;
+        }
+    }
+
+    private static class Entry {
+        private final long offset;
+        private final long size;
+
+        private Entry(long offset, long size) {
+            this.offset = offset;
+            this.size = size;
+        }
+    }
+
+    private final Path archive;
+    private final Map<String, Entry> entries = new LinkedHashMap<>();
+
+    private OciArchive(Path archive) {
+        this.archive = archive;
+    }
+
+    /**
+     * Indexes the archive
+     * @param archive - OCI archive
+     * @return archive
+     * @throws IOException - failed to read the archive
+     */
+    public static OciArchive open(Path archive) throws IOException {
+        OciArchive result = new OciArchive(archive);
+        result.index();
+        return result;
+    }
+
+    private void index() throws IOException {
+        try (FileChannel channel = FileChannel.open(archive, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(BLOCK);
+            long position = 0;
+            String longName = null;
+            while (true) {
+                header.clear();
+                if (readFully(channel, header, position) < BLOCK) {
+                    break;
+                }
+                byte[] block = header.array();
+                if (isZero(block)) {
+                    break;
+                }
+                long size = parseSize(block);
+                char type = (char) block[156];
+                long data = position + BLOCK;
+                position = data + (size + BLOCK - 1) / BLOCK * BLOCK;
+                if (type == 'L' || type == 'x') {
+                    // GNU long name or PAX extended header of the next entry
+                    ByteBuffer buffer = ByteBuffer.allocate((int) size);
+                    readFully(channel, buffer, data);
+                    String value = new String(buffer.array(), StandardCharsets.UTF_8);
+                    longName = type == 'L' ? value.replace("\0", "") : parsePaxPath(value, longName);
+                    continue;
+                }
+                String name = longName != null ? longName : parseName(block);
+                longName = null;
+                if (type == '0' || type == '\0') {
+                    entries.put(normalize(name), new Entry(data, size));
+                }
+            }
+        }
+    }
+
+    static int readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        int total = 0;
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + total);
+            if (read < 0) {
+                break;
+            }
+            total += read;
+        }
+        return total;
+    }
+
+    static boolean isZero(byte[] block) {
+        for (byte b : block) {
+            if (b != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static String parseString(byte[] block, int offset, int length) {
+        int end = offset;
+        while (end < offset + length && block[end] != 0) {
+            end++;
+        }
+        return new String(block, offset, end - offset, StandardCharsets.UTF_8);
+    }
+
+    static String parseName(byte[] block) {
+        String name = parseString(block, 0, 100);
+        String magic = parseString(block, 257, 6);
+        if ("ustar".equals(magic)) {
+            // POSIX prefix, GNU archives keep access and change times at this offset
+            String prefix = parseString(block, 345, 155);
+            if (!prefix.isEmpty()) {
+                name = prefix + "/" + name;
+            }
+        }
+        return name;
+    }
+
+    static long parseSize(byte[] block) {
+        if ((block[124] & 0x80) != 0) {
+            // base-256 encoding of large files
+            long size = 0;
+            for (int i = 125; i < 136; i++) {
+                size = (size << 8) | (block[i] & 0xff);
+            }
+            return size;
+        }
+        String octal = parseString(block, 124, 12).trim();
+        return octal.isEmpty() ? 0 : Long.parseLong(octal, 8);
+    }
+
+    static String parsePaxPath(String records, String current) {
+        int position = 0;
+        while (position < records.length()) {
+            int space = records.indexOf(' ', position);
+            if (space < 0) {
+                break;
+            }
+            int length = Integer.parseInt(records.substring(position, space));
+            String record = records.substring(space + 1, Math.min(records.length(), position + length - 1));
+            if (record.startsWith("path=")) {
+                return record.substring("path=".length());
+            }
+            position += length;
+        }
+        return current;
+    }
+
+    static String normalize(String name) {
+        return name.startsWith("./") ? name.substring(2) : name;
+    }
+
+    /**
+     * Gets the manifests listed in <i>index.json</i>
+     * @return manifest descriptors
+     * @throws IOException - the archive is not an OCI image layout
+     */
+    @SuppressWarnings("unchecked")
+    public List<Descriptor> getManifests() throws IOException {
+        Map<String, Object> index = readJson("index.json");
+        ArrayList<Descriptor> manifests = new ArrayList<>();
+        List<Map<String, Object>> items = (List<Map<String, Object>>) index.get("manifests");
+        if (items != null) {
+            for (Map<String, Object> item : items) {
+                manifests.add(toDescriptor(item));
+            }
+        }
+        return manifests;
+    }
+
+    /**
+     * Gets the config and layer descriptors of the manifest
+     * @param manifest - manifest descriptor
+     * @return config descriptor followed by the layer descriptors
+     * @throws IOException - failed to read the manifest
+     */
+    @SuppressWarnings("unchecked")
+    public List<Descriptor> getBlobs(Descriptor manifest) throws IOException {
+        Map<String, Object> content = parseJson(readBlob(manifest.getDigest()));
+        ArrayList<Descriptor> blobs = new ArrayList<>();
+        blobs.add(toDescriptor((Map<String, Object>) content.get("config")));
+        List<Map<String, Object>> layers = (List<Map<String, Object>>) content.get("layers");
+        if (layers != null) {
+            for (Map<String, Object> layer : layers) {
+                blobs.add(toDescriptor(layer));
+            }
+        }
+        return blobs;
+    }
+
+    /**
+     * Gets the platform of the manifest from the index or from the image config
+     * @param manifest - manifest descriptor
+     * @return platform properties: architecture, os and optional variant
+     * @throws IOException - failed to read the config
+     */
+    public Map<String, Object> getPlatform(Descriptor manifest) throws IOException {
+        if (manifest.getPlatform() != null) {
+            return manifest.getPlatform();
+        }
+        Map<String, Object> config = parseJson(readBlob(getBlobs(manifest).get(0).getDigest()));
+        Map<String, Object> platform = new LinkedHashMap<>();
+        platform.put("architecture", config.get("architecture"));
+        platform.put("os", config.get("os"));
+        if (config.get("variant") != null) {
+            platform.put("variant", config.get("variant"));
+        }
+        return platform;
+    }
+
+    /**
+     * Reads a small blob, e.g. a manifest or a config
+     * @param digest - blob digest
+     * @return blob content
+     * @throws IOException - the blob is missing
+     */
+    public byte[] readBlob(String digest) throws IOException {
+        Entry entry = getEntry(blobPath(digest));
+        ByteBuffer buffer = ByteBuffer.allocate((int) entry.size);
+        try (FileChannel channel = FileChannel.open(archive, StandardOpenOption.READ)) {
+            readFully(channel, buffer, entry.offset);
+        }
+        return buffer.array();
+    }
+
+    /**
+     * Gets the names of the archive entries in the archive order
+     * @return entry names
+     */
+    public List<String> getEntryNames() {
+        return new ArrayList<>(entries.keySet());
+    }
+
+    /**
+     * Gets the size of the archive entry
+     * @param name - entry name
+     * @return size in bytes
+     * @throws IOException - the entry is missing
+     */
+    public long getEntrySize(String name) throws IOException {
+        return getEntry(name).size;
+    }
+
+    /**
+     * Gets the archive entry name of the blob
+     * @param digest - blob digest
+     * @return entry name, <i>blobs/algorithm/hex</i>
+     */
+    public static String getBlobEntryName(String digest) {
+        return blobPath(digest);
+    }
+
+    /**
+     * Copies the blob into the stream
+     * @param digest - blob digest
+     * @param out - output stream
+     * @throws IOException - the blob is missing or the copy failed
+     */
+    public void writeBlob(String digest, OutputStream out) throws IOException {
+        writeEntry(blobPath(digest), out);
+    }
+
+    /**
+     * Opens the blob for reading
+     * @param digest - blob digest
+     * @return blob content stream
+     * @throws IOException - the blob is missing
+     */
+    public InputStream openBlob(String digest) throws IOException {
+        Entry entry = getEntry(blobPath(digest));
+        FileChannel channel = FileChannel.open(archive, StandardOpenOption.READ);
+        channel.position(entry.offset);
+        InputStream in = Channels.newInputStream(channel);
+        return new InputStream() {
+            private long remaining = entry.size;
+
+            @Override
+            public int read() throws IOException {
+                if (remaining <= 0) {
+                    return -1;
+                }
+                int b = in.read();
+                if (b >= 0) {
+                    remaining--;
+                }
+                return b;
+            }
+
+            @Override
+            public int read(byte[] buffer, int offset, int length) throws IOException {
+                if (remaining <= 0) {
+                    return -1;
+                }
+                int read = in.read(buffer, offset, (int) Math.min(length, remaining));
+                if (read > 0) {
+                    remaining -= read;
+                }
+                return read;
+            }
+
+            @Override
+            public void close() throws IOException {
+                channel.close();
+            }
+        };
+    }
+
+    /**
+     * Copies the archive entry into the stream
+     * @param name - entry name
+     * @param out - output stream
+     * @throws IOException - the entry is missing or the copy failed
+     */
+    public void writeEntry(String name, OutputStream out) throws IOException {
+        Entry entry = getEntry(name);
+        try (FileChannel channel = FileChannel.open(archive, StandardOpenOption.READ)) {
+            channel.position(entry.offset);
+            InputStream in = Channels.newInputStream(channel);
+            byte[] buffer = new byte[64 * 1024];
+            long remaining = entry.size;
+            while (remaining > 0) {
+                int read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                if (read < 0) {
+                    throw new IOException("Truncated entry " + name + " in " + archive);
+                }
+                out.write(buffer, 0, read);
+                remaining -= read;
+            }
+        }
+    }
+
+    private Map<String, Object> readJson(String name) throws IOException {
+        Entry entry = getEntry(name);
+        ByteBuffer buffer = ByteBuffer.allocate((int) entry.size);
+        try (FileChannel channel = FileChannel.open(archive, StandardOpenOption.READ)) {
+            readFully(channel, buffer, entry.offset);
+        }
+        return parseJson(buffer.array());
+    }
+
+    /**
+     * Parses JSON documents of the image layout, JSON without tabs is valid YAML
+     */
+    @SuppressWarnings("unchecked")
+    static Map<String, Object> parseJson(byte[] json) {
+        return (Map<String, Object>) new Yaml().load(new String(json, StandardCharsets.UTF_8).replace('\t', ' '));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Descriptor toDescriptor(Map<String, Object> item) {
+        return new Descriptor(String.valueOf(item.get("mediaType")),
+                String.valueOf(item.get("digest")),
+                ((Number) item.get("size")).longValue(),
+                (Map<String, Object>) item.get("platform"));
+    }
+
+    private static String blobPath(String digest) {
+        return BLOBS + digest.replace(':', '/');
+    }
+
+    private Entry getEntry(String name) throws IOException {
+        Entry entry = entries.get(name);
+        if (entry == null) {
+            throw new IOException(name + " not found in " + archive);
+        }
+        return entry;
+    }
+}
@@ -0,0 +1,456 @@
+/*
+ * Copyright 2025 Canonical Ltd.
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ * <p>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.canonical.rockcraft.util;
+
+import org.yaml.snakeyaml.Yaml;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Pushes images to a registry with the OCI distribution API.
+ * Blobs already present in the repository are not uploaded again.
+ * The registry is <i>host[:port][/namespace]</i>, <i>http://</i> prefix selects a plain HTTP registry.
+ * Credentials are read from ROCKCRAFT_REGISTRY_USERNAME and ROCKCRAFT_REGISTRY_PASSWORD environment variables.
+ */
+public class OciRegistryClient {
+    /**
+     * Environment variable with the registry user name
+     */
+    public static final String USERNAME_ENV = "ROCKCRAFT_REGISTRY_USERNAME";
+    /**
+     * Environment variable with the registry password or token
+     */
+    public static final String PASSWORD_ENV = "ROCKCRAFT_REGISTRY_PASSWORD";
+
+    private static final Pattern CHALLENGE_PARAMETER = Pattern.compile("(\\w+)=\"([^\"]*)\"");
+    private static final String OCI_TAG = "OCI-Tag";
+    private static final String IMAGE_INDEX = "application/vnd.oci.image.index.v1+json";
+
+    private final String baseUrl;
+    private final String namespace;
+    private final String basicAuthorization;
+    private volatile String authorization;
+    private Consumer<String> log = x -> {};
+    private final AtomicLong uploadedBlobs = new AtomicLong();
+    private final AtomicLong uploadedBytes = new AtomicLong();
+    private final AtomicLong existingBlobs = new AtomicLong();
+
+    /**
+     * Constructs OciRegistryClient with the credentials from the environment
+     * @param registry - registry, e.g. <i>ghcr.io/acme</i> or <i>http://localhost:5000</i>
+     */
+    public OciRegistryClient(String registry) {
+        this(registry, System.getenv(USERNAME_ENV), System.getenv(PASSWORD_ENV));
+    }
+
+    /**
+     * Constructs OciRegistryClient
+     * @param registry - registry, e.g. <i>ghcr.io/acme</i> or <i>http://localhost:5000</i>
+     * @param username - user name or null for anonymous access
+     * @param password - password or token
+     */
+    public OciRegistryClient(String registry, String username, String password) {
+        String scheme = "https://";
+        String location = registry;
+        if (registry.startsWith("http://") || registry.startsWith("https://")) {
+            scheme = registry.substring(0, registry.indexOf("://") + 3);
+            location = registry.substring(scheme.length());
+        }
+        while (location.endsWith("/")) {
+            location = location.substring(0, location.length() - 1);
+        }
+        int slash = location.indexOf('/');
+        this.baseUrl = scheme + (slash < 0 ? location : location.substring(0, slash));
+        this.namespace = slash < 0 ? "" : location.substring(slash + 1) + "/";
+        if (username != null && !username.isEmpty()) {
+            String credentials = username + ":" + (password == null ? "" : password);
+            this.basicAuthorization = "Basic " + Base64.getEncoder().encodeToString(credentials.getBytes(StandardCharsets.UTF_8));
+        } else {
+            this.basicAuthorization = null;
+        }
+    }
+
+    /**
+     * Sets the log for the upload progress
+     * @param log - log consumer
+     */
+    public void setLog(Consumer<String> log) {
+        this.log = log;
+    }
+
+    /**
+     * Number of uploaded blobs
+     * @return blob count
+     */
+    public long getUploadedBlobs() {
+        return uploadedBlobs.get();
+    }
+
+    /**
+     * Number of uploaded bytes
+     * @return byte count
+     */
+    public long getUploadedBytes() {
+        return uploadedBytes.get();
+    }
+
+    /**
+     * Number of blobs found in the registry
+     * @return blob count
+     */
+    public long getExistingBlobs() {
+        return existingBlobs.get();
+    }
+
+    /**
+     * Gets the repository of the image in the registry
+     * @param imageName - image name
+     * @return repository name
+     */
+    public String getRepository(String imageName) {
+        return namespace + imageName;
+    }
+
+    /**
+     * Pushes the images of the archive and tags them
+     * @param archive - OCI archive
+     * @param imageName - image name
+     * @param tags - image tags
+     * @throws IOException - push failed
+     */
+    public void push(OciArchive archive, String imageName, List<String> tags) throws IOException {
+        String repository = getRepository(imageName);
+        for (OciArchive.Descriptor manifest : archive.getManifests()) {
+            pushBlobs(archive, repository, manifest);
+            putManifest(repository, manifest.getMediaType(), manifest.getDigest(), archive.readBlob(manifest.getDigest()), tags);
+        }
+    }
+
+    /**
+     * Pushes the images of several archives concurrently and tags an image index that refers to all of them,
+     * e.g. the rocks of different architectures
+     * @param archives - OCI archives
+     * @param imageName - image name
+     * @param tags - image index tags
+     * @param threads - number of archives pushed concurrently
+     * @throws IOException - push failed
+     * @throws InterruptedException - push was interrupted
+     */
+    public void pushIndex(List<OciArchive> archives, String imageName, List<String> tags, int threads) throws IOException, InterruptedException {
+        String repository = getRepository(imageName);
+        ArrayList<Callable<List<String>>> tasks = new ArrayList<>();
+        for (OciArchive archive : archives) {
+            tasks.add(() -> {
+                ArrayList<String> entries = new ArrayList<>();
+                for (OciArchive.Descriptor manifest : archive.getManifests()) {
+                    pushBlobs(archive, repository, manifest);
+                    // untagged, the index is the tagged image
+                    putManifest(repository, manifest.getMediaType(), manifest.getDigest(),
+                            archive.readBlob(manifest.getDigest()), new ArrayList<>());
+                    entries.add(String.format("{\"mediaType\":\"%s\",\"digest\":\"%s\",\"size\":%d,\"platform\":%s}",
+                            manifest.getMediaType(), manifest.getDigest(), manifest.getSize(), toJson(archive.getPlatform(manifest))));
+                }
+                return entries;
+            });
+        }
+        ArrayList<String> entries = new ArrayList<>();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, tasks.size())));
+        try {
+            for (Future<List<String>> result : executor.invokeAll(tasks)) {
+                entries.addAll(result.get());
+            }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        byte[] index = String.format("{\"schemaVersion\":2,\"mediaType\":\"%s\",\"manifests\":[%s]}",
+                IMAGE_INDEX, String.join(",", entries)).getBytes(StandardCharsets.UTF_8);
+        putManifest(repository, IMAGE_INDEX, sha256(index), index, tags);
+    }
+
+    /**
+     * Uploads the config and the layers of the manifest that are missing in the repository
+     * @param archive - OCI archive
+     * @param repository - repository name
+     * @param manifest - manifest descriptor
+     * @throws IOException - upload failed
+     */
+    public void pushBlobs(OciArchive archive, String repository, OciArchive.Descriptor manifest) throws IOException {
+        for (OciArchive.Descriptor blob : archive.getBlobs(manifest)) {
+            if (hasBlob(repository, blob.getDigest())) {
+                existingBlobs.incrementAndGet();
+                continue;
+            }
+            uploadBlob(repository, blob, out -> archive.writeBlob(blob.getDigest(), out));
+        }
+    }
+
+    /**
+     * Uploads the manifest and applies the tags.
+     * The tags are passed to a single upload by digest, registries that do not report
+     * the tags in the OCI-Tag header get the manifest once per tag.
+     * @param repository - repository name
+     * @param mediaType - manifest media type
+     * @param digest - manifest digest
+     * @param content - manifest content
+     * @param tags - tags
+     * @throws IOException - upload failed
+     */
+    public void putManifest(String repository, String mediaType, String digest, byte[] content, List<String> tags) throws IOException {
+        StringBuilder query = new StringBuilder();
+        for (String tag : tags) {
+            query.append(query.length() == 0 ? "?" : "&").append("tag=").append(encode(tag));
+        }
+        HttpURLConnection connection = send("PUT", url(repository, "manifests/" + digest) + query, mediaType, content);
+        expect(connection, 201, "upload manifest " + digest);
+        if (connection.getHeaderField(OCI_TAG) == null) {
+            for (String tag : tags) {
+                connection = send("PUT", url(repository, "manifests/" + encode(tag)), mediaType, content);
+                expect(connection, 201, "tag " + repository + ":" + tag);
+            }
+        }
+        log.accept(String.format("Pushed %s%s:%s", location(), repository, String.join(",", tags)));
+    }
+
+    private interface BlobWriter {
+        void write(OutputStream out) throws IOException;
+    }
+
+    private boolean hasBlob(String repository, String digest) throws IOException {
+        HttpURLConnection connection = send("HEAD", url(repository, "blobs/" + digest), null, null);
+        int code = connection.getResponseCode();
+        connection.disconnect();
+        if (code == 200) {
+            return true;
+        }
+        if (code == 404) {
+            return false;
+        }
+        throw new IOException(String.format("Failed to check blob %s in %s: HTTP %d", digest, repository, code));
+    }
+
+    private void uploadBlob(String repository, OciArchive.Descriptor blob, BlobWriter writer) throws IOException {
+        HttpURLConnection start = send("POST", url(repository, "blobs/uploads/"), null, new byte[0]);
+        expect(start, 202, "start upload of " + blob.getDigest());
+        String location = start.getHeaderField("Location");
+        if (location == null) {
+            throw new IOException("Registry did not return upload location for " + blob.getDigest());
+        }
+        if (location.startsWith("/")) {
+            location = baseUrl + location;
+        }
+        String target = location + (location.contains("?") ? "&" : "?") + "digest=" + encode(blob.getDigest());
+        HttpURLConnection connection = open("PUT", target);
+        connection.setDoOutput(true);
+        connection.setFixedLengthStreamingMode(blob.getSize());
+        connection.setRequestProperty("Content-Type", "application/octet-stream");
+        try (OutputStream out = connection.getOutputStream()) {
+            writer.write(out);
+        }
+        expect(connection, 201, "upload blob " + blob.getDigest());
+        uploadedBlobs.incrementAndGet();
+        uploadedBytes.addAndGet(blob.getSize());
+        log.accept(String.format("Uploaded %s (%d bytes)", blob.getDigest(), blob.getSize()));
+    }
+
+    private static String toJson(Map<String, Object> platform) {
+        StringBuilder json = new StringBuilder("{");
+        for (Map.Entry<String, Object> entry : platform.entrySet()) {
+            if (entry.getValue() == null) {
+                continue;
+            }
+            json.append(json.length() == 1 ? "" : ",")
+                    .append('"').append(entry.getKey()).append("\":\"").append(entry.getValue()).append('"');
+        }
+        return json.append("}").toString();
+    }
+
+    private static String sha256(byte[] content) {
+        try {
+            StringBuilder digest = new StringBuilder("sha256:");
+            for (byte b : MessageDigest.getInstance("SHA-256").digest(content)) {
+                digest.append(String.format("%02x", b));
+            }
+            return digest.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private String location() {
+        return baseUrl.substring(baseUrl.indexOf("://") + 3) + "/";
+    }
+
+    private String url(String repository, String path) {
+        return baseUrl + "/v2/" + repository + "/" + path;
+    }
+
+    private static String encode(String value) {
+        try {
+            return URLEncoder.encode(value, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private HttpURLConnection open(String method, String url) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setRequestMethod(method);
+        connection.setInstanceFollowRedirects(true);
+        String auth = authorization != null ? authorization : basicAuthorization;
+        if (auth != null) {
+            connection.setRequestProperty("Authorization", auth);
+        }
+        return connection;
+    }
+
+    /**
+     * Sends the request, authenticates and retries once if the registry asks for credentials
+     */
+    private HttpURLConnection send(String method, String url, String contentType, byte[] body) throws IOException {
+        HttpURLConnection connection = sendOnce(method, url, contentType, body);
+        if (connection.getResponseCode() != 401) {
+            return connection;
+        }
+        String challenge = connection.getHeaderField("WWW-Authenticate");
+        drain(connection);
+        if (challenge == null || !authenticate(challenge)) {
+            return connection;
+        }
+        return sendOnce(method, url, contentType, body);
+    }
+
+    private HttpURLConnection sendOnce(String method, String url, String contentType, byte[] body) throws IOException {
+        HttpURLConnection connection = open(method, url);
+        if (body != null) {
+            connection.setDoOutput(true);
+            connection.setFixedLengthStreamingMode(body.length);
+            if (contentType != null) {
+                connection.setRequestProperty("Content-Type", contentType);
+            }
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(body);
+            }
+        }
+        return connection;
+    }
+
+    /**
+     * Handles Basic and Bearer challenges of the registry
+     */
+    @SuppressWarnings("unchecked")
+    private boolean authenticate(String challenge) throws IOException {
+        if (challenge.regionMatches(true, 0, "Basic", 0, 5)) {
+            if (basicAuthorization == null || basicAuthorization.equals(authorization)) {
+                return false;
+            }
+            authorization = basicAuthorization;
+            return true;
+        }
+        if (!challenge.regionMatches(true, 0, "Bearer", 0, 6)) {
+            return false;
+        }
+        Matcher matcher = CHALLENGE_PARAMETER.matcher(challenge);
+        String realm = null;
+        StringBuilder query = new StringBuilder();
+        while (matcher.find()) {
+            if ("realm".equals(matcher.group(1))) {
+                realm = matcher.group(2);
+            } else {
+                query.append(query.length() == 0 ? "?" : "&")
+                        .append(matcher.group(1)).append("=").append(encode(matcher.group(2)));
+            }
+        }
+        if (realm == null) {
+            return false;
+        }
+        HttpURLConnection connection = (HttpURLConnection) new URL(realm + query).openConnection();
+        if (basicAuthorization != null) {
+            connection.setRequestProperty("Authorization", basicAuthorization);
+        }
+        expect(connection, 200, "authenticate with " + realm);
+        Map<String, Object> response;
+        try (InputStream is = connection.getInputStream()) {
+            response = new Yaml().load(new String(readAll(is), StandardCharsets.UTF_8));
+        }
+        Object token = response.get("token") != null ? response.get("token") : response.get("access_token");
+        if (token == null) {
+            return false;
+        }
+        authorization = "Bearer " + token;
+        return true;
+    }
+
+    private static void expect(HttpURLConnection connection, int code, String action) throws IOException {
+        int actual = connection.getResponseCode();
+        if (actual == code) {
+            drain(connection);
+            return;
+        }
+        String message = "";
+        InputStream error = connection.getErrorStream();
+        if (error != null) {
+            try (InputStream is = error) {
+                message = ": " + new String(readAll(is), StandardCharsets.UTF_8);
+            }
+        }
+        throw new IOException(String.format("Failed to %s: HTTP %d%s", action, actual, message));
+    }
+
+    private static void drain(HttpURLConnection connection) throws IOException {
+        InputStream stream = connection.getResponseCode() >= 400 ? connection.getErrorStream() : connection.getInputStream();
+        if (stream != null) {
+            try (InputStream is = stream) {
+                readAll(is);
+            }
+        }
+    }
+
+    private static byte[] readAll(InputStream is) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = is.read(buffer)) > 0) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+}
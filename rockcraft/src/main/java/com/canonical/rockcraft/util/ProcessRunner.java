@@ -0,0 +1,246 @@
+/*
+ * Copyright 2025 Canonical Ltd.
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ * <p>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.canonical.rockcraft.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Runs subprocesses with a timeout.
+ * The process and all its descendants are terminated when the timeout expires,
+ * when the waiting thread is interrupted (Gradle build cancellation)
+ * or when the JVM shuts down (Maven build cancellation).
+ */
+public class ProcessRunner {
+    /**
+     * Timeout value that waits for the process without a limit
+     */
+    public static final long NO_TIMEOUT = 0;
+
+    private static final long TERMINATION_GRACE_MILLIS = 5000;
+    private static final Path PROC = Paths.get("/proc");
+
+    private final long timeoutMillis;
+    private Consumer<String> log = x -> {};
+
+    /**
+     * Constructs ProcessRunner
+     * @param timeoutMillis - process timeout in milliseconds or {@link #NO_TIMEOUT}
+     */
+    public ProcessRunner(long timeoutMillis) {
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * Sets the log for the exit code and the run time of the processes
+     * @param log - log consumer
+     */
+    public void setLog(Consumer<String> log) {
+        this.log = log;
+    }
+
+    /**
+     * Runs the process and waits for its exit
+     * @param pb - process to run
+     * @return exit code
+     * @throws IOException - failed to start the process or the process timed out
+     * @throws InterruptedException - the wait was interrupted, the process was terminated
+     */
+    public int run(ProcessBuilder pb) throws IOException, InterruptedException {
+        return run(pb, null);
+    }
+
+    /**
+     * Runs the process and pumps its output into the log
+     * @param pb - process to run
+     * @param pump - output pump or null if the output is redirected
+     * @return exit code
+     * @throws IOException - failed to start the process, read its output or the process timed out
+     * @throws InterruptedException - the wait was interrupted, the process was terminated
+     */
+    public int run(ProcessBuilder pb, LogPump pump) throws IOException, InterruptedException {
+        String name = pb.command().get(0);
+        long start = System.nanoTime();
+        Process process = pb.start();
+        Thread shutdownHook = new Thread(() -> destroyTree(process));
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+        IOException[] pumpFailure = new IOException[1];
+        Thread reader = null;
+        if (pump != null) {
+            reader = new Thread(() -> {
+                try (InputStream is = process.getInputStream()) {
+                    pump.pump(is);
+                } catch (IOException e) {
+                    pumpFailure[0] = e;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }, name + "-output");
+            reader.setDaemon(true);
+            reader.start();
+        }
+        try {
+            boolean exited = true;
+            if (timeoutMillis > 0) {
+                exited = process.waitFor(timeoutMillis, TimeUnit.MILLISECONDS);
+            } else {
+                process.waitFor();
+            }
+            if (!exited) {
+                destroyTree(process);
+                throw new IOException(String.format("%s timed out after %d ms", name, timeoutMillis));
+            }
+        } catch (InterruptedException e) {
+            log.accept(String.format("%s cancelled, terminating the process tree", name));
+            destroyTree(process);
+            throw e;
+        } finally {
+            try {
+                Runtime.getRuntime().removeShutdownHook(shutdownHook);
+            } catch (IllegalStateException e) {
+                // the JVM is shutting down, the hook terminates the process
+            }
+            if (reader != null) {
+                // descendants that outlived the process may keep the output open
+                reader.join(TERMINATION_GRACE_MILLIS);
+            }
+        }
+        if (pumpFailure[0] != null) {
+            throw pumpFailure[0];
+        }
+        int exitCode = process.exitValue();
+        log.accept(String.format("%s exited with %d in %d ms", name, exitCode,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+        return exitCode;
+    }
+
+    /**
+     * Terminates the process and its descendants, kills them if they do not exit in time
+     * @param process - process to terminate
+     */
+    public static void destroyTree(Process process) {
+        long pid = getPid(process);
+        List<Long> tree = new ArrayList<>();
+        if (pid > 0) {
+            tree.add(pid);
+            tree.addAll(getDescendants(pid));
+        }
+        signal("TERM", tree);
+        process.destroy();
+        try {
+            if (process.waitFor(TERMINATION_GRACE_MILLIS, TimeUnit.MILLISECONDS) && tree.stream().noneMatch(ProcessRunner::isAlive)) {
+                return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        ArrayList<Long> alive = new ArrayList<>();
+        for (Long id : tree) {
+            if (isAlive(id)) {
+                alive.add(id);
+            }
+        }
+        signal("KILL", alive);
+        process.destroyForcibly();
+    }
+
+    /**
+     * Gets process id. Process.pid() is not available in Java 8,
+     * the id is read from the platform process implementation.
+     */
+    private static long getPid(Process process) {
+        try {
+            Method pid = Process.class.getMethod("pid");
+            return (Long) pid.invoke(process);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // Java 8
+        }
+        try {
+            Field pid = process.getClass().getDeclaredField("pid");
+            pid.setAccessible(true);
+            return pid.getLong(process);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Reads the process tree from /proc
+     */
+    private static List<Long> getDescendants(long pid) {
+        Map<Long, List<Long>> children = new HashMap<>();
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(PROC, "[0-9]*")) {
+            for (Path entry : entries) {
+                try {
+                    String stat = new String(Files.readAllBytes(entry.resolve("stat")), StandardCharsets.UTF_8);
+                    // pid (comm) state ppid ..., comm may contain spaces and parentheses
+                    String[] fields = stat.substring(stat.lastIndexOf(')') + 2).split(" ");
+                    long parent = Long.parseLong(fields[1]);
+                    children.computeIfAbsent(parent, x -> new ArrayList<>()).add(Long.parseLong(entry.getFileName().toString()));
+                } catch (IOException | RuntimeException e) {
+                    // the process exited while reading
+                }
+            }
+        } catch (IOException e) {
+            return new ArrayList<>();
+        }
+        ArrayList<Long> descendants = new ArrayList<>();
+        ArrayDeque<Long> queue = new ArrayDeque<>();
+        queue.add(pid);
+        while (!queue.isEmpty()) {
+            for (Long child : children.getOrDefault(queue.poll(), new ArrayList<>())) {
+                descendants.add(child);
+                queue.add(child);
+            }
+        }
+        return descendants;
+    }
+
+    private static boolean isAlive(long pid) {
+        return Files.exists(PROC.resolve(String.valueOf(pid)));
+    }
+
+    private static void signal(String signal, List<Long> pids) {
+        if (pids.isEmpty()) {
+            return;
+        }
+        ArrayList<String> command = new ArrayList<>();
+        command.add("kill");
+        command.add("-" + signal);
+        for (Long pid : pids) {
+            command.add(String.valueOf(pid));
+        }
+        try {
+            new ProcessBuilder(command).redirectErrorStream(true).start().waitFor(TERMINATION_GRACE_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (IOException e) {
+            // kill is not available, Process.destroy terminates the direct child
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,623 @@
+/*
+ * Copyright 2025 Canonical Ltd.
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ * <p>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.canonical.rockcraft.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Splits the top layer of a packed rock into several layers.
+ * Rockcraft packs the content of all parts into one layer, so a change of the application
+ * also changes the dependencies. The splitter moves the listed files into their own layers,
+ * ordered from the least to the most frequently changing, and everything else into the lowest one.
+ * Entries are sorted and their timestamps are normalized, so an unchanged layer keeps its digest
+ * between builds and is not pulled again.
+ */
+public class RockLayerSplitter {
+    /**
+     * Modification time of all entries, one second after the epoch as other reproducible image builders use
+     */
+    public static final long MTIME = 1;
+
+    private static final int BLOCK = OciArchive.BLOCK;
+    private static final String OCI_GZIP_LAYER = "application/vnd.oci.image.layer.v1.tar+gzip";
+    private static final String DOCKER_GZIP_LAYER = "application/vnd.docker.image.rootfs.diff.tar.gzip";
+    private static final List<String> PAX_TIMES = Arrays.asList("mtime", "atime", "ctime");
+
+    /**
+     * Tar entry with its extended headers
+     */
+    private static class TarEntry {
+        private final List<byte[]> extensions = new ArrayList<>();
+        private byte[] header;
+        private String name;
+        private String linkName;
+        private char type;
+        private long dataOffset;
+        private long dataSize;
+    }
+
+    /**
+     * Layer produced by the split
+     */
+    private static class Layer {
+        private final String name;
+        private final List<TarEntry> entries = new ArrayList<>();
+        private Path file;
+        private String digest;
+        private String diffId;
+        private long size;
+
+        private Layer(String name) {
+            this.name = name;
+        }
+    }
+
+    private final List<String> layerNames;
+    private final Map<String, Integer> pathLayers = new HashMap<>();
+
+    /**
+     * Constructs RockLayerSplitter
+     * @param layers - paths in the rock of each layer, from the least to the most frequently changing
+     */
+    public RockLayerSplitter(Map<String, List<String>> layers) {
+        this.layerNames = new ArrayList<>(layers.keySet());
+        int id = 1;
+        for (List<String> paths : layers.values()) {
+            for (String path : paths) {
+                pathLayers.put(OciArchive.normalize(path.startsWith("/") ? path.substring(1) : path), id);
+            }
+            ++id;
+        }
+    }
+
+    /**
+     * Splits the top layer of each image in the rock and replaces the rock
+     * @param rock - rock archive
+     * @return true if the rock was changed
+     * @throws IOException - failed to split the rock
+     */
+    @SuppressWarnings("unchecked")
+    public boolean split(Path rock) throws IOException {
+        OciArchive archive = OciArchive.open(rock);
+        Map<String, Object> index = OciArchive.parseJson(readEntry(archive, "index.json"));
+        List<Map<String, Object>> manifests = (List<Map<String, Object>>) index.get("manifests");
+        if (manifests == null) {
+            return false;
+        }
+        Map<String, Path> newBlobs = new LinkedHashMap<>();
+        boolean changed = false;
+        try {
+            for (Map<String, Object> descriptor : manifests) {
+                changed |= splitManifest(archive, descriptor, newBlobs);
+            }
+            if (!changed) {
+                return false;
+            }
+            byte[] indexContent = toJson(index).getBytes(StandardCharsets.UTF_8);
+            Path temp = Files.createTempFile(rock.getParent(), rock.getFileName().toString(), ".tmp");
+            try {
+                writeArchive(archive, indexContent, manifests, newBlobs, temp);
+                Files.move(temp, rock, StandardCopyOption.REPLACE_EXISTING);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+            return true;
+        } finally {
+            for (Path blob : newBlobs.values()) {
+                Files.deleteIfExists(blob);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private boolean splitManifest(OciArchive archive, Map<String, Object> descriptor, Map<String, Path> newBlobs) throws IOException {
+        Map<String, Object> manifest = OciArchive.parseJson(readBlob(archive, newBlobs, String.valueOf(descriptor.get("digest"))));
+        List<Map<String, Object>> layers = (List<Map<String, Object>>) manifest.get("layers");
+        if (layers == null || layers.isEmpty()) {
+            return false;
+        }
+        Map<String, Object> top = layers.get(layers.size() - 1);
+        String mediaType = String.valueOf(top.get("mediaType"));
+        boolean gzip = mediaType.endsWith("gzip");
+        if (!gzip && !mediaType.endsWith("tar")) {
+            // e.g. zstd layers, left as they are
+            return false;
+        }
+        Path tar = Files.createTempFile("rock-layer", ".tar");
+        try {
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(tar))) {
+                if (gzip) {
+                    try (InputStream in = new GZIPInputStream(new BufferedInputStream(openBlob(archive, newBlobs, String.valueOf(top.get("digest")))))) {
+                        copy(in, out, Long.MAX_VALUE);
+                    }
+                } else {
+                    archive.writeBlob(String.valueOf(top.get("digest")), out);
+                }
+            }
+            List<Layer> split = assignLayers(readEntries(tar));
+            if (split.size() < 2) {
+                return false;
+            }
+            String layerMediaType = String.valueOf(manifest.get("mediaType")).contains("docker") ? DOCKER_GZIP_LAYER : OCI_GZIP_LAYER;
+            ArrayList<Map<String, Object>> replacement = new ArrayList<>();
+            for (Layer layer : split) {
+                writeLayer(tar, layer);
+                newBlobs.put(layer.digest, layer.file);
+                Map<String, Object> layerDescriptor = new LinkedHashMap<>();
+                layerDescriptor.put("mediaType", layerMediaType);
+                layerDescriptor.put("digest", layer.digest);
+                layerDescriptor.put("size", layer.size);
+                replacement.add(layerDescriptor);
+            }
+            layers.remove(layers.size() - 1);
+            layers.addAll(replacement);
+
+            Map<String, Object> configDescriptor = (Map<String, Object>) manifest.get("config");
+            Map<String, Object> config = OciArchive.parseJson(readBlob(archive, newBlobs, String.valueOf(configDescriptor.get("digest"))));
+            updateConfig(config, split);
+            putBlob(newBlobs, configDescriptor, toJson(config).getBytes(StandardCharsets.UTF_8));
+            putBlob(newBlobs, descriptor, toJson(manifest).getBytes(StandardCharsets.UTF_8));
+            return true;
+        } finally {
+            Files.deleteIfExists(tar);
+        }
+    }
+
+    /**
+     * Replaces the diff id and the history entry of the split layer
+     */
+    @SuppressWarnings("unchecked")
+    private static void updateConfig(Map<String, Object> config, List<Layer> split) {
+        Map<String, Object> rootfs = (Map<String, Object>) config.get("rootfs");
+        List<Object> diffIds = (List<Object>) rootfs.get("diff_ids");
+        int layerCount = diffIds.size();
+        diffIds.remove(diffIds.size() - 1);
+        for (Layer layer : split) {
+            diffIds.add(layer.diffId);
+        }
+        List<Map<String, Object>> history = (List<Map<String, Object>>) config.get("history");
+        if (history == null) {
+            return;
+        }
+        int last = -1;
+        int nonEmpty = 0;
+        for (int i = 0; i < history.size(); i++) {
+            if (!Boolean.TRUE.equals(history.get(i).get("empty_layer"))) {
+                last = i;
+                nonEmpty++;
+            }
+        }
+        if (last < 0 || nonEmpty != layerCount) {
+            // history does not describe the layers, keep it as it is
+            return;
+        }
+        Map<String, Object> original = history.remove(last);
+        for (int i = split.size() - 1; i >= 0; i--) {
+            Map<String, Object> entry = new LinkedHashMap<>(original);
+            entry.put("comment", String.format("%s (%s)", original.getOrDefault("comment", "rockcraft"), split.get(i).name));
+            history.add(last, entry);
+        }
+    }
+
+    private List<Layer> assignLayers(List<TarEntry> entries) {
+        ArrayList<Layer> layers = new ArrayList<>();
+        layers.add(new Layer("base"));
+        for (String name : layerNames) {
+            layers.add(new Layer(name));
+        }
+        Map<String, Integer> assigned = new HashMap<>();
+        List<TarEntry> globals = new ArrayList<>();
+        for (TarEntry entry : entries) {
+            if (entry.type == 'g') {
+                globals.add(entry);
+                continue;
+            }
+            String path = OciArchive.normalize(entry.name);
+            Integer id = 0;
+            if (entry.type == '1') {
+                // hard links stay with their target
+                id = assigned.getOrDefault(OciArchive.normalize(entry.linkName), 0);
+            } else if (entry.type != '5') {
+                id = pathLayers.getOrDefault(path, 0);
+            }
+            assigned.put(path, id);
+            layers.get(id).entries.add(entry);
+        }
+        layers.removeIf(layer -> layer.entries.isEmpty());
+        for (Layer layer : layers) {
+            layer.entries.sort(Comparator.comparing((TarEntry x) -> x.type == '1').thenComparing(x -> x.name));
+            // global headers apply to the entries that follow them in every layer
+            layer.entries.addAll(0, globals);
+        }
+        return layers;
+    }
+
+    private static List<TarEntry> readEntries(Path tar) throws IOException {
+        ArrayList<TarEntry> entries = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(tar, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(BLOCK);
+            long position = 0;
+            TarEntry entry = new TarEntry();
+            while (true) {
+                buffer.clear();
+                if (OciArchive.readFully(channel, buffer, position) < BLOCK) {
+                    break;
+                }
+                byte[] block = buffer.array().clone();
+                if (OciArchive.isZero(block)) {
+                    break;
+                }
+                long size = OciArchive.parseSize(block);
+                char type = (char) block[156];
+                long data = position + BLOCK;
+                long padded = (size + BLOCK - 1) / BLOCK * BLOCK;
+                position = data + padded;
+                if (type == 'x' || type == 'L' || type == 'K') {
+                    ByteBuffer content = ByteBuffer.allocate((int) size);
+                    OciArchive.readFully(channel, content, data);
+                    byte[] records = content.array();
+                    if (type == 'x') {
+                        String path = paxValue(records, "path");
+                        if (path != null) {
+                            entry.name = path;
+                        }
+                        String linkPath = paxValue(records, "linkpath");
+                        if (linkPath != null) {
+                            entry.linkName = linkPath;
+                        }
+                        records = removePaxRecords(records, PAX_TIMES);
+                    } else if (type == 'L') {
+                        entry.name = new String(records, StandardCharsets.UTF_8).replace("\0", "");
+                    } else {
+                        entry.linkName = new String(records, StandardCharsets.UTF_8).replace("\0", "");
+                    }
+                    entry.extensions.add(toBlocks(normalizeHeader(block, records.length), records));
+                    continue;
+                }
+                entry.header = normalizeHeader(block, size);
+                entry.type = type;
+                if (entry.name == null) {
+                    entry.name = OciArchive.parseName(block);
+                }
+                if (entry.linkName == null) {
+                    entry.linkName = OciArchive.parseString(block, 157, 100);
+                }
+                entry.dataOffset = data;
+                entry.dataSize = size;
+                if (type == 'g') {
+                    // keep the records of a global header with the header
+                    ByteBuffer content = ByteBuffer.allocate((int) size);
+                    OciArchive.readFully(channel, content, data);
+                    entry.header = toBlocks(entry.header, content.array());
+                    entry.dataSize = 0;
+                }
+                entries.add(entry);
+                entry = new TarEntry();
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Sets the modification time, clears GNU access and change times and updates the size and the checksum
+     */
+    private static byte[] normalizeHeader(byte[] block, long size) {
+        byte[] header = block.clone();
+        if ((header[124] & 0x80) == 0) {
+            writeOctal(header, 124, 12, size);
+        }
+        writeOctal(header, 136, 12, MTIME);
+        if ("ustar ".equals(OciArchive.parseString(header, 257, 6))) {
+            Arrays.fill(header, 345, 369, (byte) 0);
+        }
+        Arrays.fill(header, 148, 156, (byte) ' ');
+        int checksum = 0;
+        for (byte b : header) {
+            checksum += b & 0xff;
+        }
+        byte[] value = String.format("%06o", checksum).getBytes(StandardCharsets.US_ASCII);
+        System.arraycopy(value, 0, header, 148, 6);
+        header[154] = 0;
+        header[155] = ' ';
+        return header;
+    }
+
+    private static void writeOctal(byte[] header, int offset, int length, long value) {
+        String octal = String.format("%0" + (length - 1) + "o", value);
+        byte[] bytes = octal.getBytes(StandardCharsets.US_ASCII);
+        System.arraycopy(bytes, 0, header, offset, length - 1);
+        header[offset + length - 1] = 0;
+    }
+
+    private static byte[] toBlocks(byte[] header, byte[] data) {
+        int padded = (data.length + BLOCK - 1) / BLOCK * BLOCK;
+        byte[] result = new byte[header.length + padded];
+        System.arraycopy(header, 0, result, 0, header.length);
+        System.arraycopy(data, 0, result, header.length, data.length);
+        return result;
+    }
+
+    /**
+     * Gets the value of a PAX record, records are <i>length key=value\n</i> with the length in bytes
+     */
+    private static String paxValue(byte[] records, String key) {
+        for (byte[] record : paxRecords(records)) {
+            String text = new String(record, StandardCharsets.UTF_8);
+            int space = text.indexOf(' ');
+            if (text.startsWith(key + "=", space + 1)) {
+                return text.substring(space + 2 + key.length(), text.length() - 1);
+            }
+        }
+        return null;
+    }
+
+    private static byte[] removePaxRecords(byte[] records, List<String> keys) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] record : paxRecords(records)) {
+            String text = new String(record, StandardCharsets.UTF_8);
+            String key = text.substring(text.indexOf(' ') + 1, text.indexOf('='));
+            if (!keys.contains(key)) {
+                out.write(record, 0, record.length);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private static List<byte[]> paxRecords(byte[] records) {
+        ArrayList<byte[]> result = new ArrayList<>();
+        int position = 0;
+        while (position < records.length) {
+            int space = position;
+            while (space < records.length && records[space] != ' ') {
+                space++;
+            }
+            if (space >= records.length) {
+                break;
+            }
+            int length = Integer.parseInt(new String(records, position, space - position, StandardCharsets.US_ASCII));
+            if (length <= 0 || position + length > records.length) {
+                break;
+            }
+            result.add(Arrays.copyOfRange(records, position, position + length));
+            position += length;
+        }
+        return result;
+    }
+
+    private static void writeLayer(Path tar, Layer layer) throws IOException {
+        layer.file = Files.createTempFile("rock-layer", ".tar.gz");
+        MessageDigest diffDigest = sha256();
+        MessageDigest blobDigest = sha256();
+        try (FileChannel channel = FileChannel.open(tar, StandardOpenOption.READ);
+             OutputStream file = new DigestOutputStream(new BufferedOutputStream(Files.newOutputStream(layer.file)), blobDigest);
+             GZIPOutputStream gzip = new GZIPOutputStream(file, 64 * 1024);
+             OutputStream out = new DigestOutputStream(gzip, diffDigest)) {
+            for (TarEntry entry : layer.entries) {
+                for (byte[] extension : entry.extensions) {
+                    out.write(extension);
+                }
+                out.write(entry.header);
+                if (entry.dataSize > 0) {
+                    channel.position(entry.dataOffset);
+                    long padded = (entry.dataSize + BLOCK - 1) / BLOCK * BLOCK;
+                    copy(Channels.newInputStream(channel), out, padded);
+                }
+            }
+            out.write(new byte[2 * BLOCK]);
+        }
+        layer.size = Files.size(layer.file);
+        layer.digest = toDigest(blobDigest);
+        layer.diffId = toDigest(diffDigest);
+    }
+
+    private static void writeArchive(OciArchive archive, byte[] index, List<Map<String, Object>> manifests,
+                                     Map<String, Path> newBlobs, Path output) throws IOException {
+        Set<String> referenced = new HashSet<>();
+        for (Map<String, Object> descriptor : manifests) {
+            String digest = String.valueOf(descriptor.get("digest"));
+            referenced.add(OciArchive.getBlobEntryName(digest));
+            referenced.addAll(getManifestBlobs(OciArchive.parseJson(readBlob(archive, newBlobs, digest))));
+        }
+        Map<String, Path> replaced = new LinkedHashMap<>();
+        for (Map.Entry<String, Path> blob : newBlobs.entrySet()) {
+            replaced.put(OciArchive.getBlobEntryName(blob.getKey()), blob.getValue());
+        }
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(output))) {
+            for (String name : archive.getEntryNames()) {
+                if ("index.json".equals(name)) {
+                    writeTarHeader(out, name, index.length);
+                    out.write(index);
+                    pad(out, index.length);
+                } else if (!name.startsWith("blobs/") || referenced.contains(name) && !replaced.containsKey(name)) {
+                    // blobs of the split layers and the replaced manifests and configs are dropped
+                    long size = archive.getEntrySize(name);
+                    writeTarHeader(out, name, size);
+                    archive.writeEntry(name, out);
+                    pad(out, size);
+                }
+            }
+            for (Map.Entry<String, Path> blob : replaced.entrySet()) {
+                if (!referenced.contains(blob.getKey())) {
+                    continue;
+                }
+                long size = Files.size(blob.getValue());
+                writeTarHeader(out, blob.getKey(), size);
+                Files.copy(blob.getValue(), out);
+                pad(out, size);
+            }
+            out.write(new byte[2 * BLOCK]);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<String> getManifestBlobs(Map<String, Object> manifest) {
+        ArrayList<String> blobs = new ArrayList<>();
+        Map<String, Object> config = (Map<String, Object>) manifest.get("config");
+        if (config != null) {
+            blobs.add(OciArchive.getBlobEntryName(String.valueOf(config.get("digest"))));
+        }
+        List<Map<String, Object>> layers = (List<Map<String, Object>>) manifest.get("layers");
+        if (layers != null) {
+            for (Map<String, Object> layer : layers) {
+                blobs.add(OciArchive.getBlobEntryName(String.valueOf(layer.get("digest"))));
+            }
+        }
+        return blobs;
+    }
+
+    private static void writeTarHeader(OutputStream out, String name, long size) throws IOException {
+        byte[] header = new byte[BLOCK];
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        if (nameBytes.length > 100) {
+            throw new IOException("Entry name is too long: " + name);
+        }
+        System.arraycopy(nameBytes, 0, header, 0, nameBytes.length);
+        writeOctal(header, 100, 8, 0644);
+        writeOctal(header, 108, 8, 0);
+        writeOctal(header, 116, 8, 0);
+        header[156] = '0';
+        System.arraycopy("ustar\u000000".getBytes(StandardCharsets.US_ASCII), 0, header, 257, 8);
+        out.write(normalizeHeader(header, size));
+    }
+
+    private static void pad(OutputStream out, long size) throws IOException {
+        int padding = (int) ((BLOCK - size % BLOCK) % BLOCK);
+        out.write(new byte[padding]);
+    }
+
+    private static void putBlob(Map<String, Path> newBlobs, Map<String, Object> descriptor, byte[] content) throws IOException {
+        MessageDigest digest = sha256();
+        digest.update(content);
+        String name = toDigest(digest);
+        Path file = Files.createTempFile("rock-blob", ".json");
+        Files.write(file, content);
+        newBlobs.put(name, file);
+        descriptor.put("digest", name);
+        descriptor.put("size", content.length);
+    }
+
+    private static byte[] readBlob(OciArchive archive, Map<String, Path> newBlobs, String digest) throws IOException {
+        Path file = newBlobs.get(digest);
+        return file != null ? Files.readAllBytes(file) : archive.readBlob(digest);
+    }
+
+    private static InputStream openBlob(OciArchive archive, Map<String, Path> newBlobs, String digest) throws IOException {
+        Path file = newBlobs.get(digest);
+        return file != null ? Files.newInputStream(file) : archive.openBlob(digest);
+    }
+
+    private static byte[] readEntry(OciArchive archive, String name) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        archive.writeEntry(name, out);
+        return out.toByteArray();
+    }
+
+    private static void copy(InputStream in, OutputStream out, long limit) throws IOException {
+        byte[] buffer = new byte[64 * 1024];
+        long remaining = limit;
+        while (remaining > 0) {
+            int read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+            if (read < 0) {
+                break;
+            }
+            out.write(buffer, 0, read);
+            remaining -= read;
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toDigest(MessageDigest digest) {
+        StringBuilder sb = new StringBuilder("sha256:");
+        for (byte b : digest.digest()) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Serializes the documents of the image layout parsed by {@link OciArchive}
+     */
+    @SuppressWarnings("unchecked")
+    static String toJson(Object value) {
+        StringBuilder json = new StringBuilder();
+        if (value == null) {
+            json.append("null");
+        } else if (value instanceof Map) {
+            json.append('{');
+            boolean first = true;
+            for (Map.Entry<String, Object> entry : ((Map<String, Object>) value).entrySet()) {
+                json.append(first ? "" : ",").append(toJson(entry.getKey())).append(':').append(toJson(entry.getValue()));
+                first = false;
+            }
+            json.append('}');
+        } else if (value instanceof List) {
+            json.append('[');
+            boolean first = true;
+            for (Object item : (List<Object>) value) {
+                json.append(first ? "" : ",").append(toJson(item));
+                first = false;
+            }
+            json.append(']');
+        } else if (value instanceof Number || value instanceof Boolean) {
+            json.append(value);
+        } else {
+            json.append('"');
+            for (char c : String.valueOf(value).toCharArray()) {
+                if (c == '"' || c == '\\') {
+                    json.append('\\').append(c);
+                } else if (c < 0x20) {
+                    json.append(String.format("\\u%04x", (int) c));
+                } else {
+                    json.append(c);
+                }
+            }
+            json.append('"');
+        }
+        return json.toString();
+    }
+}
@@ -0,0 +1,221 @@
+/*
+ * Copyright 2025 Canonical Ltd.
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ * <p>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.canonical.rockcraft.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Caches the build package of javac executables.
+ * The cache key is the real path of javac and its modification time, so an upgraded JDK is probed again.
+ * The version is read from the JDK release file when available, otherwise javac is run.
+ * Successful results are stored in a properties file shared by the build daemons.
+ */
+public class ToolchainCache {
+    /**
+     * System property that overrides the location of the cache file
+     */
+    public static final String CACHE_FILE_PROPERTY = "rockcraft.toolchainCache";
+
+    private static final String RELEASE_VERSION = "JAVA_VERSION=";
+
+    private final Path file;
+    private final ConcurrentHashMap<String, ToolchainHelper.ToolchainPackage> packages = new ConcurrentHashMap<>();
+    private volatile boolean loaded;
+    private int probes;
+
+    /**
+     * Constructs ToolchainCache
+     * @param file - cache file or null to keep the cache in memory
+     */
+    public ToolchainCache(Path file) {
+        this.file = file;
+    }
+
+    /**
+     * Default cache file, ~/.cache/rockcraft/toolchains.properties unless overridden with {@link #CACHE_FILE_PROPERTY}
+     * @return cache file or null if the user home is not known
+     */
+    public static Path getDefaultFile() {
+        String override = System.getProperty(CACHE_FILE_PROPERTY);
+        if (override != null && !override.isEmpty()) {
+            return Paths.get(override);
+        }
+        String home = System.getProperty("user.home");
+        if (home == null || home.isEmpty()) {
+            return null;
+        }
+        return Paths.get(home, ".cache", "rockcraft", "toolchains.properties");
+    }
+
+    /**
+     * Number of javac processes started by this cache
+     * @return process count
+     */
+    public synchronized int getProbes() {
+        return probes;
+    }
+
+    /**
+     * Gets the build package for the javac executable
+     * @param tool - path to javac
+     * @return build package
+     * @throws InterruptedException - interrupted while waiting for javac
+     * @throws IOException - failed to run javac
+     */
+    public ToolchainHelper.ToolchainPackage getBuildPackage(String tool) throws InterruptedException, IOException {
+        Path javac = Paths.get(tool);
+        if (!Files.isRegularFile(javac)) {
+            // not a file path, let the process builder report the error
+            return probe(tool);
+        }
+        Path realJavac = javac.toRealPath();
+        String key = realJavac + ":" + Files.getLastModifiedTime(realJavac).toMillis() + ":" + getReleaseModified(realJavac);
+        load();
+        ToolchainHelper.ToolchainPackage cached = packages.get(key);
+        if (cached != null) {
+            return cached;
+        }
+        ToolchainHelper.ToolchainPackage result = readRelease(realJavac);
+        if (result == null) {
+            result = probe(tool);
+        }
+        if (result.getReason() == ToolchainHelper.Reason.REASON_OK) {
+            packages.put(key, result);
+            store(key, result);
+        }
+        return result;
+    }
+
+    private ToolchainHelper.ToolchainPackage probe(String tool) throws InterruptedException, IOException {
+        synchronized (this) {
+            probes++;
+        }
+        return ToolchainHelper.probeJavac(tool);
+    }
+
+    /**
+     * Gets the modification time of the JDK release file, 0 if the file does not exist
+     */
+    private static long getReleaseModified(Path javac) throws IOException {
+        Path release = getReleaseFile(javac);
+        if (release == null || !Files.isRegularFile(release)) {
+            return 0;
+        }
+        return Files.getLastModifiedTime(release).toMillis();
+    }
+
+    private static Path getReleaseFile(Path javac) {
+        Path bin = javac.getParent();
+        if (bin == null || bin.getParent() == null) {
+            return null;
+        }
+        return bin.getParent().resolve("release");
+    }
+
+    /**
+     * Reads JAVA_VERSION from the release file of the JDK, bin/javac is expected in the JDK home
+     */
+    private static ToolchainHelper.ToolchainPackage readRelease(Path javac) {
+        Path release = getReleaseFile(javac);
+        if (release == null || !Files.isRegularFile(release)) {
+            return null;
+        }
+        try {
+            List<String> lines = Files.readAllLines(release, StandardCharsets.UTF_8);
+            for (String line : lines) {
+                if (!line.startsWith(RELEASE_VERSION)) {
+                    continue;
+                }
+                String version = line.substring(RELEASE_VERSION.length()).replace("\"", "").trim();
+                ToolchainHelper.ToolchainPackage result = ToolchainHelper.fromVersion(version, line);
+                // fall back to javac when the release file does not give a supported version
+                return result.getReason() == ToolchainHelper.Reason.REASON_OK ? result : null;
+            }
+        } catch (IOException e) {
+            // unreadable release file, run javac
+        }
+        return null;
+    }
+
+    private void load() {
+        if (loaded) {
+            return;
+        }
+        synchronized (this) {
+            if (loaded) {
+                return;
+            }
+            if (file != null && Files.isRegularFile(file)) {
+                Properties properties = new Properties();
+                try (InputStream is = Files.newInputStream(file)) {
+                    properties.load(is);
+                    for (String key : properties.stringPropertyNames()) {
+                        String name = properties.getProperty(key);
+                        packages.put(key, new ToolchainHelper.ToolchainPackage(name, ToolchainHelper.Reason.REASON_OK, name));
+                    }
+                } catch (IOException | IllegalArgumentException e) {
+                    // corrupted cache, the entries are probed again
+                }
+            }
+            loaded = true;
+        }
+    }
+
+    /**
+     * Merges the entry into the cache file, other daemons may have added entries since it was loaded
+     */
+    private synchronized void store(String key, ToolchainHelper.ToolchainPackage result) {
+        if (file == null) {
+            return;
+        }
+        try {
+            Files.createDirectories(file.getParent());
+            Properties properties = new Properties();
+            if (Files.isRegularFile(file)) {
+                try (InputStream is = Files.newInputStream(file)) {
+                    properties.load(is);
+                } catch (IllegalArgumentException e) {
+                    properties.clear();
+                }
+            }
+            properties.setProperty(key, result.getName());
+            Path temp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+            try {
+                try (OutputStream os = Files.newOutputStream(temp)) {
+                    properties.store(os, "javac build packages");
+                }
+                try {
+                    Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE);
+                } catch (AtomicMoveNotSupportedException e) {
+                    Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+                }
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        } catch (IOException e) {
+            // the cache is an optimization, the result is kept in memory
+        }
+    }
+}
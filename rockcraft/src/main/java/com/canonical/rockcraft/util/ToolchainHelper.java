@@ -6,12 +6,15 @@ import java.io.InputStreamReader;
 import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.HashSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 public final class ToolchainHelper {
 
     public static final String OPENJDK_8 = "openjdk-8-jdk";
     public static final String OPENJDK_8_HEADLESS = "openjdk-8-jdk-headless";
     public static final String DEFAULT_JDK = "openjdk-21-jdk-headless";
+    private static final Pattern PACKAGE_RELEASE = Pattern.compile("openjdk-(\\d+)-");
     private static final HashSet<String> SUPPORTED = new HashSet<>(Arrays.asList("11", "17", "21", "25"));
 
     private ToolchainHelper() {}
@@ -38,7 +41,13 @@ public final class ToolchainHelper {
         public String getRawOutput() { return rawOutput; }
     }
 
+    private static final ToolchainCache CACHE = new ToolchainCache(ToolchainCache.getDefaultFile());
+
     public static ToolchainPackage getBuildPackage(String tool) throws InterruptedException, IOException {
+        return CACHE.getBuildPackage(tool);
+    }
+
+    static ToolchainPackage probeJavac(String tool) throws InterruptedException, IOException {
         Process p = new ProcessBuilder(tool, "-version")
                 .redirectErrorStream(true)
                 .start();
@@ -60,19 +69,27 @@ public final class ToolchainHelper {
         if (text.length < 2 || !"javac".equals(text[0])) {
             return new ToolchainPackage(DEFAULT_JDK, Reason.JAVAC_VERSION_STRING, output.toString());
         }
-        String version = text[1];
-        String[] versions = version.split("\\.");
-        if (versions.length < 2) {
-            return new ToolchainPackage(DEFAULT_JDK, Reason.JAVAC_VERSION_STRING, output.toString());
-        }
+        return fromVersion(text[1], output.toString());
+    }
+
+    public static int getRelease(String buildPackage) {
+        Matcher matcher = PACKAGE_RELEASE.matcher(buildPackage == null ? "" : buildPackage);
+        return matcher.find() ? Integer.parseInt(matcher.group(1)) : 0;
+    }
+
+    static ToolchainPackage fromVersion(String version, String output) {
+        // GA releases report the bare major version, e.g. 21 or 21-ea
+        String[] versions = version.trim().split("[.\\-+]");
         String major = versions[0];
-        String minor = versions[1];
-        if ("1".equals(major) && "8".equals(minor)) { // 1.8, special case - this use-case requires OpenJDK 8
-            return new ToolchainPackage(OPENJDK_8_HEADLESS, Reason.REASON_OK, output.toString());
+        if (!major.matches("\\d+")) {
+            return new ToolchainPackage(DEFAULT_JDK, Reason.JAVAC_VERSION_STRING, output);
+        }
+        if ("1".equals(major) && versions.length > 1 && "8".equals(versions[1])) { // 1.8, special case - this use-case requires OpenJDK 8
+            return new ToolchainPackage(OPENJDK_8_HEADLESS, Reason.REASON_OK, output);
         }
         if (SUPPORTED.contains(major)) {
-            return new ToolchainPackage("openjdk-" + major + "-jdk-headless", Reason.REASON_OK, output.toString());
+            return new ToolchainPackage("openjdk-" + major + "-jdk-headless", Reason.REASON_OK, output);
         }
-        return new ToolchainPackage(DEFAULT_JDK, Reason.JAVAC_UNSUPPORTED_VERSION_STRING, output.toString());
+        return new ToolchainPackage(DEFAULT_JDK, Reason.JAVAC_UNSUPPORTED_VERSION_STRING, output);
     }
 }
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2025 Canonical Ltd.
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ * <p>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.canonical.rockcraft.builder;
+
+import com.canonical.rockcraft.util.ModuleDeps;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.JarOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class JLinkRuntimePartTest {
+
+    @TempDir
+    private Path tempDir;
+
+    private List<File> createJars() throws IOException {
+        File jar = tempDir.resolve("app.jar").toFile();
+        new JarOutputStream(Files.newOutputStream(jar.toPath())).close();
+        return Collections.singletonList(jar);
+    }
+
+    private ModuleDeps createModuleDeps(String output, int release) throws IOException {
+        Path jdeps = tempDir.resolve("jdeps");
+        Files.write(jdeps, ("#!/bin/sh\necho " + output + "\n").getBytes(StandardCharsets.UTF_8));
+        jdeps.toFile().setExecutable(true);
+        return new ModuleDeps(jdeps.toString(), release);
+    }
+
+    @Test
+    void explicitModules() throws IOException {
+        RockcraftOptions options = new RockcraftOptions();
+        options.setBuildPackage("openjdk-21-jdk-headless");
+        Map<String, Object> code = new JLinkRuntimePart(options, createModuleDeps("java.sql,java.base", 21)).getRuntimePart(createJars());
+        assertEquals("nil", code.get("plugin"));
+        String commands = code.get("override-build").toString();
+        assertTrue(commands.contains("JAVA_HOME=/usr/lib/jvm/java-21-openjdk-${CRAFT_ARCH_BUILD_ON}\n"));
+        assertTrue(commands.contains("RUNTIME=${CRAFT_PART_INSTALL}/usr/lib/jvm/java-21-openjdk-${CRAFT_ARCH_BUILD_FOR}\n"));
+        assertTrue(commands.contains("${JAVA_HOME}/bin/jlink --add-modules java.base,java.sql " +
+                "--strip-debug --no-header-files --no-man-pages --compress=zip-6 --output ${RUNTIME}\n"));
+        assertTrue(commands.contains("full runtime: ${FULL_SIZE} bytes"));
+
+        options.setBuildPackage("openjdk-17-jdk-headless");
+        code = new JLinkRuntimePart(options, createModuleDeps("java.base", 17)).getRuntimePart(createJars());
+        assertTrue(code.get("override-build").toString().contains("--add-modules java.base --strip-debug --no-header-files --no-man-pages --compress=2 "));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    void pluginWithoutJdeps() throws IOException {
+        RockcraftOptions options = new RockcraftOptions();
+        options.setBuildPackage("openjdk-21-jdk-headless");
+        ModuleDeps moduleDeps = new ModuleDeps(tempDir.resolve("missing").toString(), 21);
+        Map<String, Object> code = new JLinkRuntimePart(options, moduleDeps).getRuntimePart(createJars());
+        assertEquals("jlink", code.get("plugin"));
+        assertEquals(Collections.singletonList("jars/app.jar"), new ArrayList<>((List<String>) code.get("jlink-jars")));
+
+        // jdeps output that is not a module list
+        code = new JLinkRuntimePart(options, createModuleDeps("'Error: invalid'", 21)).getRuntimePart(createJars());
+        assertEquals("jlink", code.get("plugin"));
+
+        // jdeps of another release than the build package
+        List<String> log = new ArrayList<>();
+        JLinkRuntimePart part = new JLinkRuntimePart(options, createModuleDeps("java.base", 17));
+        part.setLog(log::add);
+        code = part.getRuntimePart(createJars());
+        assertEquals("jlink", code.get("plugin"));
+        assertEquals(Collections.singletonList("Modules of the Java runtime are found during the build: " +
+                "jdeps of Java 17 does not match the build package Java 21"), log);
+        options.setBuildPackage("openjdk-11-jdk-headless");
+        code = new JLinkRuntimePart(options, createModuleDeps("java.base", 17)).getRuntimePart(createJars());
+        assertEquals("jlink", code.get("plugin"));
+    }
+}
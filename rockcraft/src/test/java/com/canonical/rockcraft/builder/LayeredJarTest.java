@@ -0,0 +1,120 @@
+/*
+ * Copyright 2025 Canonical Ltd.
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ * <p>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.canonical.rockcraft.builder;
+
+import com.canonical.rockcraft.util.LayeredJar;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.Attributes;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class LayeredJarTest {
+
+    @TempDir
+    private Path tempDir;
+
+    private File createJar(String name, boolean boot, String layersIndex) throws IOException {
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        manifest.getMainAttributes().put(Attributes.Name.MAIN_CLASS, "org.springframework.boot.loader.launch.JarLauncher");
+        if (boot) {
+            manifest.getMainAttributes().putValue("Start-Class", "com.example.App");
+        }
+        File jar = tempDir.resolve(name).toFile();
+        try (JarOutputStream out = new JarOutputStream(Files.newOutputStream(jar.toPath()), manifest)) {
+            write(out, "BOOT-INF/classes/");
+            write(out, "BOOT-INF/classes/com/example/App.class", "app");
+            write(out, "BOOT-INF/classes/application.properties", "server.port=8080");
+            write(out, "BOOT-INF/lib/dependency-1.0.jar", "dependency");
+            write(out, "BOOT-INF/lib/snapshot-1.0-SNAPSHOT.jar", "snapshot");
+            write(out, "org/springframework/boot/loader/launch/JarLauncher.class", "loader");
+            if (layersIndex != null) {
+                write(out, LayeredJar.LAYERS_INDEX, layersIndex);
+            }
+        }
+        return jar;
+    }
+
+    private static void write(JarOutputStream out, String name, String... content) throws IOException {
+        out.putNextEntry(new ZipEntry(name));
+        for (String text : content) {
+            out.write(text.getBytes(StandardCharsets.UTF_8));
+        }
+        out.closeEntry();
+    }
+
+    @Test
+    public void testNotBootJar() throws IOException {
+        assertNull(LayeredJar.read(createJar("plain.jar", false, null)));
+    }
+
+    @Test
+    public void testDefaultLayers() throws IOException {
+        LayeredJar jar = LayeredJar.read(createJar("app.jar", true, null));
+        assertEquals("app", jar.getName());
+        assertEquals("org.springframework.boot.loader.launch.JarLauncher", jar.getMainClass());
+
+        Path destination = tempDir.resolve("layers");
+        Map<String, List<String>> layers = jar.extract(destination);
+        assertEquals(Arrays.asList("dependencies", "spring-boot-loader", "snapshot-dependencies", "resources", "application"),
+                Arrays.asList(layers.keySet().toArray()));
+        assertEquals(Collections.singletonList("BOOT-INF/lib/dependency-1.0.jar"), layers.get("dependencies"));
+        assertEquals(Collections.singletonList("BOOT-INF/lib/snapshot-1.0-SNAPSHOT.jar"), layers.get("snapshot-dependencies"));
+        assertEquals(Collections.singletonList("BOOT-INF/classes/application.properties"), layers.get("resources"));
+        assertTrue(layers.get("application").contains("BOOT-INF/classes/com/example/App.class"));
+        assertTrue(layers.get("application").contains("META-INF/MANIFEST.MF"));
+        assertEquals("dependency", new String(Files.readAllBytes(
+                destination.resolve("dependencies/BOOT-INF/lib/dependency-1.0.jar")), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testLayersIndex() throws IOException {
+        String index = "- \"dependencies\":\n" +
+                "  - \"BOOT-INF/lib/\"\n" +
+                "- \"spring-boot-loader\":\n" +
+                "  - \"org/\"\n" +
+                "- \"application\":\n" +
+                "  - \"BOOT-INF/classes/\"\n" +
+                "  - \"META-INF/\"\n";
+        LayeredJar jar = LayeredJar.read(createJar("app.jar", true, index));
+        assertEquals(Arrays.asList("dependencies", "spring-boot-loader", "application"), jar.getLayerNames());
+
+        Path destination = tempDir.resolve("layers");
+        // stale content is removed
+        Files.createDirectories(destination.resolve("resources"));
+        Map<String, List<String>> layers = jar.extract(destination);
+        assertEquals(2, layers.get("dependencies").size());
+        assertTrue(layers.get("application").contains("BOOT-INF/classes/application.properties"));
+        // entries not listed in the index belong to the last layer
+        assertTrue(layers.get("application").contains(LayeredJar.LAYERS_INDEX));
+        assertTrue(!Files.exists(destination.resolve("resources")));
+        assertTrue(Files.exists(destination.resolve("spring-boot-loader/org/springframework/boot/loader/launch/JarLauncher.class")));
+    }
+}
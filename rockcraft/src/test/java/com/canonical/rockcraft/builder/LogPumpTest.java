@@ -0,0 +1,80 @@
+/*
+ * Copyright 2025 Canonical Ltd.
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ * <p>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.canonical.rockcraft.builder;
+
+import com.canonical.rockcraft.util.LogPump;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class LogPumpTest {
+
+    private static ByteArrayInputStream stream(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testLongLinesAreNotSplit() throws IOException, InterruptedException {
+        char[] chars = new char[5000];
+        Arrays.fill(chars, 'x');
+        String longLine = new String(chars);
+        List<String> lines = new ArrayList<>();
+        LogPump pump = new LogPump(lines::add);
+        pump.setCharset(StandardCharsets.UTF_8);
+        pump.pump(stream(longLine + "\nnext line ünïcödé\n"));
+        assertEquals(Arrays.asList(longLine, "next line ünïcödé"), lines);
+    }
+
+    @Test
+    public void testFilter() throws IOException, InterruptedException {
+        List<String> lines = new ArrayList<>();
+        LogPump pump = new LogPump(lines::add);
+        pump.setFilter(LogPump.DOWNLOAD_LINES);
+        pump.pump(stream("[INFO] Downloading from central: https://repo\n[INFO] BUILD SUCCESS\n"));
+        assertEquals(Arrays.asList("[INFO] BUILD SUCCESS", "1 of 2 output lines suppressed"), lines);
+        assertEquals(1, pump.getSuppressed());
+    }
+
+    @Test
+    public void testRateLimit() throws IOException, InterruptedException {
+        List<String> lines = new ArrayList<>();
+        LogPump pump = new LogPump(lines::add);
+        pump.setMaxLinesPerSecond(2);
+        pump.pump(stream("1\n2\n3\n4\n"));
+        assertEquals(Arrays.asList("1", "2", "2 of 4 output lines suppressed"), lines);
+    }
+
+    @Test
+    public void testAsyncLogKeepsAllLines() throws IOException, InterruptedException {
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            content.append(i).append('\n');
+        }
+        List<String> lines = Collections.synchronizedList(new ArrayList<>());
+        LogPump pump = new LogPump(lines::add);
+        pump.setQueueCapacity(16);
+        pump.pump(stream(content.toString()));
+        assertEquals(1000, lines.size());
+        assertEquals("999", lines.get(999));
+        assertEquals(0, pump.getSuppressed());
+    }
+}
@@ -0,0 +1,327 @@
+/*
+ * Copyright 2025 Canonical Ltd.
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ * <p>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.canonical.rockcraft.builder;
+
+import com.canonical.rockcraft.util.CopyStrategy;
+import com.canonical.rockcraft.util.ExportManifest;
+import com.canonical.rockcraft.util.MavenArtifactCopy;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class MavenArtifactCopyTest {
+    @TempDir
+    private File tempDir;
+
+    private Path createSource(String name, String content) throws IOException {
+        Path source = tempDir.toPath().resolve("source").resolve(name);
+        Files.createDirectories(source.getParent());
+        Files.write(source, content.getBytes());
+        return source;
+    }
+
+    @Test
+    public void testCopyWritesDigest() throws IOException {
+        Path repository = tempDir.toPath().resolve("repository");
+        Path source = createSource("foo-1.0.jar", "foo");
+        MavenArtifactCopy copy = new MavenArtifactCopy(repository);
+        copy.copyToMavenRepository(source.toFile(), "org.example", "foo", "1.0");
+
+        Path destination = repository.resolve("org/example/foo/1.0/foo-1.0.jar");
+        assertTrue(Files.exists(destination));
+        // sha1 of "foo"
+        assertEquals("0beec7b5ea3f0fdbc95d0dd47f3c5bc275da8a33", new String(Files.readAllBytes(repository.resolve("org/example/foo/1.0/foo-1.0.jar.sha1"))));
+        ExportManifest.Entry entry = copy.getExported().get("org/example/foo/1.0/foo-1.0.jar");
+        assertNotNull(entry);
+        assertEquals("org.example:foo:1.0", entry.getGav());
+        assertEquals(3, entry.getSize());
+    }
+
+    @Test
+    public void testUnchangedFileIsNotCopied() throws IOException {
+        Path repository = tempDir.toPath().resolve("repository");
+        Path source = createSource("foo-1.0.jar", "foo");
+        MavenArtifactCopy copy = new MavenArtifactCopy(repository);
+        copy.copyToMavenRepository(source.toFile(), "org.example", "foo", "1.0");
+        copy.getExported().write(repository);
+
+        // mark the destination to detect a copy
+        Path destination = repository.resolve("org/example/foo/1.0/foo-1.0.jar");
+        Files.write(destination, "bar".getBytes());
+
+        ExportManifest previous = ExportManifest.read(repository);
+        MavenArtifactCopy incremental = new MavenArtifactCopy(repository, previous);
+        incremental.copyToMavenRepository(source.toFile(), "org.example", "foo", "1.0");
+        assertEquals("bar", new String(Files.readAllBytes(destination)));
+        assertNotNull(incremental.getExported().get("org/example/foo/1.0/foo-1.0.jar"));
+    }
+
+    @Test
+    public void testStaleFilesAreRemoved() throws IOException {
+        Path repository = tempDir.toPath().resolve("repository");
+        MavenArtifactCopy copy = new MavenArtifactCopy(repository);
+        copy.copyToMavenRepository(createSource("foo-1.0.jar", "foo").toFile(), "org.example", "foo", "1.0");
+        copy.copyToMavenRepository(createSource("bar-1.0.jar", "bar").toFile(), "org.example", "bar", "1.0");
+        copy.getExported().setFingerprint("first");
+        copy.getExported().write(repository);
+
+        ExportManifest previous = ExportManifest.read(repository);
+        assertEquals("first", previous.getFingerprint());
+        assertTrue(previous.isIntact(repository));
+
+        MavenArtifactCopy incremental = new MavenArtifactCopy(repository, previous);
+        incremental.copyToMavenRepository(createSource("foo-1.0.jar", "foo").toFile(), "org.example", "foo", "1.0");
+        assertEquals(1, incremental.getExported().removeStale(repository, previous));
+
+        assertTrue(Files.exists(repository.resolve("org/example/foo/1.0/foo-1.0.jar")));
+        assertFalse(Files.exists(repository.resolve("org/example/bar")));
+    }
+
+    @Test
+    public void testHardlinkStrategy() throws IOException {
+        Path repository = tempDir.toPath().resolve("repository");
+        Files.createDirectories(repository);
+        Path source = createSource("foo-1.0.jar", "foo");
+        MavenArtifactCopy copy = new MavenArtifactCopy(repository);
+        copy.setCopyStrategy(CopyStrategy.hardlink);
+        copy.copyToMavenRepository(source.toFile(), "org.example", "foo", "1.0");
+        Path destination = repository.resolve("org/example/foo/1.0/foo-1.0.jar");
+        assertTrue(Files.isSameFile(source, destination));
+        assertTrue(Files.exists(repository.resolve("org/example/foo/1.0/foo-1.0.jar.sha1")));
+    }
+
+    @Test
+    public void testSharedStore() throws IOException {
+        Path store = tempDir.toPath().resolve("store");
+        Path first = tempDir.toPath().resolve("first");
+        Path second = tempDir.toPath().resolve("second");
+        Path source = createSource("foo-1.0.jar", "foo");
+        MavenArtifactCopy firstCopy = new MavenArtifactCopy(first);
+        firstCopy.setStore(store);
+        firstCopy.copyToMavenRepository(source.toFile(), "org.example", "foo", "1.0");
+        MavenArtifactCopy secondCopy = new MavenArtifactCopy(second);
+        secondCopy.setStore(store);
+        secondCopy.copyToMavenRepository(source.toFile(), "org.example", "foo", "1.0");
+
+        Path object = store.resolve("0b/0beec7b5ea3f0fdbc95d0dd47f3c5bc275da8a33");
+        assertTrue(Files.isSameFile(object, first.resolve("org/example/foo/1.0/foo-1.0.jar")));
+        assertTrue(Files.isSameFile(object, second.resolve("org/example/foo/1.0/foo-1.0.jar")));
+        assertEquals("0beec7b5ea3f0fdbc95d0dd47f3c5bc275da8a33", new String(Files.readAllBytes(second.resolve("org/example/foo/1.0/foo-1.0.jar.sha1"))));
+        assertEquals(1, firstCopy.getCopied().getFiles());
+        assertEquals(1, secondCopy.getLinked().getFiles());
+        assertEquals(0, secondCopy.getCopied().getFiles());
+    }
+
+    @Test
+    public void testSharedStoreIgnoresChecksumFile() throws IOException {
+        // different jars with the same stale checksum file get their own objects
+        Path store = tempDir.toPath().resolve("store");
+        Path repository = tempDir.toPath().resolve("repository");
+        Path foo = createSource("foo-1.0.jar", "foo");
+        Path bar = createSource("bar-1.0.jar", "bar");
+        String stale = "1111111111111111111111111111111111111111";
+        Files.write(foo.resolveSibling("foo-1.0.jar.sha1"), stale.getBytes());
+        Files.write(bar.resolveSibling("bar-1.0.jar.sha1"), stale.getBytes());
+        MavenArtifactCopy copy = new MavenArtifactCopy(repository);
+        copy.setStore(store);
+        copy.copyToMavenRepository(foo.toFile(), "org.example", "foo", "1.0");
+        copy.copyToMavenRepository(bar.toFile(), "org.example", "bar", "1.0");
+
+        assertFalse(Files.exists(store.resolve("11").resolve(stale)));
+        assertEquals("foo", new String(Files.readAllBytes(repository.resolve("org/example/foo/1.0/foo-1.0.jar"))));
+        assertEquals("bar", new String(Files.readAllBytes(repository.resolve("org/example/bar/1.0/bar-1.0.jar"))));
+        assertEquals(2, copy.getCopied().getFiles());
+    }
+
+    @Test
+    public void testCollectStore() throws IOException {
+        Path store = tempDir.toPath().resolve("store");
+        Path first = tempDir.toPath().resolve("first");
+        Path second = tempDir.toPath().resolve("second");
+        MavenArtifactCopy firstCopy = new MavenArtifactCopy(first);
+        firstCopy.setStore(store);
+        firstCopy.copyToMavenRepository(createSource("foo-1.0.jar", "foo").toFile(), "org.example", "foo", "1.0");
+        MavenArtifactCopy secondCopy = new MavenArtifactCopy(second);
+        secondCopy.setStore(store);
+        secondCopy.copyToMavenRepository(createSource("bar-1.0.jar", "bar").toFile(), "org.example", "bar", "1.0");
+        Path foo = store.resolve("0b/0beec7b5ea3f0fdbc95d0dd47f3c5bc275da8a33");
+        Path bar = store.resolve("62/62cdb7020ff920e5aa642c3d4066950dd1f01f4d");
+        assertTrue(Files.exists(foo));
+        assertTrue(Files.exists(bar));
+
+        // recently linked objects are kept
+        Files.delete(first.resolve("org/example/foo/1.0/foo-1.0.jar"));
+        assertEquals(0, MavenArtifactCopy.collectStore(store, TimeUnit.HOURS.toMillis(1)));
+        assertEquals(1, MavenArtifactCopy.collectStore(store, -TimeUnit.MINUTES.toMillis(1)));
+        assertFalse(Files.exists(foo));
+        assertTrue(Files.exists(bar));
+    }
+
+    @Test
+    public void testCollectHardlinkStore() throws IOException {
+        Path store = tempDir.toPath().resolve("store");
+        Path repository = tempDir.toPath().resolve("repository");
+        Files.createDirectories(repository);
+        Path source = createSource("foo-1.0.jar", "foo");
+        MavenArtifactCopy copy = new MavenArtifactCopy(repository);
+        copy.setCopyStrategy(CopyStrategy.hardlink);
+        copy.setStore(store);
+        copy.copyToMavenRepository(source.toFile(), "org.example", "foo", "1.0");
+        Path foo = store.resolve("0b/0beec7b5ea3f0fdbc95d0dd47f3c5bc275da8a33");
+        // the store object is not a link to the source, so removing the repository frees it
+        assertEquals(1, Files.getAttribute(source, "unix:nlink"));
+        Files.delete(repository.resolve("org/example/foo/1.0/foo-1.0.jar"));
+        assertEquals(1, MavenArtifactCopy.collectStore(store, -TimeUnit.MINUTES.toMillis(1)));
+        assertFalse(Files.exists(foo));
+        assertTrue(Files.exists(source));
+    }
+
+    @Test
+    public void testReflinkStrategy() throws IOException {
+        // reflink falls back to copy when the filesystem does not support clones
+        Path repository = tempDir.toPath().resolve("repository");
+        Files.createDirectories(repository);
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 100000; i++) {
+            content.append(i);
+        }
+        Path source = createSource("foo-1.0.jar", content.toString());
+        MavenArtifactCopy copy = new MavenArtifactCopy(repository);
+        copy.setCopyStrategy(CopyStrategy.reflink);
+        copy.copyToMavenRepository(source.toFile(), "org.example", "foo", "1.0");
+        Path destination = repository.resolve("org/example/foo/1.0/foo-1.0.jar");
+        assertFalse(Files.isSymbolicLink(destination));
+        assertEquals(content.toString(), new String(Files.readAllBytes(destination)));
+    }
+
+    @Test
+    public void testLargeFileDigest() throws IOException, NoSuchAlgorithmException {
+        // the digest is streamed through a buffer smaller than the file
+        Path repository = tempDir.toPath().resolve("repository");
+        byte[] content = new byte[1024 * 1024 + 17];
+        new Random(42).nextBytes(content);
+        Path source = tempDir.toPath().resolve("foo-1.0.jar");
+        Files.write(source, content);
+        MavenArtifactCopy copy = new MavenArtifactCopy(repository);
+        copy.copyToMavenRepository(source.toFile(), "org.example", "foo", "1.0");
+
+        StringBuilder expected = new StringBuilder();
+        for (byte b : MessageDigest.getInstance("SHA-1").digest(content)) {
+            expected.append(String.format("%02x", b));
+        }
+        assertEquals(expected.toString(), new String(Files.readAllBytes(repository.resolve("org/example/foo/1.0/foo-1.0.jar.sha1"))));
+    }
+
+    @Test
+    public void testBadSourceDigestIsRejected() throws IOException {
+        Path repository = tempDir.toPath().resolve("repository");
+        Path source = createSource("foo-1.0.jar", "foo");
+        Files.write(source.resolveSibling("foo-1.0.jar.sha1"), "1111111111111111111111111111111111111111  foo-1.0.jar\n".getBytes());
+        MavenArtifactCopy copy = new MavenArtifactCopy(repository);
+        copy.copyToMavenRepository(source.toFile(), "org.example", "foo", "1.0");
+        assertEquals("0beec7b5ea3f0fdbc95d0dd47f3c5bc275da8a33", new String(Files.readAllBytes(repository.resolve("org/example/foo/1.0/foo-1.0.jar.sha1"))));
+        assertEquals(1, copy.getRejectedChecksumCount());
+
+        // a matching checksum file is accepted
+        Path bar = createSource("bar-1.0.jar", "bar");
+        Files.write(bar.resolveSibling("bar-1.0.jar.sha1"), "62cdb7020ff920e5aa642c3d4066950dd1f01f4d".getBytes());
+        copy.copyToMavenRepository(bar.toFile(), "org.example", "bar", "1.0");
+        assertEquals("62cdb7020ff920e5aa642c3d4066950dd1f01f4d", new String(Files.readAllBytes(repository.resolve("org/example/bar/1.0/bar-1.0.jar.sha1"))));
+        assertEquals(1, copy.getRejectedChecksumCount());
+    }
+
+    @Test
+    public void testConcurrentCopies() throws Exception {
+        // duplicate requests are skipped, different artifacts are copied
+        Path repository = tempDir.toPath().resolve("repository");
+        MavenArtifactCopy copy = new MavenArtifactCopy(repository);
+        Path foo = createSource("foo-1.0.jar", "foo");
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            ArrayList<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < 16; i++) {
+                futures.add(executor.submit(() -> {
+                    copy.copyToMavenRepository(foo.toFile(), "org.example", "foo", "1.0");
+                    return null;
+                }));
+                Path bar = createSource("bar-" + i + ".jar", "bar" + i);
+                final String version = String.valueOf(i);
+                futures.add(executor.submit(() -> {
+                    copy.copyToMavenRepository(bar.toFile(), "org.example", "bar", version);
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(15, copy.getDuplicateCount());
+        assertEquals(17, copy.getExported().getEntries().size());
+        assertEquals("foo", new String(Files.readAllBytes(repository.resolve("org/example/foo/1.0/foo-1.0.jar"))));
+    }
+
+    @Test
+    public void testIdenticalFileIsSkipped() throws IOException {
+        Path repository = tempDir.toPath().resolve("repository");
+        Path source = createSource("foo-1.0.jar", "foo");
+        MavenArtifactCopy first = new MavenArtifactCopy(repository);
+        assertTrue(first.copyToMavenRepository(source.toFile(), "org.example", "foo", "1.0"));
+        // a repeated request is a duplicate, nothing is written
+        assertFalse(first.copyToMavenRepository(source.toFile(), "org.example", "foo", "1.0"));
+        assertEquals(1, first.getDuplicateCount());
+
+        // a new export finds the identical file with its checksum
+        MavenArtifactCopy copy = new MavenArtifactCopy(repository);
+        assertFalse(copy.copyToMavenRepository(source.toFile(), "org.example", "foo", "1.0"));
+        assertEquals(1, copy.getSkipped().getFiles());
+        assertEquals(3, copy.getSkipped().getBytes());
+        assertEquals(0, copy.getCopied().getFiles());
+
+        // the checksum is missing, the file is only rehashed
+        Path sha1 = repository.resolve("org/example/foo/1.0/foo-1.0.jar.sha1");
+        Files.delete(sha1);
+        copy = new MavenArtifactCopy(repository);
+        assertFalse(copy.copyToMavenRepository(source.toFile(), "org.example", "foo", "1.0"));
+        assertEquals(1, copy.getRehashed().getFiles());
+        assertEquals("0beec7b5ea3f0fdbc95d0dd47f3c5bc275da8a33", new String(Files.readAllBytes(sha1)));
+
+        // the source has changed
+        Files.write(source, "bar".getBytes());
+        Files.setLastModifiedTime(source, FileTime.fromMillis(Files.getLastModifiedTime(source).toMillis() + 10000));
+        copy = new MavenArtifactCopy(repository);
+        assertTrue(copy.copyToMavenRepository(source.toFile(), "org.example", "foo", "1.0"));
+        assertEquals(1, copy.getCopied().getFiles());
+        assertEquals("bar", new String(Files.readAllBytes(repository.resolve("org/example/foo/1.0/foo-1.0.jar"))));
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2025 Canonical Ltd.
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ * <p>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.canonical.rockcraft.builder;
+
+import com.canonical.rockcraft.util.ModuleDeps;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.jar.JarOutputStream;
+import java.util.zip.ZipEntry;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+public class ModuleDepsTest {
+
+    @TempDir
+    private Path tempDir;
+
+    private static void write(JarOutputStream out, String name, byte[] content) throws IOException {
+        out.putNextEntry(new ZipEntry(name));
+        out.write(content);
+        out.closeEntry();
+    }
+
+    @Test
+    public void testNestedJars() throws IOException, InterruptedException {
+        String jdeps = ModuleDeps.getDefaultTool();
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        assumeTrue(Files.isExecutable(Paths.get(jdeps)) && compiler != null);
+
+        Path source = tempDir.resolve("Dependency.java");
+        Files.write(source, "public class Dependency { java.sql.Connection connection; }".getBytes(StandardCharsets.UTF_8));
+        assertEquals(0, compiler.run(null, null, null, "-d", tempDir.toString(), source.toString()));
+        Path dependency = tempDir.resolve("dependency.jar");
+        try (JarOutputStream out = new JarOutputStream(Files.newOutputStream(dependency))) {
+            write(out, "Dependency.class", Files.readAllBytes(tempDir.resolve("Dependency.class")));
+        }
+        File app = tempDir.resolve("app.jar").toFile();
+        try (OutputStream os = Files.newOutputStream(app.toPath()); JarOutputStream out = new JarOutputStream(os)) {
+            write(out, "BOOT-INF/lib/dependency.jar", Files.readAllBytes(dependency));
+        }
+
+        assertTrue(ModuleDeps.getDefault().getRelease() >= 8);
+        List<String> modules = ModuleDeps.getDefault().getModules(Collections.singletonList(app), 11);
+        assertEquals(Arrays.asList("java.base", "java.sql"), modules);
+        assertEquals(Collections.emptyList(), ModuleDeps.getDefault().getModules(Collections.singletonList(tempDir.resolve("empty").toFile()), 11));
+    }
+}
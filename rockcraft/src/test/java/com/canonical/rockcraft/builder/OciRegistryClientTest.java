@@ -0,0 +1,215 @@
+/*
+ * Copyright 2025 Canonical Ltd.
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ * <p>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.canonical.rockcraft.builder;
+
+import com.canonical.rockcraft.util.OciArchive;
+import com.canonical.rockcraft.util.OciRegistryClient;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class OciRegistryClientTest {
+
+    @TempDir
+    private Path tempDir;
+
+    private HttpServer server;
+    private final Map<String, byte[]> blobs = new ConcurrentHashMap<>();
+    private final Map<String, byte[]> manifests = new ConcurrentHashMap<>();
+    private final AtomicInteger blobUploads = new AtomicInteger();
+
+    /**
+     * Minimal stand-in for a registry:2 instance
+     */
+    @BeforeEach
+    public void startRegistry() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/v2/", this::handle);
+        server.start();
+    }
+
+    @AfterEach
+    public void stopRegistry() {
+        server.stop(0);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        String query = exchange.getRequestURI().getQuery();
+        byte[] body = readAll(exchange.getRequestBody());
+        String method = exchange.getRequestMethod();
+        if ("HEAD".equals(method) && path.contains("/blobs/")) {
+            String digest = path.substring(path.lastIndexOf('/') + 1);
+            exchange.sendResponseHeaders(blobs.containsKey(digest) ? 200 : 404, -1);
+        } else if ("POST".equals(method) && path.endsWith("/blobs/uploads/")) {
+            exchange.getResponseHeaders().add("Location", path + "upload-" + blobUploads.incrementAndGet());
+            exchange.sendResponseHeaders(202, -1);
+        } else if ("PUT".equals(method) && path.contains("/blobs/uploads/")) {
+            String digest = query.substring(query.indexOf("digest=") + "digest=".length()).replace("%3A", ":");
+            blobs.put(digest, body);
+            exchange.sendResponseHeaders(digest.equals(sha256(body)) ? 201 : 400, -1);
+        } else if ("PUT".equals(method) && path.contains("/manifests/")) {
+            manifests.put(path.substring(path.lastIndexOf('/') + 1), body);
+            exchange.sendResponseHeaders(201, -1);
+        } else {
+            exchange.sendResponseHeaders(405, -1);
+        }
+        exchange.close();
+    }
+
+    private static byte[] readAll(InputStream is) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = is.read(buffer)) > 0) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+    private static String sha256(byte[] content) {
+        try {
+            StringBuilder sb = new StringBuilder("sha256:");
+            for (byte b : MessageDigest.getInstance("SHA-256").digest(content)) {
+                sb.append(String.format("%02x", b));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void writeTarEntry(OutputStream out, String name, byte[] content) throws IOException {
+        byte[] header = new byte[512];
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        System.arraycopy(nameBytes, 0, header, 0, nameBytes.length);
+        System.arraycopy(String.format("%07o", 0644).getBytes(StandardCharsets.UTF_8), 0, header, 100, 7);
+        System.arraycopy(String.format("%011o", content.length).getBytes(StandardCharsets.UTF_8), 0, header, 124, 11);
+        header[156] = '0';
+        System.arraycopy("ustar\u000000".getBytes(StandardCharsets.UTF_8), 0, header, 257, 8);
+        Arrays.fill(header, 148, 156, (byte) ' ');
+        int checksum = 0;
+        for (byte b : header) {
+            checksum += b & 0xff;
+        }
+        System.arraycopy(String.format("%06o\0 ", checksum).getBytes(StandardCharsets.UTF_8), 0, header, 148, 8);
+        out.write(header);
+        out.write(content);
+        out.write(new byte[(512 - content.length % 512) % 512]);
+    }
+
+    private static String descriptor(String mediaType, byte[] content) {
+        return String.format("{\"mediaType\":\"%s\",\"digest\":\"%s\",\"size\":%d}", mediaType, sha256(content), content.length);
+    }
+
+    private Path createRock(String name, byte[]... layers) throws IOException {
+        return createRock(name, "amd64", layers);
+    }
+
+    private Path createRock(String name, String architecture, byte[]... layers) throws IOException {
+        Map<String, byte[]> files = new LinkedHashMap<>();
+        byte[] config = ("{\"architecture\":\"" + architecture + "\",\"os\":\"linux\",\"layers\":" + layers.length + "}").getBytes(StandardCharsets.UTF_8);
+        StringBuilder manifest = new StringBuilder("{\"schemaVersion\":2,\"mediaType\":\"application/vnd.oci.image.manifest.v1+json\",");
+        manifest.append("\"config\":").append(descriptor("application/vnd.oci.image.config.v1+json", config)).append(",\"layers\":[");
+        for (int i = 0; i < layers.length; i++) {
+            manifest.append(i == 0 ? "" : ",").append(descriptor("application/vnd.oci.image.layer.v1.tar+gzip", layers[i]));
+            files.put("blobs/" + sha256(layers[i]).replace(':', '/'), layers[i]);
+        }
+        manifest.append("]}");
+        byte[] manifestBytes = manifest.toString().getBytes(StandardCharsets.UTF_8);
+        files.put("blobs/" + sha256(config).replace(':', '/'), config);
+        files.put("blobs/" + sha256(manifestBytes).replace(':', '/'), manifestBytes);
+        files.put("oci-layout", "{\"imageLayoutVersion\":\"1.0.0\"}".getBytes(StandardCharsets.UTF_8));
+        files.put("index.json", ("{\"schemaVersion\":2,\"manifests\":[" + descriptor("application/vnd.oci.image.manifest.v1+json", manifestBytes) + "]}")
+                .getBytes(StandardCharsets.UTF_8));
+        Path rock = tempDir.resolve(name);
+        try (OutputStream out = Files.newOutputStream(rock)) {
+            for (Map.Entry<String, byte[]> file : files.entrySet()) {
+                writeTarEntry(out, file.getKey(), file.getValue());
+            }
+            out.write(new byte[1024]);
+        }
+        return rock;
+    }
+
+    @Test
+    public void testPushUploadsOnlyMissingBlobs() throws IOException {
+        byte[] dependencies = new byte[100_000];
+        Arrays.fill(dependencies, (byte) 1);
+        byte[] application = "application v1".getBytes(StandardCharsets.UTF_8);
+        OciArchive first = OciArchive.open(createRock("first.rock", dependencies, application));
+        String registry = "http://127.0.0.1:" + server.getAddress().getPort() + "/acme";
+
+        OciRegistryClient client = new OciRegistryClient(registry, null, null);
+        client.push(first, "app", Arrays.asList("latest", "1.0"));
+        assertEquals(3, client.getUploadedBlobs());
+        assertEquals(0, client.getExistingBlobs());
+        assertArrayEquals(dependencies, blobs.get(sha256(dependencies)));
+        byte[] manifest = first.readBlob(first.getManifests().get(0).getDigest());
+        assertArrayEquals(manifest, manifests.get("latest"));
+        assertArrayEquals(manifest, manifests.get("1.0"));
+
+        byte[] changed = "application v2".getBytes(StandardCharsets.UTF_8);
+        OciArchive second = OciArchive.open(createRock("second.rock", dependencies, changed));
+        OciRegistryClient repush = new OciRegistryClient(registry, null, null);
+        repush.push(second, "app", Arrays.asList("latest", "1.0"));
+        // only the application layer changed
+        assertEquals(1, repush.getUploadedBlobs());
+        assertEquals(2, repush.getExistingBlobs());
+        assertTrue(repush.getUploadedBytes() < 1000);
+        assertArrayEquals(second.readBlob(second.getManifests().get(0).getDigest()), manifests.get("latest"));
+    }
+
+    @Test
+    public void testPushIndex() throws IOException, InterruptedException {
+        byte[] amd64 = "amd64 layer".getBytes(StandardCharsets.UTF_8);
+        byte[] arm64 = "arm64 layer".getBytes(StandardCharsets.UTF_8);
+        OciArchive amd64Rock = OciArchive.open(createRock("app_1.0_amd64.rock", "amd64", amd64));
+        OciArchive arm64Rock = OciArchive.open(createRock("app_1.0_arm64.rock", "arm64", arm64));
+        String registry = "http://127.0.0.1:" + server.getAddress().getPort();
+
+        OciRegistryClient client = new OciRegistryClient(registry, null, null);
+        client.pushIndex(Arrays.asList(amd64Rock, arm64Rock), "app", Arrays.asList("latest", "1.0"), 2);
+        assertEquals(4, client.getUploadedBlobs());
+        String index = new String(manifests.get("latest"), StandardCharsets.UTF_8);
+        assertTrue(index.contains("application/vnd.oci.image.index.v1+json"), index);
+        assertTrue(index.contains(amd64Rock.getManifests().get(0).getDigest()), index);
+        assertTrue(index.contains("\"platform\":{\"architecture\":\"arm64\",\"os\":\"linux\"}"), index);
+        assertArrayEquals(manifests.get("latest"), manifests.get("1.0"));
+        assertTrue(manifests.containsKey(arm64Rock.getManifests().get(0).getDigest()));
+    }
+}
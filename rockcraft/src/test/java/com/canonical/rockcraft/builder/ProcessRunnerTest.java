@@ -0,0 +1,56 @@
+/*
+ * Copyright 2025 Canonical Ltd.
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ * <p>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.canonical.rockcraft.builder;
+
+import com.canonical.rockcraft.util.LogPump;
+import com.canonical.rockcraft.util.ProcessRunner;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ProcessRunnerTest {
+
+    @Test
+    public void testExitCode() throws IOException, InterruptedException {
+        List<String> log = new ArrayList<>();
+        ProcessRunner runner = new ProcessRunner(ProcessRunner.NO_TIMEOUT);
+        runner.setLog(log::add);
+        assertEquals(3, runner.run(new ProcessBuilder("sh", "-c", "exit 3")));
+        assertTrue(log.get(0).startsWith("sh exited with 3"), log.toString());
+    }
+
+    @Test
+    public void testTimeoutTerminatesProcessTree() throws InterruptedException {
+        List<String> output = Collections.synchronizedList(new ArrayList<>());
+        ProcessRunner runner = new ProcessRunner(1000);
+        ProcessBuilder pb = new ProcessBuilder("sh", "-c", "sleep 60 & echo $!; wait").redirectErrorStream(true);
+        assertThrows(IOException.class, () -> runner.run(pb, new LogPump(output::add)));
+        assertFalse(output.isEmpty());
+        String descendant = output.get(0);
+        for (int i = 0; i < 50 && Files.exists(Paths.get("/proc", descendant)); i++) {
+            Thread.sleep(100);
+        }
+        assertFalse(Files.exists(Paths.get("/proc", descendant)), "descendant process is terminated");
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright 2025 Canonical Ltd.
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ * <p>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.canonical.rockcraft.builder;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class RockBuilderTest {
+
+    @Test
+    public void testHostPlatforms() {
+        String host = "aarch64".equals(System.getProperty("os.arch")) ? "arm64" : "amd64";
+        String other = "arm64".equals(host) ? "amd64" : "arm64";
+        Map<String, Object> platforms = new LinkedHashMap<>();
+        platforms.put(host, new YamlFactory.Empty());
+        platforms.put(other, new YamlFactory.Empty());
+        Map<String, Object> cross = new LinkedHashMap<>();
+        cross.put("build-on", Collections.singletonList(host));
+        cross.put("build-for", Collections.singletonList("s390x"));
+        platforms.put("s390x", cross);
+        Map<String, Object> rockcraft = new LinkedHashMap<>();
+        rockcraft.put("platforms", platforms);
+
+        List<String> result = RockBuilder.getHostPlatforms(rockcraft);
+        assertEquals(Arrays.asList(host, "s390x"), result);
+    }
+
+    @Test
+    public void testPushWithoutRocks(@TempDir Path tempDir) throws IOException {
+        Files.write(tempDir.resolve(IRockcraftNames.ROCKCRAFT_YAML), "name: test\nversion: '1.0'\n".getBytes());
+        Files.createDirectories(tempDir.resolve(IRockcraftNames.ROCK_OUTPUT));
+        RockProjectSettings settings = new RockProjectSettings(BuildSystem.maven, "3.9", "test", "1.0", tempDir, tempDir, false);
+        CommonRockcraftOptions options = new CommonRockcraftOptions();
+        options.setRegistry("localhost:5000");
+        assertThrows(UnsupportedOperationException.class, () -> RockBuilder.pushRock(settings, options));
+    }
+}
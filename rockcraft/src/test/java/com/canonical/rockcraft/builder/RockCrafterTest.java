@@ -10,11 +10,19 @@ import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.Reader;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.jar.Attributes;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 
 public class RockCrafterTest {
@@ -48,4 +56,152 @@ public class RockCrafterTest {
             assertEquals("project-version", result.get(IRockcraftNames.ROCKCRAFT_VERSION));
         }
     }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testRuntimePartOrder() throws IOException {
+        RockProjectSettings settings = new RockProjectSettings(BuildSystem.maven,
+                "3.9",
+                "project-name",
+                "project-version",
+                tempDir.toPath(),
+                tempDir.toPath(),
+                false);
+        RockcraftOptions options = new RockcraftOptions();
+        options.setJlink(true);
+        File jar = new File(tempDir, "app.jar");
+        Files.write(jar.toPath(), new byte[0]);
+        new RockCrafter(settings, options, Collections.singletonList(jar)).writeRockcraft();
+        try (Reader r = new InputStreamReader(new FileInputStream(new File(tempDir, "rockcraft.yaml")), StandardCharsets.UTF_8)) {
+            Map<String, Object> parts = (Map<String, Object>) ((Map<String, Object>) new Yaml().load(r)).get("parts");
+            Map<String, Object> runtime = (Map<String, Object>) parts.get("maven/rockcraft/runtime");
+            assertEquals(Arrays.asList("maven/rockcraft/dump", "maven/rockcraft/deps"), runtime.get("after"));
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testLayered() throws IOException {
+        RockProjectSettings settings = new RockProjectSettings(BuildSystem.gradle,
+                "8.12",
+                "project-name",
+                "project-version",
+                tempDir.toPath(),
+                tempDir.toPath(),
+                false);
+        RockcraftOptions options = new RockcraftOptions();
+        options.setLayered(true);
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        manifest.getMainAttributes().put(Attributes.Name.MAIN_CLASS, "org.springframework.boot.loader.launch.JarLauncher");
+        manifest.getMainAttributes().putValue("Start-Class", "com.example.App");
+        File jar = new File(tempDir, "app.jar");
+        try (JarOutputStream out = new JarOutputStream(Files.newOutputStream(jar.toPath()), manifest)) {
+            out.putNextEntry(new ZipEntry("BOOT-INF/lib/dependency.jar"));
+            out.closeEntry();
+            out.putNextEntry(new ZipEntry("BOOT-INF/classes/com/example/App.class"));
+            out.closeEntry();
+        }
+        List<File> artifacts = new ArrayList<>();
+        artifacts.add(jar);
+        RockCrafter rockCrafter = new RockCrafter(settings, options, artifacts);
+        rockCrafter.writeRockcraft();
+        Yaml yaml = new Yaml();
+
+        try (Reader r = new InputStreamReader(new FileInputStream(new File(tempDir, "rockcraft.yaml")), StandardCharsets.UTF_8)) {
+            Map<String, Object> result = yaml.load(r);
+            Map<String, Object> parts = (Map<String, Object>) result.get("parts");
+            assertTrue(parts.containsKey("gradle/rockcraft/layer-dependencies"));
+            assertTrue(parts.containsKey("gradle/rockcraft/layer-application"));
+            Map<String, Object> dump = (Map<String, Object>) parts.get("gradle/rockcraft/dump");
+            assertTrue(!String.valueOf(dump.get("override-build")).contains("app.jar"));
+            Map<String, Object> runtime = (Map<String, Object>) parts.get("gradle/rockcraft/runtime");
+            assertTrue(((List<String>) runtime.get("after")).contains("gradle/rockcraft/layer-application"));
+            Map<String, Object> services = (Map<String, Object>) result.get("services");
+            Map<String, Object> service = (Map<String, Object>) services.get("project-name");
+            assertEquals("/usr/bin/java -cp /jars/app org.springframework.boot.loader.launch.JarLauncher", service.get("command"));
+        }
+        Map<String, Object> layers = yaml.load(new String(Files.readAllBytes(tempDir.toPath().resolve(IRockcraftNames.ROCK_LAYERS)), StandardCharsets.UTF_8));
+        assertEquals(Arrays.asList("jars/app/BOOT-INF/lib/dependency.jar"), layers.get("dependencies"));
+        assertTrue(Files.exists(tempDir.toPath().resolve("layers/app/application/BOOT-INF/classes/com/example/App.class")));
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> writeCdsRockcraft(String buildPackage) throws IOException {
+        return writeCdsRockcraft(buildPackage, null);
+    }
+
+    private Map<String, Object> writeCdsRockcraft(String buildPackage, String command) throws IOException {
+        RockProjectSettings settings = new RockProjectSettings(BuildSystem.gradle,
+                "8.12",
+                "project-name",
+                "project-version",
+                tempDir.toPath(),
+                tempDir.toPath(),
+                false);
+        RockcraftOptions options = new RockcraftOptions();
+        options.setBuildPackage(buildPackage);
+        options.setCds(CdsMode.application);
+        options.setCdsTrainingArguments("-Dspring.context.exit=onRefresh");
+        options.setCommand(command);
+        File jar = new File(tempDir, "app.jar");
+        Files.write(jar.toPath(), new byte[0]);
+        List<File> artifacts = new ArrayList<>();
+        artifacts.add(jar);
+        new RockCrafter(settings, options, artifacts).writeRockcraft();
+        try (Reader r = new InputStreamReader(new FileInputStream(new File(tempDir, "rockcraft.yaml")), StandardCharsets.UTF_8)) {
+            return new Yaml().load(r);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testCds() throws IOException {
+        Map<String, Object> result = writeCdsRockcraft("openjdk-17-jdk-headless");
+        Map<String, Object> parts = (Map<String, Object>) result.get("parts");
+        String training = String.valueOf(((Map<String, Object>) parts.get("gradle/rockcraft/runtime")).get("override-build"));
+        assertTrue(training.startsWith("craftctl default\n${CRAFT_PART_INSTALL}/usr/bin/java -Xshare:dump\n"));
+        assertTrue(training.contains("ln -sfn ${CRAFT_STAGE}/jars /jars\n"));
+        assertTrue(training.contains("${CRAFT_PART_INSTALL}/usr/bin/java -XX:ArchiveClassesAtExit=${CRAFT_PART_INSTALL}/jars/classes.jsa " +
+                "-Dspring.context.exit=onRefresh -jar /jars/app.jar || true\nrm /jars\n"));
+        Map<String, Object> service = (Map<String, Object>) ((Map<String, Object>) result.get("services")).get("project-name");
+        assertEquals("/usr/bin/java -XX:SharedArchiveFile=/jars/classes.jsa -jar /jars/app.jar", service.get("command"));
+
+        // the service does not regenerate the archive
+        result = writeCdsRockcraft("openjdk-21-jdk-headless");
+        service = (Map<String, Object>) ((Map<String, Object>) result.get("services")).get("project-name");
+        assertEquals("/usr/bin/java -XX:SharedArchiveFile=/jars/classes.jsa -jar /jars/app.jar", service.get("command"));
+
+        // Java 11 cannot record the application classes
+        result = writeCdsRockcraft("openjdk-11-jdk-headless");
+        parts = (Map<String, Object>) result.get("parts");
+        training = String.valueOf(((Map<String, Object>) parts.get("gradle/rockcraft/runtime")).get("override-build"));
+        assertTrue(training.endsWith("${CRAFT_PART_INSTALL}/usr/bin/java -Xshare:dump\n"));
+        service = (Map<String, Object>) ((Map<String, Object>) result.get("services")).get("project-name");
+        assertEquals("/usr/bin/java -jar /jars/app.jar", service.get("command"));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testCdsClassPath() throws IOException {
+        String[] commands = {null, "/usr/bin/java -cp /jars/app.jar:/jars/lib.jar com.example.Main"};
+        for (String command : commands) {
+            Map<String, Object> result = writeCdsRockcraft("openjdk-17-jdk-headless", command);
+            Map<String, Object> parts = (Map<String, Object>) result.get("parts");
+            String training = String.valueOf(((Map<String, Object>) parts.get("gradle/rockcraft/runtime")).get("override-build"));
+            String trained = null;
+            for (String line : training.split("\n")) {
+                if (line.startsWith("timeout ")) {
+                    trained = line.substring(line.indexOf("-Dspring.context.exit=onRefresh ") + "-Dspring.context.exit=onRefresh ".length(),
+                            line.length() - " || true".length());
+                }
+            }
+            Map<String, Object> service = (Map<String, Object>) ((Map<String, Object>) result.get("services")).get("project-name");
+            String serviceCommand = String.valueOf(service.get("command"));
+            String prefix = "/usr/bin/java -XX:SharedArchiveFile=/jars/classes.jsa ";
+            assertTrue(serviceCommand.startsWith(prefix));
+            // the archive is rejected when the class path differs from the training run
+            assertEquals(serviceCommand.substring(prefix.length()), trained);
+        }
+    }
 }
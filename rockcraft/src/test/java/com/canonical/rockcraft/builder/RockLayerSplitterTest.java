@@ -0,0 +1,201 @@
+/*
+ * Copyright 2025 Canonical Ltd.
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ * <p>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.canonical.rockcraft.builder;
+
+import com.canonical.rockcraft.util.OciArchive;
+import com.canonical.rockcraft.util.RockLayerSplitter;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.yaml.snakeyaml.Yaml;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class RockLayerSplitterTest {
+
+    @TempDir
+    private Path tempDir;
+
+    private static byte[] readAll(InputStream is) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = is.read(buffer)) > 0) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+    private static String sha256(byte[] content) {
+        try {
+            StringBuilder sb = new StringBuilder("sha256:");
+            for (byte b : MessageDigest.getInstance("SHA-256").digest(content)) {
+                sb.append(String.format("%02x", b));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void writeTarEntry(OutputStream out, String name, char type, long mtime, byte[] content) throws IOException {
+        byte[] header = new byte[512];
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        System.arraycopy(nameBytes, 0, header, 0, nameBytes.length);
+        System.arraycopy(String.format("%07o", type == '5' ? 0755 : 0644).getBytes(StandardCharsets.UTF_8), 0, header, 100, 7);
+        System.arraycopy(String.format("%011o", content.length).getBytes(StandardCharsets.UTF_8), 0, header, 124, 11);
+        System.arraycopy(String.format("%011o", mtime).getBytes(StandardCharsets.UTF_8), 0, header, 136, 11);
+        header[156] = (byte) type;
+        System.arraycopy("ustar\u000000".getBytes(StandardCharsets.UTF_8), 0, header, 257, 8);
+        Arrays.fill(header, 148, 156, (byte) ' ');
+        int checksum = 0;
+        for (byte b : header) {
+            checksum += b & 0xff;
+        }
+        System.arraycopy(String.format("%06o\0 ", checksum).getBytes(StandardCharsets.UTF_8), 0, header, 148, 8);
+        out.write(header);
+        out.write(content);
+        out.write(new byte[(512 - content.length % 512) % 512]);
+    }
+
+    private static byte[] createLayer(long mtime, String application) throws IOException {
+        ByteArrayOutputStream tar = new ByteArrayOutputStream();
+        writeTarEntry(tar, "jars/", '5', mtime, new byte[0]);
+        writeTarEntry(tar, "jars/app/BOOT-INF/classes/App.class", '0', mtime, application.getBytes(StandardCharsets.UTF_8));
+        writeTarEntry(tar, "jars/app/BOOT-INF/lib/dependency.jar", '0', mtime, "dependency".getBytes(StandardCharsets.UTF_8));
+        writeTarEntry(tar, "usr/bin/java", '0', mtime, "java".getBytes(StandardCharsets.UTF_8));
+        tar.write(new byte[1024]);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(tar.toByteArray());
+        }
+        return out.toByteArray();
+    }
+
+    private static String descriptor(String mediaType, byte[] content) {
+        return String.format("{\"mediaType\":\"%s\",\"digest\":\"%s\",\"size\":%d}", mediaType, sha256(content), content.length);
+    }
+
+    private Path createRock(String name, byte[] base, byte[] layer) throws IOException {
+        Map<String, byte[]> files = new LinkedHashMap<>();
+        String diffIds = String.format("\"%s\",\"%s\"", sha256(ungzip(base)), sha256(ungzip(layer)));
+        byte[] config = ("{\"architecture\":\"amd64\",\"os\":\"linux\",\"rootfs\":{\"type\":\"layers\",\"diff_ids\":[" + diffIds + "]}," +
+                "\"history\":[{\"created_by\":\"base\"},{\"created_by\":\"rockcraft\",\"comment\":\"rockcraft\"}]}").getBytes(StandardCharsets.UTF_8);
+        byte[] manifest = ("{\"schemaVersion\":2,\"mediaType\":\"application/vnd.oci.image.manifest.v1+json\",\"config\":" +
+                descriptor("application/vnd.oci.image.config.v1+json", config) + ",\"layers\":[" +
+                descriptor("application/vnd.oci.image.layer.v1.tar+gzip", base) + "," +
+                descriptor("application/vnd.oci.image.layer.v1.tar+gzip", layer) + "]}").getBytes(StandardCharsets.UTF_8);
+        files.put("blobs/" + sha256(base).replace(':', '/'), base);
+        files.put("blobs/" + sha256(layer).replace(':', '/'), layer);
+        files.put("blobs/" + sha256(config).replace(':', '/'), config);
+        files.put("blobs/" + sha256(manifest).replace(':', '/'), manifest);
+        files.put("oci-layout", "{\"imageLayoutVersion\":\"1.0.0\"}".getBytes(StandardCharsets.UTF_8));
+        files.put("index.json", ("{\"schemaVersion\":2,\"manifests\":[" + descriptor("application/vnd.oci.image.manifest.v1+json", manifest) + "]}")
+                .getBytes(StandardCharsets.UTF_8));
+        Path rock = tempDir.resolve(name);
+        try (OutputStream out = Files.newOutputStream(rock)) {
+            for (Map.Entry<String, byte[]> file : files.entrySet()) {
+                writeTarEntry(out, file.getKey(), '0', 0, file.getValue());
+            }
+            out.write(new byte[1024]);
+        }
+        return rock;
+    }
+
+    private static byte[] ungzip(byte[] content) throws IOException {
+        try (InputStream is = new GZIPInputStream(new ByteArrayInputStream(content))) {
+            return readAll(is);
+        }
+    }
+
+    private static RockLayerSplitter createSplitter() {
+        Map<String, List<String>> layers = new LinkedHashMap<>();
+        layers.put("dependencies", Collections.singletonList("jars/app/BOOT-INF/lib/dependency.jar"));
+        layers.put("application", Collections.singletonList("jars/app/BOOT-INF/classes/App.class"));
+        return new RockLayerSplitter(layers);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<String> getDiffIds(OciArchive archive, OciArchive.Descriptor manifest) throws IOException {
+        OciArchive.Descriptor config = archive.getBlobs(manifest).get(0);
+        Map<String, Object> json = new Yaml().load(new String(archive.readBlob(config.getDigest()), StandardCharsets.UTF_8));
+        return (List<String>) ((Map<String, Object>) json.get("rootfs")).get("diff_ids");
+    }
+
+    private static List<String> getLayerDigests(Path rock) throws IOException {
+        OciArchive archive = OciArchive.open(rock);
+        OciArchive.Descriptor manifest = archive.getManifests().get(0);
+        List<OciArchive.Descriptor> blobs = archive.getBlobs(manifest);
+        List<String> diffIds = getDiffIds(archive, manifest);
+        assertEquals(blobs.size() - 1, diffIds.size());
+        ArrayList<String> digests = new ArrayList<>();
+        for (int i = 1; i < blobs.size(); i++) {
+            byte[] layer = archive.readBlob(blobs.get(i).getDigest());
+            assertEquals(blobs.get(i).getDigest(), sha256(layer));
+            assertEquals(diffIds.get(i - 1), sha256(ungzip(layer)));
+            digests.add(blobs.get(i).getDigest());
+        }
+        return digests;
+    }
+
+    @Test
+    public void testSplit() throws IOException {
+        byte[] base = createLayer(100, "os");
+        Path rock = createRock("first.rock", base, createLayer(100, "version 1"));
+        assertTrue(createSplitter().split(rock));
+        List<String> first = getLayerDigests(rock);
+        // the base image layer, the rest of the rock, dependencies and application
+        assertEquals(4, first.size());
+        assertEquals(sha256(base), first.get(0));
+        // nothing left to split
+        assertFalse(createSplitter().split(rock));
+
+        Path rebuilt = createRock("second.rock", base, createLayer(200, "version 2"));
+        assertTrue(createSplitter().split(rebuilt));
+        List<String> second = getLayerDigests(rebuilt);
+        assertEquals(first.subList(0, 3), second.subList(0, 3));
+        assertNotEquals(first.get(3), second.get(3));
+    }
+
+    @Test
+    public void testNoMatchingFiles() throws IOException {
+        byte[] base = createLayer(100, "os");
+        Path rock = createRock("plain.rock", base, createLayer(100, "version 1"));
+        byte[] original = Files.readAllBytes(rock);
+        assertFalse(new RockLayerSplitter(Collections.singletonMap("dependencies",
+                Collections.singletonList("jars/other.jar"))).split(rock));
+        assertTrue(Arrays.equals(original, Files.readAllBytes(rock)));
+    }
+}
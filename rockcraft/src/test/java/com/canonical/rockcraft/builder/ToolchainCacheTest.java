@@ -0,0 +1,120 @@
+/*
+ * Copyright 2025 Canonical Ltd.
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ * <p>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.canonical.rockcraft.builder;
+
+import com.canonical.rockcraft.util.ToolchainCache;
+import com.canonical.rockcraft.util.ToolchainHelper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFilePermissions;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class ToolchainCacheTest {
+
+    @TempDir
+    private Path tempDir;
+
+    private Path createJdk(String javacVersion) throws IOException {
+        Path bin = tempDir.resolve("jdk/bin");
+        Files.createDirectories(bin);
+        Path javac = bin.resolve("javac");
+        Files.write(javac, ("#!/bin/sh\necho javac " + javacVersion + "\n").getBytes(StandardCharsets.UTF_8));
+        Files.setPosixFilePermissions(javac, PosixFilePermissions.fromString("rwxr-xr-x"));
+        return javac;
+    }
+
+    @Test
+    public void testReleaseFile() throws IOException, InterruptedException {
+        Path javac = createJdk("11.0.2");
+        Files.write(tempDir.resolve("jdk/release"), "IMPLEMENTOR=\"Ubuntu\"\nJAVA_VERSION=\"17.0.1\"\n".getBytes(StandardCharsets.UTF_8));
+        ToolchainCache cache = new ToolchainCache(null);
+        ToolchainHelper.ToolchainPackage p = cache.getBuildPackage(javac.toString());
+        assertEquals(ToolchainHelper.Reason.REASON_OK, p.getReason());
+        assertEquals("openjdk-17-jdk-headless", p.getName());
+        assertEquals(0, cache.getProbes());
+    }
+
+    @Test
+    public void testReleaseFileMajorVersion() throws IOException, InterruptedException {
+        Path javac = createJdk("11.0.2");
+        Files.write(tempDir.resolve("jdk/release"), "JAVA_VERSION=\"21\"\n".getBytes(StandardCharsets.UTF_8));
+        ToolchainCache cache = new ToolchainCache(null);
+        ToolchainHelper.ToolchainPackage p = cache.getBuildPackage(javac.toString());
+        assertEquals(ToolchainHelper.Reason.REASON_OK, p.getReason());
+        assertEquals("openjdk-21-jdk-headless", p.getName());
+        assertEquals(0, cache.getProbes());
+    }
+
+    @Test
+    public void testJavacMajorVersion() throws IOException, InterruptedException {
+        Path javac = createJdk("17");
+        ToolchainCache cache = new ToolchainCache(null);
+        assertEquals("openjdk-17-jdk-headless", cache.getBuildPackage(javac.toString()).getName());
+        assertEquals(1, cache.getProbes());
+    }
+
+    @Test
+    public void testPersistentCache() throws IOException, InterruptedException {
+        Path javac = createJdk("11.0.2");
+        Path file = tempDir.resolve("cache/toolchains.properties");
+        ToolchainCache cache = new ToolchainCache(file);
+        assertEquals("openjdk-11-jdk-headless", cache.getBuildPackage(javac.toString()).getName());
+        assertEquals("openjdk-11-jdk-headless", cache.getBuildPackage(javac.toString()).getName());
+        assertEquals(1, cache.getProbes());
+
+        ToolchainCache reloaded = new ToolchainCache(file);
+        assertEquals("openjdk-11-jdk-headless", reloaded.getBuildPackage(javac.toString()).getName());
+        assertEquals(0, reloaded.getProbes());
+    }
+
+    @Test
+    public void testModifiedJavac() throws IOException, InterruptedException {
+        Path javac = createJdk("11.0.2");
+        ToolchainCache cache = new ToolchainCache(null);
+        assertEquals("openjdk-11-jdk-headless", cache.getBuildPackage(javac.toString()).getName());
+        createJdk("21.0.1");
+        Files.setLastModifiedTime(javac, FileTime.fromMillis(Files.getLastModifiedTime(javac).toMillis() + 60000));
+        assertEquals("openjdk-21-jdk-headless", cache.getBuildPackage(javac.toString()).getName());
+        assertEquals(2, cache.getProbes());
+    }
+
+    @Test
+    public void testModifiedReleaseFile() throws IOException, InterruptedException {
+        Path javac = createJdk("11.0.2");
+        Path release = tempDir.resolve("jdk/release");
+        Files.write(release, "JAVA_VERSION=\"17.0.1\"\n".getBytes(StandardCharsets.UTF_8));
+        ToolchainCache cache = new ToolchainCache(null);
+        assertEquals("openjdk-17-jdk-headless", cache.getBuildPackage(javac.toString()).getName());
+        Files.write(release, "JAVA_VERSION=\"21\"\n".getBytes(StandardCharsets.UTF_8));
+        Files.setLastModifiedTime(release, FileTime.fromMillis(Files.getLastModifiedTime(release).toMillis() + 60000));
+        assertEquals("openjdk-21-jdk-headless", cache.getBuildPackage(javac.toString()).getName());
+        assertEquals(0, cache.getProbes());
+    }
+
+    @Test
+    public void testErrorsAreNotCached() throws IOException, InterruptedException {
+        Path javac = createJdk("9.0.1");
+        ToolchainCache cache = new ToolchainCache(null);
+        assertEquals(ToolchainHelper.Reason.JAVAC_UNSUPPORTED_VERSION_STRING, cache.getBuildPackage(javac.toString()).getReason());
+        cache.getBuildPackage(javac.toString());
+        assertEquals(2, cache.getProbes());
+    }
+}